@@ -0,0 +1,69 @@
+package com.Tbence132545.Melodigram.benchmark;
+
+import com.Tbence132545.Melodigram.model.KeyState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-frame and per-edit work of the waterfall, with the panel painting into an offscreen
+ * image the size of a maximised piano window.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AnimationPanelBenchmarks {
+
+    private static final int PANEL_HEIGHT = 800;
+
+    @State(Scope.Thread)
+    public static class Frame {
+        BufferedImage image;
+        Graphics2D graphics;
+
+        @Setup(Level.Trial)
+        public void setUp(LibraryState state) {
+            image = new BufferedImage(LibraryState.KEYBOARD_WIDTH, PANEL_HEIGHT, BufferedImage.TYPE_INT_RGB);
+            graphics = image.createGraphics();
+            state.panel.setSize(LibraryState.KEYBOARD_WIDTH, PANEL_HEIGHT);
+            state.panel.updatePlaybackTime(state.middleMillis);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            graphics.dispose();
+        }
+    }
+
+    @Benchmark
+    public void applyHandCodes(LibraryState state) {
+        state.panel.applyHandCodes(state.hands);
+    }
+
+    /**
+     * The practice-mode lookup of the next chord after a seek, which replaced scanning every
+     * falling note for onsets in a chord tolerance wide window.
+     */
+    @Benchmark
+    public KeyState nextChord(LibraryState state) {
+        state.cursor.seek(state.middleMillis);
+        int next = state.cursor.position();
+        state.cursor.keysOf(next, Math.min(next + 1, state.cursor.clusterCount()), state.chord);
+        return state.chord;
+    }
+
+    @Benchmark
+    public BufferedImage paintComponent(LibraryState state, Frame frame) {
+        state.panel.paint(frame.graphics);
+        return frame.image;
+    }
+}
@@ -0,0 +1,69 @@
+package com.Tbence132545.Melodigram.benchmark;
+
+import com.Tbence132545.Melodigram.model.HandSplitter;
+import com.Tbence132545.Melodigram.model.KeyState;
+import com.Tbence132545.Melodigram.model.MidiFileService;
+import com.Tbence132545.Melodigram.model.NoteTable;
+import com.Tbence132545.Melodigram.model.PracticeCursor;
+import com.Tbence132545.Melodigram.model.SequencePreprocessor;
+import com.Tbence132545.Melodigram.model.SyntheticMidiGenerator;
+import com.Tbence132545.Melodigram.view.AnimationPanel;
+import com.Tbence132545.Melodigram.view.KeyboardLayout;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import javax.sound.midi.Sequence;
+
+/**
+ * The piece every benchmark runs on: each bundled MIDI file, and synthetic pieces of growing size
+ * ({@code synthetic-N} for N notes with the generator's default, seeded options).
+ */
+@State(Scope.Benchmark)
+public class LibraryState {
+
+    static final int KEYBOARD_WIDTH = 1560;
+    private static final String SYNTHETIC_PREFIX = "synthetic-";
+
+    @Param({"Chopin.mid", "Flight of the Bumblebee.mid", "Rachmaninoff.mid", "alla-turca.mid", "liszt.mid",
+            "little_red.mid", "twinkle-twinkle-little-star.mid",
+            "synthetic-1000", "synthetic-10000", "synthetic-100000"})
+    public String source;
+
+    Sequence sequence;
+    NoteTable notes;
+    byte[] hands;
+    KeyboardLayout layout;
+    AnimationPanel panel;
+    PracticeCursor cursor;
+    final KeyState chord = new KeyState();
+    long middleMillis;
+
+    @Setup(Level.Trial)
+    public void load() throws Exception {
+        sequence = source.startsWith(SYNTHETIC_PREFIX)
+                ? SyntheticMidiGenerator.generate(SyntheticMidiGenerator.Options.defaults()
+                        .withNoteCount(Integer.parseInt(source.substring(SYNTHETIC_PREFIX.length()))))
+                : new MidiFileService().loadSequence(source);
+        notes = SequencePreprocessor.preprocess(sequence).notes();
+        hands = HandSplitter.split(notes);
+        layout = new KeyboardLayout(21, 108, KEYBOARD_WIDTH);
+        panel = newPanel(notes, layout);
+        cursor = PracticeCursor.build(notes, i -> true, PracticeCursor.DEFAULT_CHORD_TOLERANCE_MS);
+        middleMillis = notes.getEndMillis() / 2;
+    }
+
+    /**
+     * An animation panel holding the piece's notes, filled the way PlaybackController does it.
+     */
+    static AnimationPanel newPanel(NoteTable notes, KeyboardLayout layout) {
+        AnimationPanel panel = new AnimationPanel(layout::keyInfo, layout.getLowestNote(), layout.getHighestNote());
+        for (int i = 0; i < notes.size(); i++) {
+            int pitch = notes.pitch(i);
+            panel.addFallingNote(pitch, notes.onMillis(i), notes.offMillis(i), KeyboardLayout.isBlackKey(pitch));
+        }
+        return panel;
+    }
+}
@@ -0,0 +1,48 @@
+package com.Tbence132545.Melodigram.benchmark;
+
+import com.Tbence132545.Melodigram.model.HandAssignmentStore;
+import com.Tbence132545.Melodigram.model.MidiPlayer;
+import com.Tbence132545.Melodigram.model.SequencePreprocessor;
+import com.Tbence132545.Melodigram.view.AnimationPanel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What happens to a sequence when a piece is opened.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SequenceBenchmarks {
+
+    @Benchmark
+    public SequencePreprocessor.Result preprocess(LibraryState state) {
+        return SequencePreprocessor.preprocess(state.sequence);
+    }
+
+    /**
+     * PlaybackController.preprocessNotes without its window: preprocessing, hashing and filling
+     * the animation panel.
+     */
+    @Benchmark
+    public void preprocessNotes(LibraryState state, Blackhole blackhole) {
+        SequencePreprocessor.Result result = SequencePreprocessor.preprocess(state.sequence);
+        blackhole.consume(HandAssignmentStore.sequenceHash(state.sequence));
+        AnimationPanel panel = LibraryState.newPanel(result.notes(), state.layout);
+        blackhole.consume(panel);
+    }
+
+    @Benchmark
+    public int[] extractNoteRange(LibraryState state) {
+        return MidiPlayer.extractNoteRange(state.sequence);
+    }
+
+    @Benchmark
+    public String sequenceHash(LibraryState state) {
+        return HandAssignmentStore.sequenceHash(state.sequence);
+    }
+}
@@ -1,7 +1,9 @@
 package com.Tbence132545.Melodigram;
 
+import com.Tbence132545.Melodigram.controller.CommandLineController;
 import com.Tbence132545.Melodigram.controller.MainWindowController;
 import com.Tbence132545.Melodigram.controller.PlaybackController;
+import com.Tbence132545.Melodigram.model.FlightRecording;
 import com.Tbence132545.Melodigram.model.MidiPlayer;
 import com.Tbence132545.Melodigram.view.MainWindow;
 import com.Tbence132545.Melodigram.view.PianoWindow;
@@ -10,11 +12,26 @@ import javax.sound.midi.MidiSystem;
 import javax.sound.midi.Sequence;
 import javax.swing.*;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 import javax.sound.midi.MidiDevice;
 import javax.sound.midi.MidiUnavailableException;
 public class Main {
         public static void main(String[] args) {
+            FlightRecording flightRecording = FlightRecording.startIfRequested();
+            if (CommandLineController.wantsCommandLine(args)) {
+                // Set before any AWT class loads, so batch runs work on machines without a display
+                System.setProperty("java.awt.headless", "true");
+                int status = CommandLineController.run(args);
+                if (flightRecording != null) {
+                    try {
+                        System.err.println("Flight recording saved to " + flightRecording.dump("cli"));
+                    } catch (IOException e) {
+                        System.err.println("Could not save the flight recording: " + e.getMessage());
+                    }
+                }
+                System.exit(status);
+            }
             MainWindowController mainwincon = new MainWindowController(new MainWindow());
         }
 
@@ -0,0 +1,420 @@
+package com.Tbence132545.Melodigram.controller;
+
+import com.Tbence132545.Melodigram.model.HandAssignmentStore;
+import com.Tbence132545.Melodigram.model.MidiFileService;
+import com.Tbence132545.Melodigram.model.NoteTable;
+import com.Tbence132545.Melodigram.model.OfflineAudioRenderer;
+import com.Tbence132545.Melodigram.model.PieceAnalysis;
+import com.Tbence132545.Melodigram.model.PracticeRecorder;
+import com.Tbence132545.Melodigram.model.SequencePreprocessor;
+import com.Tbence132545.Melodigram.model.SyntheticMidiGenerator;
+import com.Tbence132545.Melodigram.view.OfflineVideoRenderer;
+
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Batch processing without a display, for build servers and scripts. Files are library names or
+ * paths to MIDI files, and no files means the whole library; they are processed in parallel and
+ * reported one tab-separated line each, in the order given. Never opens a window, so it runs with
+ * {@code java.awt.headless=true}. Exits with 1 if any file failed and 2 on a usage error.
+ *
+ * <pre>
+ * Melodigram analyze [--jobs N] [files...]
+ * Melodigram hash [--jobs N] [files...]
+ * Melodigram render [--jobs N] [--out dir] [files...]
+ * Melodigram video [--jobs N] [--out dir] [--fps N] [--size WxH] [--raw] [files...]
+ * Melodigram import files...
+ * Melodigram export-assignments [--jobs N] [--out dir] [files...]
+ * Melodigram retarget
+ * Melodigram export-recording [--out dir] [--timeline piece|wall] [recordings...]
+ * Melodigram generate [--out dir] [generator options]
+ * Melodigram scaling [generator options] [note counts...]
+ * </pre>
+ */
+public final class CommandLineController {
+
+    private static final Set<String> COMMANDS = Set.of("analyze", "hash", "render", "video", "import", "export-assignments", "retarget", "export-recording",
+            "generate", "scaling", "help");
+    private static final int[] DEFAULT_SCALING_SIZES = {1_000, 10_000, 100_000, 1_000_000};
+    private static final int SCALING_FRAMES = 30;
+
+    private interface FileTask {
+        String process(String file) throws Exception;
+    }
+
+    private final MidiFileService midiFileService;
+    private final HandAssignmentStore assignmentStore;
+    private final PrintStream out;
+    private final PrintStream err;
+    private Path outputDir = Paths.get(".");
+    private int jobs = Runtime.getRuntime().availableProcessors();
+    private int fps = OfflineVideoRenderer.DEFAULT_FPS;
+    private int frameWidth = OfflineVideoRenderer.DEFAULT_WIDTH;
+    private int frameHeight = OfflineVideoRenderer.DEFAULT_HEIGHT;
+    private boolean rawVideo;
+    private PracticeRecorder.Timeline timeline = PracticeRecorder.Timeline.PIECE;
+    private SyntheticMidiGenerator.Options synthetic = SyntheticMidiGenerator.Options.defaults();
+
+    public CommandLineController(MidiFileService midiFileService, HandAssignmentStore assignmentStore, PrintStream out, PrintStream err) {
+        this.midiFileService = midiFileService;
+        this.assignmentStore = assignmentStore;
+        this.out = out;
+        this.err = err;
+    }
+
+    /**
+     * Whether the arguments ask for batch processing rather than the windows.
+     */
+    public static boolean wantsCommandLine(String[] args) {
+        return args.length > 0 && (COMMANDS.contains(args[0]) || args[0].startsWith("--"));
+    }
+
+    public static int run(String[] args) {
+        return new CommandLineController(new MidiFileService(), HandAssignmentStore.openDefault(), System.out, System.err).execute(args);
+    }
+
+    public int execute(String[] args) {
+        if (args.length == 0 || !COMMANDS.contains(args[0])) {
+            printUsage(args.length == 0 || args[0].equals("--help") ? out : err);
+            return args.length > 0 && args[0].equals("--help") ? 0 : 2;
+        }
+        List<String> files = new ArrayList<>();
+        try {
+            for (int i = 1; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--out" -> outputDir = Paths.get(args[++i]);
+                    case "--jobs" -> jobs = Math.max(1, Integer.parseInt(args[++i]));
+                    case "--fps" -> fps = Math.max(1, Integer.parseInt(args[++i]));
+                    case "--raw" -> rawVideo = true;
+                    case "--timeline" -> timeline = switch (args[++i]) {
+                        case "piece" -> PracticeRecorder.Timeline.PIECE;
+                        case "wall" -> PracticeRecorder.Timeline.WALL_CLOCK;
+                        default -> throw new IllegalArgumentException("--timeline is piece or wall");
+                    };
+                    case "--seed" -> synthetic = synthetic.withSeed(Long.parseLong(args[++i]));
+                    case "--notes" -> synthetic = synthetic.withNoteCount(Integer.parseInt(args[++i]));
+                    case "--bytes" -> synthetic = synthetic.withFileSize(Long.parseLong(args[++i]));
+                    case "--tracks" -> synthetic = synthetic.withTrackCount(Integer.parseInt(args[++i]));
+                    case "--density" -> synthetic = synthetic.withNotesPerSecond(Double.parseDouble(args[++i]));
+                    case "--polyphony" -> synthetic = synthetic.withMaxPolyphony(Integer.parseInt(args[++i]));
+                    case "--tempo-changes" -> synthetic = synthetic.withTempoChangesPerMinute(Double.parseDouble(args[++i]));
+                    case "--overlap" -> synthetic = synthetic.withOverlapProbability(Double.parseDouble(args[++i]));
+                    case "--size" -> {
+                        String[] size = args[++i].split("x");
+                        if (size.length != 2) throw new IllegalArgumentException("--size needs WIDTHxHEIGHT");
+                        frameWidth = Integer.parseInt(size[0]);
+                        frameHeight = Integer.parseInt(size[1]);
+                    }
+                    default -> {
+                        if (args[i].startsWith("--")) throw new IllegalArgumentException("Unknown option " + args[i]);
+                        files.add(args[i]);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            err.println(e instanceof ArrayIndexOutOfBoundsException ? "Missing value for " + args[args.length - 1] : e.getMessage());
+            printUsage(err);
+            return 2;
+        }
+
+        switch (args[0]) {
+            case "help":
+                printUsage(out);
+                return 0;
+            case "analyze":
+                out.println("file\tdurationMillis\tnotes\tnotesPerSecond\tmaxChord\tpitchSpan\thandSpanViolations\ttempoChanges\tdifficulty");
+                return forEachFile(orLibrary(files), this::analyze);
+            case "hash":
+                return forEachFile(orLibrary(files), file -> file + "\t" + HandAssignmentStore.sequenceHash(loadSequence(file)));
+            case "render":
+                return forEachFile(orLibrary(files), this::render);
+            case "video":
+                // Each video already keeps every core busy with its frames, so files go one at a time
+                int perFileJobs = jobs;
+                jobs = 1;
+                return forEachFile(orLibrary(files), file -> renderVideo(file, perFileJobs));
+            case "import":
+                if (files.isEmpty()) {
+                    err.println("import needs at least one file");
+                    return 2;
+                }
+                return forEachFile(files, this::importFile);
+            case "export-assignments":
+                return forEachFile(orLibrary(files), this::exportAssignments);
+            case "export-recording":
+                try {
+                    return forEachFile(files.isEmpty() ? savedRecordings() : files, this::exportRecording);
+                } catch (IOException e) {
+                    err.println("export-recording: " + e.getMessage());
+                    return 1;
+                }
+            case "generate":
+                return generate();
+            case "scaling":
+                return scaling(files);
+            default:
+                return retarget();
+        }
+    }
+
+    private String analyze(String file) throws Exception {
+        PieceAnalysis a = PieceAnalysis.analyze(SequencePreprocessor.preprocess(loadSequence(file)));
+        return String.join("\t", file, Long.toString(a.durationMillis()), Integer.toString(a.noteCount()),
+                String.format(Locale.ROOT, "%.2f", a.notesPerSecond()), Integer.toString(a.maxChordSize()),
+                Integer.toString(a.pitchSpan()), Integer.toString(a.handSpanViolations()),
+                Integer.toString(a.tempoChanges()), String.format(Locale.ROOT, "%.2f", a.difficulty()));
+    }
+
+    private String render(String file) throws Exception {
+        long start = System.nanoTime();
+        Path output = outputDir.resolve(baseName(file) + ".wav");
+        long audioMillis = new OfflineAudioRenderer().render(loadSequence(file), output);
+        return file + "\t" + output + "\t" + audioMillis + "\t" + (System.nanoTime() - start) / 1_000_000;
+    }
+
+    /**
+     * Numbered PNGs in a folder named after the file, or with --raw one RGB24 stream file.
+     */
+    private String renderVideo(String file, int threads) throws Exception {
+        long start = System.nanoTime();
+        Sequence sequence = loadSequence(file);
+        NoteTable notes = SequencePreprocessor.preprocess(sequence).notes();
+        byte[] hands;
+        try {
+            hands = assignmentStore.load(HandAssignmentStore.sequenceHash(sequence), notes);
+        } catch (IOException e) {
+            hands = null; // plain colors rather than no video
+        }
+        OfflineVideoRenderer renderer = new OfflineVideoRenderer(notes, hands, frameWidth, frameHeight, fps);
+        Path output;
+        int frames;
+        if (rawVideo) {
+            output = outputDir.resolve(baseName(file) + ".rgb");
+            Files.createDirectories(outputDir);
+            try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(output), 1 << 20)) {
+                frames = renderer.writeRawRgb(stream, threads);
+            }
+        } else {
+            output = outputDir.resolve(baseName(file));
+            frames = renderer.writePngs(output, threads);
+        }
+        return file + "\t" + output + "\t" + frames + " frames " + frameWidth + "x" + frameHeight + "@" + fps
+                + "\t" + (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private String importFile(String file) throws Exception {
+        File source = new File(file);
+        MidiSystem.getSequence(source); // refuse anything that isn't a readable MIDI file
+        midiFileService.importMidiFile(source);
+        return file + "\t" + source.getName();
+    }
+
+    /**
+     * Writes one CSV per file: note index, onset and release in milliseconds, pitch and hand.
+     */
+    private String exportAssignments(String file) throws Exception {
+        Sequence sequence = loadSequence(file);
+        NoteTable notes = SequencePreprocessor.preprocess(sequence).notes();
+        byte[] hands = assignmentStore.load(HandAssignmentStore.sequenceHash(sequence), notes);
+        if (hands == null) throw new IOException("no hand assignments saved");
+        Path output = outputDir.resolve(baseName(file) + ".hands.csv");
+        Files.createDirectories(outputDir);
+        int assigned = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            writer.write("index,onMillis,offMillis,pitch,hand");
+            writer.newLine();
+            for (int i = 0; i < notes.size(); i++) {
+                String hand = switch (hands[i]) {
+                    case HandAssignmentStore.HAND_LEFT -> "left";
+                    case HandAssignmentStore.HAND_RIGHT -> "right";
+                    default -> "";
+                };
+                if (!hand.isEmpty()) assigned++;
+                writer.write(i + "," + notes.onMillis(i) + "," + notes.offMillis(i) + "," + notes.pitch(i) + "," + hand);
+                writer.newLine();
+            }
+        }
+        return file + "\t" + output + "\t" + assigned + "/" + notes.size();
+    }
+
+    /**
+     * Converts a practice recording to a MIDI file of the same name in --out.
+     */
+    private String exportRecording(String file) throws Exception {
+        Path output = outputDir.resolve(baseName(file) + ".mid");
+        PracticeRecorder.exportToMidi(Paths.get(file), output, timeline);
+        return file + "\t" + output;
+    }
+
+    private static List<String> savedRecordings() throws IOException {
+        Path directory = PracticeRecorder.defaultDirectory();
+        if (!Files.isDirectory(directory)) return List.of();
+        try (var paths = Files.list(directory)) {
+            return paths.filter(path -> path.getFileName().toString().endsWith(".mrec"))
+                    .map(Path::toString).sorted().toList();
+        }
+    }
+
+    private int generate() {
+        SyntheticMidiGenerator.Options o = synthetic;
+        Path output = outputDir.resolve("synthetic-" + o.noteCount() + "n-" + o.trackCount() + "t-" + o.seed() + ".mid");
+        long start = System.nanoTime();
+        try {
+            long bytes = SyntheticMidiGenerator.write(o, output);
+            out.println(output + "\t" + o.noteCount() + "\t" + bytes + "\t" + (System.nanoTime() - start) / 1_000_000);
+            return 0;
+        } catch (Exception e) {
+            err.println("generate: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Times parsing, preprocessing, hashing and drawing a frame for generated pieces of growing
+     * size, one after the other so the timings don't compete for cores. Arguments are note counts.
+     */
+    private int scaling(List<String> sizes) {
+        List<Integer> noteCounts = new ArrayList<>();
+        try {
+            for (String size : sizes) noteCounts.add(Integer.parseInt(size));
+        } catch (NumberFormatException e) {
+            err.println("scaling takes note counts, not files: " + e.getMessage());
+            return 2;
+        }
+        if (noteCounts.isEmpty()) for (int size : DEFAULT_SCALING_SIZES) noteCounts.add(size);
+
+        out.println("notes\ttracks\tbytes\tparseMillis\tpreprocessMillis\thashMillis\tframeMillis");
+        for (int noteCount : noteCounts) {
+            try {
+                ByteArrayOutputStream file = new ByteArrayOutputStream();
+                MidiSystem.write(SyntheticMidiGenerator.generate(synthetic.withNoteCount(noteCount)), 1, file);
+                byte[] bytes = file.toByteArray();
+
+                long start = System.nanoTime();
+                Sequence sequence = MidiSystem.getSequence(new ByteArrayInputStream(bytes));
+                long parsed = System.nanoTime();
+                NoteTable notes = SequencePreprocessor.preprocess(sequence).notes();
+                long preprocessed = System.nanoTime();
+                HandAssignmentStore.sequenceHash(sequence);
+                long hashed = System.nanoTime();
+
+                OfflineVideoRenderer renderer = new OfflineVideoRenderer(notes, null, frameWidth, frameHeight, fps);
+                BufferedImage image = new BufferedImage(frameWidth, frameHeight, BufferedImage.TYPE_INT_RGB);
+                int frames = renderer.getFrameCount();
+                long drawStart = System.nanoTime();
+                for (int i = 0; i < SCALING_FRAMES; i++) renderer.renderFrame((int) ((long) frames * i / SCALING_FRAMES), image);
+                double frameMillis = (System.nanoTime() - drawStart) / 1e6 / SCALING_FRAMES;
+
+                out.println(noteCount + "\t" + synthetic.trackCount() + "\t" + bytes.length
+                        + "\t" + (parsed - start) / 1_000_000 + "\t" + (preprocessed - parsed) / 1_000_000
+                        + "\t" + (hashed - preprocessed) / 1_000_000 + "\t" + String.format(Locale.ROOT, "%.2f", frameMillis));
+            } catch (Exception e) {
+                err.println(noteCount + ": " + e.getMessage());
+                return 1;
+            }
+        }
+        return 0;
+    }
+
+    private int retarget() {
+        try {
+            for (HandAssignmentStore.RetargetReport report : assignmentStore.retargetLibrary(midiFileService)) {
+                out.println(report.name() + "\t" + report.carriedOver() + "/" + report.previouslyAssigned());
+            }
+            return 0;
+        } catch (IOException e) {
+            err.println("retarget: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Runs the task for every file on {@code jobs} threads and prints the results in input order.
+     */
+    private int forEachFile(List<String> files, FileTask task) {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(jobs, Math.max(1, files.size())), r -> {
+            Thread thread = new Thread(r, "cli-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (String file : files) {
+                results.add(pool.submit(() -> task.process(file)));
+            }
+            int failures = 0;
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    out.println(results.get(i).get());
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    err.println(files.get(i) + ": " + cause.getMessage());
+                    failures++;
+                }
+            }
+            return failures == 0 ? 0 : 1;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private List<String> orLibrary(List<String> files) {
+        return files.isEmpty() ? midiFileService.getAllMidiFileNames() : files;
+    }
+
+    /**
+     * A path to a MIDI file if one exists there, otherwise a library name.
+     */
+    private Sequence loadSequence(String file) throws Exception {
+        Path path = Paths.get(file);
+        if (Files.isRegularFile(path)) return MidiSystem.getSequence(path.toFile());
+        return midiFileService.loadSequence(file);
+    }
+
+    private static String baseName(String file) {
+        String name = Paths.get(file).getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    private static void printUsage(PrintStream stream) {
+        stream.println("Usage: Melodigram <command> [options] [files...]");
+        stream.println("  analyze             difficulty and density of each file");
+        stream.println("  hash                content hash that hand assignments are stored under");
+        stream.println("  render              render each file to a WAV in --out");
+        stream.println("  video               render each file's waterfall as PNG frames, or one raw RGB24 stream with --raw");
+        stream.println("  import              copy MIDI files into the library");
+        stream.println("  export-assignments  write saved hand assignments as CSV into --out");
+        stream.println("  retarget            carry hand assignments over to edited library files");
+        stream.println("  export-recording    convert practice recordings (default: all saved ones) to MIDI files in --out");
+        stream.println("  generate            write a synthetic MIDI file into --out");
+        stream.println("  scaling             time parsing, preprocessing and drawing of synthetic pieces of the given note counts");
+        stream.println("Options: --jobs N (default: number of processors), --out dir (default: .),");
+        stream.println("         --fps N (default: 30), --size WxH (default: 1280x720), --timeline piece|wall (default: piece)");
+        stream.println("Generator: --seed N, --notes N (default: 10000) or --bytes N, --tracks N (default: 2),");
+        stream.println("           --density notes/s (default: 8), --polyphony N (default: 4),");
+        stream.println("           --tempo-changes per minute (default: 0), --overlap 0-1 (default: 0)");
+        stream.println("Files are library names or paths; none means the whole library.");
+    }
+}
@@ -1,11 +1,18 @@
 // java
 package com.Tbence132545.Melodigram.controller;
 
+import com.Tbence132545.Melodigram.model.AppDirectories;
+import com.Tbence132545.Melodigram.model.LibraryAnalyzer;
+import com.Tbence132545.Melodigram.model.LibraryIndex;
 import com.Tbence132545.Melodigram.model.MidiFileService;
+import com.Tbence132545.Melodigram.model.MidiFolderWatcher;
 import com.Tbence132545.Melodigram.model.MidiInputSelector;
 import com.Tbence132545.Melodigram.model.MidiPlayer;
+import com.Tbence132545.Melodigram.model.PieceAnalysis;
+import com.Tbence132545.Melodigram.model.ThumbnailCache;
 import com.Tbence132545.Melodigram.view.ListWindow;
 import com.Tbence132545.Melodigram.view.MainWindow;
+import com.Tbence132545.Melodigram.view.PianoRollThumbnail;
 import com.Tbence132545.Melodigram.view.PianoWindow;
 
 import javax.sound.midi.MidiDevice;
@@ -13,30 +20,194 @@ import javax.sound.midi.MidiSystem;
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class ListWindowController implements ListWindow.MidiFileActionListener {
 
     private final ListWindow view;
     private final MidiFileService midiFileService;
+    private final ThumbnailCache thumbnails;
+    private LibraryIndex libraryIndex;
+    private final Map<String, PieceAnalysis> analyses = new HashMap<>();
+    private MidiFolderWatcher folderWatcher;
+    // Analysis passes load, merge and save one file, so they run one after another
+    private final ExecutorService analysisWorker = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "library-analysis");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public ListWindowController(ListWindow view) {
         this.view = view;
         this.midiFileService = new MidiFileService();
+        this.thumbnails = new ThumbnailCache(AppDirectories.resolve("thumbnails"), midiFileService,
+                PianoRollThumbnail::render, PianoRollThumbnail.WIDTH, PianoRollThumbnail.HEIGHT,
+                ThumbnailCache.DEFAULT_MAX_BYTES);
         setupEventListeners();
         loadAndDisplayMidiFiles();
+        watchMidiFolder();
     }
 
     private void setupEventListeners() {
         view.setBackButtonListener(e -> handleBackButton());
         view.setImportButtonListener(e -> handleImportButton());
+        view.setSearchListener(this::applySearch);
+        view.setSortListener(order -> applySearch(view.getSearchText()));
+        thumbnails.setOnReady(name -> SwingUtilities.invokeLater(view::refreshThumbnails));
+        view.setThumbnailSource(thumbnails::get);
+        view.setVisibleRowsListener(thumbnails::requestVisible);
     }
 
     private void loadAndDisplayMidiFiles() {
-        String[] fileNames = midiFileService.getAllMidiFileNames().toArray(new String[0]);
-        view.setMidiFileList(fileNames, this);
+        List<String> names = midiFileService.getAllMidiFileNames();
+        view.setMidiFileList(names.toArray(new String[0]), this);
+        libraryIndex = null;
+        // Indexing a large library takes a moment; the list is usable meanwhile and filters once it's done
+        new SwingWorker<LibraryIndex, Void>() {
+            @Override
+            protected LibraryIndex doInBackground() {
+                return new LibraryIndex(names);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    libraryIndex = get();
+                    applySearch(view.getSearchText());
+                    analyzeLibrary(libraryIndex, names);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Measures every file in the background and feeds length and difficulty into the search index;
+     * only files that changed since the last run are actually parsed.
+     */
+    private void analyzeLibrary(LibraryIndex index, List<String> names) {
+        analysisWorker.execute(new SwingWorker<Map<String, PieceAnalysis>, Void>() {
+            @Override
+            protected Map<String, PieceAnalysis> doInBackground() {
+                return LibraryAnalyzer.openDefault(midiFileService).analyzeLibrary(names);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    analyses.putAll(get());
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    return;
+                }
+                for (int entry = 0; entry < index.size(); entry++) {
+                    PieceAnalysis analysis = analyses.get(index.name(entry));
+                    if (analysis != null) index.setMetadata(entry, analysis.durationMillis(), analysis.difficulty());
+                }
+                view.setRowDetailSource(ListWindowController.this::describe);
+                if (index == libraryIndex) applySearch(view.getSearchText());
+            }
+        });
+    }
+
+    /**
+     * Keeps the list in step with files synced into the imported MIDI folder while the window is open.
+     */
+    private void watchMidiFolder() {
+        try {
+            folderWatcher = midiFileService.watchExternalFolder(changes -> SwingUtilities.invokeLater(() -> applyFolderChanges(changes)));
+        } catch (Exception e) {
+            System.err.println("Could not watch the MIDI folder: " + e.getMessage());
+        }
+    }
+
+    private void applyFolderChanges(MidiFolderWatcher.Changes changes) {
+        if (libraryIndex == null) {
+            loadAndDisplayMidiFiles(); // the first index isn't built yet, so there is nothing to patch
+            return;
+        }
+        List<String> changed = new ArrayList<>(changes.modified());
+        List<String> removed = new ArrayList<>();
+        for (String name : changes.removed()) {
+            thumbnails.invalidate(name);
+            if (midiFileService.exists(name)) {
+                changed.add(name); // a bundled file of the same name shows through again
+                continue;
+            }
+            removed.add(name);
+            analyses.remove(name);
+            int entry = libraryIndex.remove(name);
+            if (entry >= 0) view.removeEntry(entry);
+        }
+        for (String name : changes.added()) {
+            thumbnails.invalidate(name);
+            changed.add(name);
+            int entry = libraryIndex.add(name);
+            if (entry >= 0) view.insertEntry(entry, name);
+        }
+        changes.modified().forEach(thumbnails::invalidate);
+        reapplySearchIfFiltered();
+
+        LibraryIndex index = libraryIndex;
+        analysisWorker.execute(new SwingWorker<Map<String, PieceAnalysis>, Void>() {
+            @Override
+            protected Map<String, PieceAnalysis> doInBackground() {
+                return LibraryAnalyzer.openDefault(midiFileService).analyzeChanged(changed, removed);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    analyses.putAll(get());
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    return;
+                }
+                if (index != libraryIndex) return;
+                for (String name : changed) {
+                    PieceAnalysis analysis = analyses.get(name);
+                    int entry = index.indexOf(name);
+                    if (analysis != null && entry >= 0) index.setMetadata(entry, analysis.durationMillis(), analysis.difficulty());
+                }
+                reapplySearchIfFiltered();
+                view.refreshThumbnails();
+            }
+        });
+    }
+
+    private String describe(String name) {
+        PieceAnalysis analysis = analyses.get(name);
+        if (analysis == null) return null;
+        long seconds = analysis.durationMillis() / 1000;
+        return String.format("%d:%02d  ·  difficulty %.1f", seconds / 60, seconds % 60, analysis.difficulty());
+    }
+
+    /**
+     * The unfiltered, name-sorted list is already patched in place; a filtered one has to be redone.
+     */
+    private void reapplySearchIfFiltered() {
+        if (!view.getSearchText().isBlank() || view.getSortOrder() != ListWindow.SortOrder.NAME) {
+            applySearch(view.getSearchText());
+        }
+    }
+
+    private void applySearch(String query) {
+        if (libraryIndex == null) return;
+        int[] entries = query.isBlank() ? null : libraryIndex.search(query);
+        if (view.getSortOrder() == ListWindow.SortOrder.DIFFICULTY) entries = libraryIndex.sortedByDifficulty(entries);
+        view.showEntries(entries);
     }
 
     private void handleBackButton() {
+        if (folderWatcher != null) folderWatcher.close();
+        thumbnails.shutdown();
+        analysisWorker.shutdown();
         view.dispose();
         MainWindow mainWin = new MainWindow();
         new MainWindowController(mainWin).openMainWindow();
@@ -50,8 +221,9 @@ public class ListWindowController implements ListWindow.MidiFileActionListener {
         if (fileChooser.showOpenDialog(view) == JFileChooser.APPROVE_OPTION) {
             try {
                 midiFileService.importMidiFile(fileChooser.getSelectedFile());
+                thumbnails.invalidate(fileChooser.getSelectedFile().getName());
                 JOptionPane.showMessageDialog(view, "File imported successfully!");
-                loadAndDisplayMidiFiles();
+                if (folderWatcher == null) loadAndDisplayMidiFiles(); // otherwise the watcher adds it
             } catch (Exception ex) {
                 ex.printStackTrace();
                 JOptionPane.showMessageDialog(view, "Could not import file: " + ex.getMessage(), "Import Error", JOptionPane.ERROR_MESSAGE);
@@ -85,12 +257,13 @@ public class ListWindowController implements ListWindow.MidiFileActionListener {
                 MidiFileService.MidiData midiData = midiFileService.loadMidiData(midiFileName);
                 int[] range = MidiPlayer.extractNoteRange(midiData.sequence());
                 PianoWindow pianoWindow = new PianoWindow(range[0], range[1]);
-                PlaybackController playbackController = new PlaybackController(midiData.player(), pianoWindow);
+                PlaybackController playbackController = new PlaybackController(midiData.player(), pianoWindow, midiFileName);
 
                 playbackController.setEditingMode(true);
 
                 pianoWindow.setBackButtonListener(e -> {
                     midiData.player().stop();
+                    playbackController.shutdown();
                     pianoWindow.dispose();
                     SwingUtilities.invokeLater(() -> view.setVisible(true));
                 });
@@ -112,7 +285,7 @@ public class ListWindowController implements ListWindow.MidiFileActionListener {
 
                 int[] range = MidiPlayer.extractNoteRange(midiData.sequence());
                 PianoWindow pianoWindow = new PianoWindow(range[0], range[1]);
-                PlaybackController playbackController = new PlaybackController(midiData.player(), pianoWindow);
+                PlaybackController playbackController = new PlaybackController(midiData.player(), pianoWindow, midiFileName);
 
                 if (isPractice) {
                     if (midiDeviceInfo.length == 0) throw new IllegalStateException("MIDI device info required for practice mode.");
@@ -124,6 +297,7 @@ public class ListWindowController implements ListWindow.MidiFileActionListener {
                 final MidiDevice finalInputDevice = inputDevice;
                 pianoWindow.setBackButtonListener(e -> {
                     midiData.player().stop();
+                    playbackController.shutdown();
                     if (finalInputDevice != null && finalInputDevice.isOpen()) {
                         finalInputDevice.close();
                     }
@@ -1,67 +1,54 @@
 package com.Tbence132545.Melodigram.controller;
 
+import com.Tbence132545.Melodigram.model.AssignmentAutosaver;
+import com.Tbence132545.Melodigram.model.FlightEvents;
+import com.Tbence132545.Melodigram.model.FlightRecording;
+import com.Tbence132545.Melodigram.model.HandAssignmentStore;
+import com.Tbence132545.Melodigram.model.HandEditLog;
+import com.Tbence132545.Melodigram.model.HandSplitter;
+import com.Tbence132545.Melodigram.model.KeyState;
+import com.Tbence132545.Melodigram.model.LatencyProbe;
+import com.Tbence132545.Melodigram.model.MidiEventRing;
 import com.Tbence132545.Melodigram.model.MidiFileService;
 import com.Tbence132545.Melodigram.model.MidiPlayer;
+import com.Tbence132545.Melodigram.model.NoteTable;
+import com.Tbence132545.Melodigram.model.PlaybackClock;
+import com.Tbence132545.Melodigram.model.PracticeCursor;
+import com.Tbence132545.Melodigram.model.PracticeRecorder;
+import com.Tbence132545.Melodigram.model.PracticeScorer;
+import com.Tbence132545.Melodigram.model.PracticeSessionStore;
+import com.Tbence132545.Melodigram.model.SequencePreprocessor;
 import com.Tbence132545.Melodigram.view.AnimationPanel;
 import com.Tbence132545.Melodigram.view.ListWindow;
-import com.Tbence132545.Melodigram.view.PianoWindow;
+import com.Tbence132545.Melodigram.view.PianoView;
 import com.Tbence132545.Melodigram.view.SeekBar;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 
 import javax.sound.midi.*;
 import javax.swing.*;
-import javax.swing.Timer;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.function.IntPredicate;
 
 public class PlaybackController {
 
-    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
-
-    private static class HandAssignmentFile {
-        String midiHash;
-        List<AnimationPanel.HandAssignment> assignments;
-    }
-
     private static final int TARGET_FPS = 60;
-    private static final int TIMER_DELAY_MS = 1000 / TARGET_FPS;
+    public static final int TIMER_DELAY_MS = 1000 / TARGET_FPS;
+    private static final int LATENCY_OVERLAY_INTERVAL_TICKS = TARGET_FPS / 2;
     private static final long STARTUP_DELAY_MS = 3000; //This is used to delay the start of the animation upon loading the pianoWindow- I found it was neccessary to not have any delays between animation and sound
-    private static final Path ASSIGNMENTS_DIR;
-
-    static {
-        ASSIGNMENTS_DIR = getStandardApplicationDataDirectory().resolve("assignments");
-    }
-
-    private static Path getStandardApplicationDataDirectory() {
-        String appName = "Melodigram";
-        String os = System.getProperty("os.name").toLowerCase();
-        Path baseDir;
-        if (os.contains("win")) {
-            baseDir = Paths.get(System.getenv("APPDATA"));
-        } else if (os.contains("mac")) {
-            baseDir = Paths.get(System.getProperty("user.home"), "Library", "Application Support");
-        } else {
-            baseDir = Paths.get(System.getProperty("user.home"), "." + appName);
-        }
-        return baseDir.resolve(appName);
-    }
+    private static final HandAssignmentStore ASSIGNMENT_STORE = HandAssignmentStore.openDefault();
 
     private final MidiPlayer midiPlayer;
-    private final PianoWindow pianoWindow;
+    private final PianoView pianoWindow;
     private final AnimationPanel animationPanel;
     private final SeekBar seekBar;
-    private final Timer sharedTimer;
+    private final PlaybackClock clock;
+    private final TickSource tickSource;
 
-    private long startTime;
-    private long lastTickTime;
+    private long startNanos;
+    private long lastTickNanos;
     private boolean playbackStarted = false;
     private boolean animationPaused = false;
     private boolean isPracticeMode = false;
@@ -69,12 +56,51 @@ public class PlaybackController {
     private boolean wasPlayingBeforeDrag = false;
     private ListWindow.MidiFileActionListener.HandMode practiceHandMode = ListWindow.MidiFileActionListener.HandMode.BOTH;
     private MidiDevice midiInputDevice;
-    private final List<Integer> currentlyPressedNotes = new ArrayList<>();
-    private final List<Integer> awaitedNotes = new ArrayList<>();
-    private final Set<Integer> notesPressedInChordAttempt = new HashSet<>();
+    private final MidiEventRing inputEvents = new MidiEventRing(4096);
+    private final MidiEventRing.Handler playbackEventHandler = this::onPlaybackEvent;
+    private final MidiEventRing.Handler inputEventHandler = this::onInputEvent;
+    private final KeyState currentlyPressedNotes = new KeyState();
+    private final KeyState awaitedNotes = new KeyState();
+    private final KeyState notesPressedInChordAttempt = new KeyState();
+    private NoteTable noteTable;
+    private final String pieceName;
+    private String sequenceHash;
+    private AssignmentAutosaver assignmentAutosaver;
+    private final HandEditLog handEditLog = new HandEditLog();
+    private PracticeCursor practiceCursor;
+    private PracticeScorer practiceScorer;
+    private int announcedCluster = -1;
+    private long practiceStartEpochMillis;
+    private long practiceStartNanos;
+    private long practicePieceKey;
+    private PracticeRecorder practiceRecorder;
+    private final LatencyProbe latencyProbe = Boolean.getBoolean("melodigram.latencyProbe") ? new LatencyProbe() : null;
+    private int ticksSinceLatencyOverlay;
+    private final FlightRecording flightRecording = FlightRecording.current();
+    private long previousTickNanos;
+
+    public PlaybackController(MidiPlayer midiPlayer, PianoView pianoWindow) {
+        this(midiPlayer, pianoWindow, null);
+    }
 
-    public PlaybackController(MidiPlayer midiPlayer, PianoWindow pianoWindow) {
+    /**
+     * @param pieceName library file name of the piece, lets hand assignments follow edits to the file
+     */
+    public PlaybackController(MidiPlayer midiPlayer, PianoView pianoWindow, String pieceName) {
+        this(midiPlayer, pianoWindow, pieceName, PlaybackClock.SYSTEM, TickSource.swingTimer(TIMER_DELAY_MS));
+    }
+
+    /**
+     * @param clock time source for the animation, startup delay and practice timing
+     * @param tickSource calls the frame tick; a {@link SimulatedTickSource} with a virtual clock
+     *                   fast-forwards practice, while the sequencer itself still plays in real time
+     */
+    public PlaybackController(MidiPlayer midiPlayer, PianoView pianoWindow, String pieceName,
+                              PlaybackClock clock, TickSource tickSource) {
         this.midiPlayer = midiPlayer;
+        this.clock = clock;
+        this.tickSource = tickSource;
+        this.pieceName = pieceName;
         this.pianoWindow = pianoWindow;
         this.animationPanel = pianoWindow.getAnimationPanel();
         this.seekBar = new SeekBar(midiPlayer.getSequencer());
@@ -83,33 +109,54 @@ public class PlaybackController {
         animationPanel.setTotalDurationMillis(midiPlayer.getSequencer().getMicrosecondLength() / 1000);
         pianoWindow.addSeekBar(seekBar);
         setupEventListeners();
-        this.sharedTimer = new Timer(TIMER_DELAY_MS, e -> onTimerTick());
+        pianoWindow.setLatencyProbe(latencyProbe);
         initializePlayback();
     }
 
     private void initializePlayback() {
-        startTime = System.currentTimeMillis();
-        lastTickTime = startTime;
-        sharedTimer.start();
+        startNanos = clock.nanoTime();
+        lastTickNanos = startNanos;
+        previousTickNanos = startNanos;
+        tickSource.start(this::onTimerTick);
     }
 
     private void setupEventListeners() {
-        midiPlayer.setNoteOnListener(this::onNoteOn);
-        midiPlayer.setNoteOffListener(this::onNoteOff);
         pianoWindow.setPlayButtonListener(e -> togglePlayback());
         pianoWindow.setForwardButtonListener(e -> seekAndPreserveState(midiPlayer.getSequencer().getMicrosecondPosition() + 10_000_000));
         pianoWindow.setBackwardButtonListener(e -> seekAndPreserveState(midiPlayer.getSequencer().getMicrosecondPosition() - 10_000_000));
         pianoWindow.setSaveButtonListener(e -> handleSave());
+        pianoWindow.setAutoAssignButtonListener(e -> handleAutoAssign());
+        animationPanel.setOnHandChanged((i, oldHand, newHand) -> {
+            handEditLog.record(i, oldHand, newHand);
+            if (assignmentAutosaver != null) assignmentAutosaver.noteChanged(i, newHand);
+        });
+        pianoWindow.setUndoRedoActions(this::handleUndo, this::handleRedo);
+        if (flightRecording != null) pianoWindow.setSaveRecordingAction(this::handleSaveRecording);
         seekBar.setSeekListener(this::seekAndPreserveState);
         animationPanel.setOnDragStart(this::handleDragStart);
         animationPanel.setOnTimeChange(this::handleDragChange);
         animationPanel.setOnDragEnd(this::handleDragEnd);
+        pianoWindow.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                shutdown();
+            }
+        });
     }
 
     private void onTimerTick() {
-        long now = System.currentTimeMillis();
-        long delta = now - lastTickTime;
-        lastTickTime = now;
+        long now = clock.nanoTime();
+        // Whole milliseconds move the animation; the remainder carries over so frames don't drift
+        long delta = (now - lastTickNanos) / 1_000_000;
+        lastTickNanos += delta * 1_000_000;
+        if (flightRecording != null && playbackStarted) flightRecording.frameTime(now - previousTickNanos, now);
+        previousTickNanos = now;
+        midiPlayer.getNoteEvents().drain(playbackEventHandler);
+        inputEvents.drain(inputEventHandler);
+        if (latencyProbe != null && ++ticksSinceLatencyOverlay >= LATENCY_OVERLAY_INTERVAL_TICKS) {
+            ticksSinceLatencyOverlay = 0;
+            animationPanel.setOverlayText("input->key " + latencyProbe.paintReport());
+        }
         if (!playbackStarted) {
             handleInitialStartup(now);
             return;
@@ -126,7 +173,7 @@ public class PlaybackController {
     }
 
     private void handleInitialStartup(long now) {
-        if (midiPlayer.getSequencer().getMicrosecondLength() > 0 && now - startTime > STARTUP_DELAY_MS) {
+        if (midiPlayer.getSequencer().getMicrosecondLength() > 0 && now - startNanos > STARTUP_DELAY_MS * 1_000_000) {
             pianoWindow.disableButtons(false);
             if (isEditingMode) {
                 seekBar.setUserInteractionEnabled(false);
@@ -151,40 +198,46 @@ public class PlaybackController {
     private void handlePracticeModeTick(long delta) {
         boolean chordIsSatisfied = false;
         if (!awaitedNotes.isEmpty()) {
-            Set<Integer> currentlyHeldSet = new HashSet<>(currentlyPressedNotes);
-            Set<Integer> expectedSet = new HashSet<>(awaitedNotes);
-            if (notesPressedInChordAttempt.containsAll(expectedSet) && currentlyHeldSet.equals(expectedSet)) {
+            // Every awaited note was struck during this attempt and exactly the awaited notes are held
+            if (awaitedNotes.isSubsetOf(notesPressedInChordAttempt) && currentlyPressedNotes.sameKeys(awaitedNotes)) {
                 chordIsSatisfied = true;
             } else {
-                SwingUtilities.invokeLater(() -> {
-                    for (int note : awaitedNotes) {
-                        synchronized (currentlyPressedNotes) {
-                            if (!currentlyPressedNotes.contains(note)) pianoWindow.highlightNote(note);
-                        }
-                    }
-                });
+                for (int note = awaitedNotes.nextKey(0); note >= 0; note = awaitedNotes.nextKey(note + 1)) {
+                    if (!currentlyPressedNotes.contains(note)) pianoWindow.highlightNote(note);
+                }
                 return;
             }
         }
-        long prevTime = animationPanel.getCurrentTimeMillis();
         animationPanel.tick(delta);
-        long nextTime = animationPanel.getCurrentTimeMillis();
-        List<Integer> onsets = animationPanel.getNotesStartingBetween(
-                (prevTime == 0) ? -1 : prevTime,
-                nextTime,
-                this.practiceHandMode
-        );
-        if (!onsets.isEmpty()) {
-            awaitedNotes.clear();
-            awaitedNotes.addAll(onsets);
-            notesPressedInChordAttempt.clear();
-            SwingUtilities.invokeLater(() -> {
-                pianoWindow.releaseAllKeys();
-                awaitedNotes.forEach(pianoWindow::highlightNote);
-            });
+        long nowMillis = animationPanel.getCurrentTimeMillis();
+        int firstCluster = practiceCursor.advance(nowMillis);
+        if (firstCluster >= 0) {
+            int lastCluster = practiceCursor.position() - 1;
+            practiceCursor.keysOf(firstCluster, lastCluster + 1, awaitedNotes);
+            // The onset was crossed somewhere within this tick, so back-date the cue to it
+            long cueNanos = clock.nanoTime() - (nowMillis - practiceCursor.onsetOf(firstCluster)) * 1_000_000;
+            practiceScorer.cue(practiceCursor.firstNoteOf(firstCluster), practiceCursor.endNoteOf(lastCluster), cueNanos);
+            // An announced chord's attempt began at the announcement, so keys struck early still count
+            if (firstCluster != announcedCluster) notesPressedInChordAttempt.clear();
+            pianoWindow.releaseAllKeys();
+            for (int note = awaitedNotes.nextKey(0); note >= 0; note = awaitedNotes.nextKey(note + 1)) {
+                pianoWindow.highlightNote(note);
+            }
         } else if (chordIsSatisfied) {
             awaitedNotes.clear();
         }
+        if (awaitedNotes.isEmpty()) announceNextCluster(nowMillis);
+    }
+
+    private void announceNextCluster(long nowMillis) {
+        int next = practiceCursor.position();
+        if (next == announcedCluster || next >= practiceCursor.clusterCount()
+                || practiceCursor.onsetOf(next) - nowMillis > PracticeScorer.EARLY_WINDOW_MS) {
+            return;
+        }
+        announcedCluster = next;
+        notesPressedInChordAttempt.clear();
+        practiceScorer.announce(practiceCursor.firstNoteOf(next), practiceCursor.endNoteOf(next));
     }
 
     //Event Handling Methods
@@ -228,9 +281,10 @@ public class PlaybackController {
     private void updateSequencerPosition(long newMicroseconds) {
         long clampedMicroseconds = Math.max(0, Math.min(newMicroseconds, midiPlayer.getSequencer().getMicrosecondLength()));
         midiPlayer.getSequencer().setMicrosecondPosition(clampedMicroseconds);
+        midiPlayer.chaseTo(clampedMicroseconds);
         animationPanel.updatePlaybackTime(clampedMicroseconds / 1000);
         resetPracticeState();
-        lastTickTime = System.currentTimeMillis();
+        lastTickNanos = clock.nanoTime();
         seekBar.updateProgress();
     }
 
@@ -243,7 +297,7 @@ public class PlaybackController {
             } else {
                 midiPlayer.play();
                 animationPaused = false;
-                lastTickTime = System.currentTimeMillis();
+                lastTickNanos = clock.nanoTime();
                 pianoWindow.setPlayButtonText("||");
             }
         }
@@ -262,6 +316,9 @@ public class PlaybackController {
             pianoWindow.setPlayButtonText("▶");
             updateSequencerPosition(0);
             pianoWindow.repaint();
+            startAutosave();
+        } else {
+            stopAutosave();
         }
     }
     public void setPracticeMode(boolean enabled, ListWindow.MidiFileActionListener.HandMode mode) {
@@ -269,12 +326,55 @@ public class PlaybackController {
         this.practiceHandMode = mode;
         animationPanel.setPracticeFilterMode(mode);
         pianoWindow.disableButtons(enabled);
+        closePracticeRecorder();
         if (enabled) {
             midiPlayer.stop();
+            IntPredicate practiceNotes = i -> animationPanel.noteMatchesHand(i, mode);
+            practiceCursor = PracticeCursor.build(noteTable, practiceNotes, PracticeCursor.DEFAULT_CHORD_TOLERANCE_MS);
+            practiceScorer = new PracticeScorer(noteTable, practiceNotes);
+            practiceStartEpochMillis = System.currentTimeMillis();
+            practiceStartNanos = clock.nanoTime();
+            practicePieceKey = PracticeSessionStore.pieceKey(sequenceHash);
+            try {
+                practiceRecorder = PracticeRecorder.startDefault(practicePieceKey);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
             resetPracticeState();
         }
     }
 
+    /**
+     * Stops the animation timer, flushes unsaved hand edits and stores the practice session, if there was one.
+     */
+    public void shutdown() {
+        tickSource.stop();
+        stopAutosave();
+        closePracticeRecorder();
+        if (practiceScorer == null) return;
+        practiceScorer.closeChord();
+        if (practiceScorer.hasActivity()) {
+            long durationMillis = (clock.nanoTime() - practiceStartNanos) / 1_000_000;
+            try {
+                PracticeSessionStore.openDefault().append(practiceScorer.toSession(practiceStartEpochMillis, durationMillis,
+                        practicePieceKey, practiceHandMode.ordinal()));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        practiceScorer = null;
+    }
+
+    private void closePracticeRecorder() {
+        if (practiceRecorder == null) return;
+        try {
+            practiceRecorder.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        practiceRecorder = null;
+    }
+
     public void setMidiInputDevice(MidiDevice device) {
         try {
             if (midiInputDevice != null && midiInputDevice.isOpen()) midiInputDevice.close();
@@ -285,182 +385,212 @@ public class PlaybackController {
             e.printStackTrace();
         }
     }
+
+    // For tests that drive a practice session through a simulated tick source
+    PracticeScorer getPracticeScorer() {
+        return practiceScorer;
+    }
+
+    PracticeCursor getPracticeCursor() {
+        return practiceCursor;
+    }
+
     private void handleSave() {
-        if (!isEditingMode) return;
-        saveAssignments();
+        if (!isEditingMode || assignmentAutosaver == null) return;
+        pianoWindow.setSaveStatus("Saving…");
+        assignmentAutosaver.flushSoon();
     }
 
-    private static String computeSequenceHash(Sequence sequence) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Track track : sequence.getTracks()) {
-                for (int i = 0; i < track.size(); i++) {
-                    MidiEvent ev = track.get(i);
-                    updateDigestWithLong(md, ev.getTick());
-                    MidiMessage msg = ev.getMessage();
-                    byte[] raw = msg.getMessage();
-                    md.update(raw, 0, msg.getLength());
+    private void handleSaveRecording() {
+        new SwingWorker<Path, Void>() {
+            @Override
+            protected Path doInBackground() throws IOException {
+                return flightRecording.dump("manual");
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    pianoWindow.showMessage("Flight recording saved to\n" + get(),
+                            "Recording saved", JOptionPane.INFORMATION_MESSAGE);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    pianoWindow.showMessage("Could not save the flight recording:\n" + e.getMessage(),
+                            "Recording error", JOptionPane.ERROR_MESSAGE);
                 }
             }
-            byte[] digest = md.digest();
-            StringBuilder sb = new StringBuilder();
-            for (byte b : digest) sb.append(String.format("%02x", b));
-            return sb.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-1 unavailable", e);
-        }
+        }.execute();
     }
 
-    private static void updateDigestWithLong(MessageDigest md, long v) {
-        byte[] b = new byte[8];
-        for (int i = 7; i >= 0; i--) {
-            b[i] = (byte) (v & 0xFF);
-            v >>= 8;
+    private void handleAutoAssign() {
+        if (!isEditingMode) return;
+        // Notes the user already assigned are kept and steer the split around them
+        byte[] before = animationPanel.getHandCodes();
+        byte[] hands = HandSplitter.split(noteTable, before);
+        handEditLog.recordBulk(before, hands);
+        animationPanel.applyHandCodes(hands);
+        if (assignmentAutosaver != null) {
+            pianoWindow.setSaveStatus("Saving…");
+            assignmentAutosaver.handsReplaced(hands);
         }
-        md.update(b);
     }
 
-    private Path getAssignmentFilePath(Sequence sequence) {
-        String hash = computeSequenceHash(sequence);
-        return ASSIGNMENTS_DIR.resolve(hash + ".json");
+    private void handleUndo() {
+        if (isEditingMode && handEditLog.undo(this::applyLoggedHand) > 0) animationPanel.repaint();
     }
 
-    private void saveAssignments() {
-        List<AnimationPanel.HandAssignment> items = animationPanel.getAssignedNotes();
-        if (items.isEmpty()) {
-            JOptionPane.showMessageDialog(pianoWindow, "No hand assignments to save.", "Nothing to save", JOptionPane.INFORMATION_MESSAGE);
-            return;
-        }
-
-        Sequence seq = midiPlayer.getSequencer().getSequence();
-        String hash = computeSequenceHash(seq);
-        Path file = getAssignmentFilePath(seq);
+    private void handleRedo() {
+        if (isEditingMode && handEditLog.redo(this::applyLoggedHand) > 0) animationPanel.repaint();
+    }
 
-        HandAssignmentFile data = new HandAssignmentFile();
-        data.midiHash = hash;
-        data.assignments = items;
+    private void applyLoggedHand(int noteIndex, byte hand) {
+        animationPanel.setHandCode(noteIndex, hand);
+        if (assignmentAutosaver != null) assignmentAutosaver.noteChanged(noteIndex, hand);
+    }
 
-        try {
-            Files.createDirectories(ASSIGNMENTS_DIR);
-            String json = gson.toJson(data); // Convert object to JSON string
-            Files.writeString(file, json, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-            JOptionPane.showMessageDialog(pianoWindow, "Saved hand assignments to:\n" + file.toAbsolutePath(), "Saved", JOptionPane.INFORMATION_MESSAGE);
-        } catch (IOException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(pianoWindow, "Failed to save assignments:\n" + e.getMessage(), "Save error", JOptionPane.ERROR_MESSAGE);
+    private void startAutosave() {
+        if (assignmentAutosaver != null) return;
+        if (pieceName != null) {
+            try {
+                ASSIGNMENT_STORE.remember(pieceName, sequenceHash);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         }
+        AssignmentAutosaver autosaver = new AssignmentAutosaver(ASSIGNMENT_STORE, sequenceHash, noteTable,
+                animationPanel.getHandCodes(), AssignmentAutosaver.DEFAULT_DEBOUNCE_MS);
+        autosaver.setOnSaved(() -> SwingUtilities.invokeLater(() -> pianoWindow.setSaveStatus("Saved")));
+        autosaver.setOnError(e -> {
+            e.printStackTrace();
+            SwingUtilities.invokeLater(() -> pianoWindow.showMessage(
+                    "Failed to save assignments:\n" + e.getMessage(), "Save error", JOptionPane.ERROR_MESSAGE));
+        });
+        assignmentAutosaver = autosaver;
     }
 
-    private void loadAssignmentsIfPresent(Sequence sequence) {
-        Path file = getAssignmentFilePath(sequence);
-        if (!Files.exists(file)) {
-            return;
-        }
-        try {
-            String content = Files.readString(file, StandardCharsets.UTF_8);
-            HandAssignmentFile data = gson.fromJson(content, HandAssignmentFile.class);
+    private void stopAutosave() {
+        if (assignmentAutosaver == null) return;
+        assignmentAutosaver.close();
+        assignmentAutosaver = null;
+    }
 
-            if (data != null && data.assignments != null) {
-                animationPanel.applyHandAssignments(data.assignments);
+    private void loadAssignmentsIfPresent() {
+        try {
+            byte[] hands = ASSIGNMENT_STORE.loadOrRetarget(pieceName, sequenceHash, noteTable, this::reportRetarget);
+            if (hands != null) {
+                animationPanel.applyHandCodes(hands);
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
+    private void reportRetarget(HandAssignmentStore.Retarget retarget) {
+        String message = "This file changed since its hands were assigned.\nCarried over "
+                + retarget.carriedOver() + " of " + retarget.previouslyAssigned() + " assignments.";
+        SwingUtilities.invokeLater(() -> pianoWindow.showMessage(message, "Assignments updated", JOptionPane.INFORMATION_MESSAGE));
+    }
+
     public static boolean assignmentFileExistsFor(String midiFileName) {
         try {
-            MidiFileService service = new MidiFileService();
-            MidiFileService.MidiData midiData = service.loadMidiData(midiFileName);
-            String hash = computeSequenceHash(midiData.sequence());
-            Path path = ASSIGNMENTS_DIR.resolve(hash + ".json");
-            return Files.exists(path);
+            Sequence sequence = new MidiFileService().loadSequence(midiFileName);
+            return ASSIGNMENT_STORE.existsFor(midiFileName, HandAssignmentStore.sequenceHash(sequence));
         } catch (Exception e) {
             e.printStackTrace(); // log for debugging
             return false;
         }
     }
 
-    private void onNoteOn(int midiNote) {
+    // Both handlers run on the EDT from onTimerTick, so the practice state needs no locking
+    private void onPlaybackEvent(int status, int note, int velocity, long nanoTime) {
         if (isPracticeMode || isEditingMode) {
             return;
         }
-        long playerTimeMillis = midiPlayer.getSequencer().getMicrosecondPosition() / 1000;
-        animationPanel.updatePlaybackTime(playerTimeMillis);
-        SwingUtilities.invokeLater(() -> pianoWindow.highlightNote(midiNote));
+        if (MidiEventRing.isNoteOn(status, velocity)) {
+            long playerTimeMillis = midiPlayer.getSequencer().getMicrosecondPosition() / 1000;
+            animationPanel.updatePlaybackTime(playerTimeMillis);
+            pianoWindow.highlightNote(note);
+        } else if (MidiEventRing.isNoteOff(status, velocity)) {
+            pianoWindow.releaseNote(note);
+        }
     }
 
-    private void onNoteOff(int midiNote) {
-        if (isPracticeMode || isEditingMode) {
-            return;
+    private void onInputEvent(int status, int note, int velocity, long nanoTime) {
+        if (!isPracticeMode) return;
+        FlightEvents.MidiInput event = new FlightEvents.MidiInput();
+        event.begin();
+        // Without a recording the clock is not read again for every key press
+        if (event.isEnabled()) event.queuedNanos = clock.nanoTime() - nanoTime;
+        handleInputEvent(status, note, velocity, nanoTime);
+        event.status = status;
+        event.note = note;
+        event.velocity = velocity;
+        event.commit();
+    }
+
+    private void handleInputEvent(int status, int note, int velocity, long nanoTime) {
+        if (practiceRecorder != null) {
+            practiceRecorder.record(nanoTime, animationPanel.getCurrentTimeMillis(), status, note, velocity);
+        }
+        // currentlyPressedNotes itself is kept up to date by the receiver on the MIDI thread
+        if (MidiEventRing.isNoteOn(status, velocity)) {
+            if (latencyProbe != null) latencyProbe.received(note, nanoTime);
+            notesPressedInChordAttempt.add(note);
+            practiceScorer.noteOn(note, velocity, nanoTime);
+            pianoWindow.highlightNote(note);
+            if (latencyProbe != null) latencyProbe.applied(note, clock.nanoTime());
+        } else if (MidiEventRing.isNoteOff(status, velocity)) {
+            pianoWindow.releaseNote(note);
         }
-        SwingUtilities.invokeLater(() -> pianoWindow.releaseNote(midiNote));
     }
+
     private void resetPracticeState() {
-        synchronized (currentlyPressedNotes) {
-            currentlyPressedNotes.clear();
-        }
+        currentlyPressedNotes.clear();
         awaitedNotes.clear();
         notesPressedInChordAttempt.clear();
-        SwingUtilities.invokeLater(pianoWindow::releaseAllKeys);
+        announcedCluster = -1;
+        if (practiceScorer != null) {
+            practiceScorer.closeChord();
+        }
+        if (practiceCursor != null) {
+            // Notes exactly at the start position are still expected, anywhere else the timeline resumes after them
+            long now = animationPanel.getCurrentTimeMillis();
+            practiceCursor.seek(now == 0 ? -1 : now);
+        }
+        pianoWindow.releaseAllKeys();
     }
 
     public void preprocessNotes(Sequence sequence) {
-        try (Sequencer tempSequencer = MidiSystem.getSequencer(false)) {
-            tempSequencer.open();
-            tempSequencer.setSequence(sequence);
-            Map<Integer, List<Long>> activeNotes = new HashMap<>();
-            for (Track track : sequence.getTracks()) {
-                for (int i = 0; i < track.size(); i++) {
-                    MidiEvent event = track.get(i);
-                    MidiMessage msg = event.getMessage();
-                    if (msg instanceof ShortMessage sm) {
-                        int cmd = sm.getCommand();
-                        int note = sm.getData1();
-                        tempSequencer.setTickPosition(event.getTick());
-                        long timeMillis = tempSequencer.getMicrosecondPosition() / 1000;
-                        if (cmd == ShortMessage.NOTE_ON && sm.getData2() > 0) {
-                            activeNotes.computeIfAbsent(note, k -> new ArrayList<>()).add(timeMillis);
-                        } else if (cmd == ShortMessage.NOTE_OFF || (cmd == ShortMessage.NOTE_ON && sm.getData2() == 0)) {
-                            List<Long> onTimes = activeNotes.get(note);
-                            if (onTimes != null && !onTimes.isEmpty()) {
-                                long onTime = onTimes.remove(0);
-                                animationPanel.addFallingNote(note, onTime, timeMillis, pianoWindow.isBlackKey(note));
-                            }
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+        SequencePreprocessor.Result result = SequencePreprocessor.preprocess(sequence);
+        noteTable = result.notes();
+        sequenceHash = HandAssignmentStore.sequenceHash(sequence);
+        for (int i = 0; i < noteTable.size(); i++) {
+            int note = noteTable.pitch(i);
+            animationPanel.addFallingNote(note, noteTable.onMillis(i), noteTable.offMillis(i), pianoWindow.isBlackKey(note));
         }
-        loadAssignmentsIfPresent(sequence);
+        midiPlayer.setChaseIndex(result.chaseIndex());
+        loadAssignmentsIfPresent();
     }
 
 
     private class MidiInputReceiver implements Receiver {
         @Override
         public void send(MidiMessage message, long timeStamp) {
-            if (!isPracticeMode || !(message instanceof ShortMessage sm)) return;
-            int command = sm.getCommand();
+            if (!(message instanceof ShortMessage sm)) return;
+            int status = sm.getStatus();
             int note = sm.getData1();
             int velocity = sm.getData2();
-            if (command == ShortMessage.NOTE_ON && velocity > 0) {
-                synchronized (currentlyPressedNotes) {
-                    if (!currentlyPressedNotes.contains(note)) {
-                        currentlyPressedNotes.add(note);
-                        notesPressedInChordAttempt.add(note);
-                        SwingUtilities.invokeLater(() -> pianoWindow.highlightNote(note));
-                    }
-                }
-            } else if (command == ShortMessage.NOTE_OFF || (command == ShortMessage.NOTE_ON && velocity == 0)) {
-                synchronized (currentlyPressedNotes) {
-                    currentlyPressedNotes.remove((Integer) note);
-                    SwingUtilities.invokeLater(() -> pianoWindow.releaseNote(note));
-                }
+            if (MidiEventRing.isNoteOn(status, velocity)) {
+                currentlyPressedNotes.add(note);
+            } else if (MidiEventRing.isNoteOff(status, velocity)) {
+                currentlyPressedNotes.remove(note);
+            } else if (sm.getCommand() != ShortMessage.CONTROL_CHANGE) {
+                // Pedals are kept for the session recording, other channel messages are not needed
+                return;
             }
+            inputEvents.offer(status, note, velocity, clock.nanoTime());
         }
 
         @Override
         public void close() {}
     }
-}
\ No newline at end of file
+}
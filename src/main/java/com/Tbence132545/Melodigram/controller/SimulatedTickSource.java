@@ -0,0 +1,60 @@
+package com.Tbence132545.Melodigram.controller;
+
+import com.Tbence132545.Melodigram.model.VirtualClock;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Ticks as fast as the caller runs it, moving a {@link VirtualClock} one frame period before each
+ * tick, so the practice and playback state machines go through a piece far faster than real time.
+ * Run it on the thread that owns the controller (the EDT).
+ */
+public final class SimulatedTickSource implements TickSource {
+
+    private final VirtualClock clock;
+    private final long periodNanos;
+    private Runnable tick;
+
+    public SimulatedTickSource(VirtualClock clock, long periodMillis) {
+        if (periodMillis <= 0) throw new IllegalArgumentException("periodMillis must be positive");
+        this.clock = clock;
+        this.periodNanos = periodMillis * 1_000_000;
+    }
+
+    @Override
+    public void start(Runnable tick) {
+        this.tick = tick;
+    }
+
+    @Override
+    public void stop() {
+        tick = null;
+    }
+
+    public boolean isRunning() {
+        return tick != null;
+    }
+
+    /**
+     * Ticks through the given span of virtual time, or until stopped. Returns the ticks run.
+     */
+    public int runFor(long virtualMillis) {
+        return runUntil(() -> false, virtualMillis);
+    }
+
+    /**
+     * Ticks until the condition holds after a tick, the source is stopped, or at most
+     * {@code maxVirtualMillis} of virtual time has passed. Returns the ticks run.
+     */
+    public int runUntil(BooleanSupplier done, long maxVirtualMillis) {
+        long ticks = maxVirtualMillis * 1_000_000 / periodNanos;
+        int run = 0;
+        while (run < ticks && tick != null) {
+            clock.advanceNanos(periodNanos);
+            tick.run();
+            run++;
+            if (done.getAsBoolean()) break;
+        }
+        return run;
+    }
+}
@@ -0,0 +1,33 @@
+package com.Tbence132545.Melodigram.controller;
+
+import javax.swing.Timer;
+
+/**
+ * Drives the playback controller's frame tick. {@link #swingTimer} ticks in real time on the EDT;
+ * a {@link SimulatedTickSource} ticks only when run, against a virtual clock.
+ */
+public interface TickSource {
+
+    void start(Runnable tick);
+
+    void stop();
+
+    static TickSource swingTimer(int delayMillis) {
+        return new TickSource() {
+            private Timer timer;
+
+            @Override
+            public void start(Runnable tick) {
+                stop();
+                timer = new Timer(delayMillis, e -> tick.run());
+                timer.start();
+            }
+
+            @Override
+            public void stop() {
+                if (timer != null) timer.stop();
+                timer = null;
+            }
+        };
+    }
+}
@@ -0,0 +1,36 @@
+package com.Tbence132545.Melodigram.model;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Per-user locations where Melodigram keeps its generated data.
+ */
+public final class AppDirectories {
+
+    private static final Path DATA_DIRECTORY = getStandardApplicationDataDirectory();
+
+    private AppDirectories() {}
+
+    public static Path dataDirectory() {
+        return DATA_DIRECTORY;
+    }
+
+    public static Path resolve(String name) {
+        return DATA_DIRECTORY.resolve(name);
+    }
+
+    private static Path getStandardApplicationDataDirectory() {
+        String appName = "Melodigram";
+        String os = System.getProperty("os.name").toLowerCase();
+        Path baseDir;
+        if (os.contains("win")) {
+            baseDir = Paths.get(System.getenv("APPDATA"));
+        } else if (os.contains("mac")) {
+            baseDir = Paths.get(System.getProperty("user.home"), "Library", "Application Support");
+        } else {
+            baseDir = Paths.get(System.getProperty("user.home"), "." + appName);
+        }
+        return baseDir.resolve(appName);
+    }
+}
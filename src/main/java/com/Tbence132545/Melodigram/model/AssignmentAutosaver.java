@@ -0,0 +1,154 @@
+package com.Tbence132545.Melodigram.model;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Writes hand assignment edits of one piece in the background. Each edit (re)arms a debounce
+ * timer; when it fires, the edit buffer is copied and the file is replaced atomically, so the EDT
+ * never waits on the disk and a crash loses at most one debounce interval of clicks. Closing
+ * flushes in the background too; only an exiting JVM waits for that last write.
+ */
+public final class AssignmentAutosaver implements AutoCloseable {
+
+    public static final long DEFAULT_DEBOUNCE_MS = 750;
+    private static final int MAX_DEFERRALS = 8; // keeps a steady stream of clicks from postponing saves forever
+
+    private final HandAssignmentStore store;
+    private final String sequenceHash;
+    private final NoteTable notes;
+    private final long debounceMillis;
+    private final ScheduledExecutorService executor;
+
+    private final Thread exitHook = new Thread(this::finishAtExit, "assignment-autosave-exit");
+
+    private final byte[] edited;   // guarded by this
+    private final byte[] snapshot; // only touched by the executor thread
+    private boolean dirty;
+    private boolean closed;
+    private int deferrals;
+    private ScheduledFuture<?> pendingFlush;
+    private volatile Consumer<IOException> onError;
+    private volatile Runnable onSaved;
+
+    public AssignmentAutosaver(HandAssignmentStore store, String sequenceHash, NoteTable notes, byte[] currentHands, long debounceMillis) {
+        this.store = store;
+        this.sequenceHash = sequenceHash;
+        this.notes = notes;
+        this.debounceMillis = debounceMillis;
+        this.edited = currentHands.clone();
+        this.snapshot = new byte[currentHands.length];
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "assignment-autosave");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Runtime.getRuntime().addShutdownHook(exitHook);
+    }
+
+    public void setOnError(Consumer<IOException> onError) {
+        this.onError = onError;
+    }
+
+    public void setOnSaved(Runnable onSaved) {
+        this.onSaved = onSaved;
+    }
+
+    public synchronized void noteChanged(int noteIndex, byte hand) {
+        if (edited[noteIndex] == hand) return;
+        edited[noteIndex] = hand;
+        dirty = true;
+        if (closed) return;
+        if (pendingFlush != null && deferrals < MAX_DEFERRALS && pendingFlush.cancel(false)) {
+            deferrals++;
+        } else if (pendingFlush != null) {
+            return;
+        }
+        pendingFlush = executor.schedule(this::flushNow, debounceMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Takes over a whole new set of hands, e.g. from automatic splitting, and saves it right away.
+     */
+    public synchronized void handsReplaced(byte[] hands) {
+        System.arraycopy(hands, 0, edited, 0, edited.length);
+        dirty = true;
+        flushSoon();
+    }
+
+    /**
+     * Saves whatever is dirty right away, still off the calling thread. The saved callback runs
+     * even when there was nothing left to write.
+     */
+    public synchronized void flushSoon() {
+        if (closed) return;
+        if (pendingFlush != null) pendingFlush.cancel(false);
+        pendingFlush = executor.schedule(this::flushNow, 0, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Flushes pending edits and stops the background thread once they are written, without
+     * waiting for it. Edits made afterwards are not saved.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            if (pendingFlush != null) pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+        executor.execute(() -> {
+            flushNow();
+            try {
+                Runtime.getRuntime().removeShutdownHook(exitHook);
+            } catch (IllegalStateException e) {
+                // The JVM is already exiting and the hook is waiting for this flush
+            }
+        });
+        executor.shutdown();
+    }
+
+    private void finishAtExit() {
+        close();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flushNow() {
+        boolean write;
+        synchronized (this) {
+            pendingFlush = null;
+            deferrals = 0;
+            write = dirty;
+            if (write) {
+                System.arraycopy(edited, 0, snapshot, 0, edited.length);
+                dirty = false;
+            }
+        }
+        try {
+            // With nothing dirty, earlier writes already ran on this same thread and everything is on disk
+            if (write) store.save(sequenceHash, notes, snapshot);
+            Runnable saved = onSaved;
+            if (saved != null) saved.run();
+        } catch (IOException e) {
+            synchronized (this) {
+                dirty = true;
+            }
+            Consumer<IOException> handler = onError;
+            if (handler != null) handler.accept(e);
+            else e.printStackTrace();
+        }
+    }
+}
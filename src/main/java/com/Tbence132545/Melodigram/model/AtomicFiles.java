@@ -0,0 +1,39 @@
+package com.Tbence132545.Melodigram.model;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Replaces files by writing a temporary file beside them and renaming it over the target, so
+ * readers and crashes never leave a half-written file behind.
+ */
+public final class AtomicFiles {
+
+    public interface Content {
+        void writeTo(Path temp) throws IOException;
+    }
+
+    private AtomicFiles() {}
+
+    /**
+     * Writes the target through a temporary file of its own, so concurrent writers never share
+     * one. The parent directory must exist.
+     */
+    public static void write(Path target, Content content) throws IOException {
+        Path temp = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName() + ".", ".tmp");
+        try {
+            content.writeTo(temp);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+}
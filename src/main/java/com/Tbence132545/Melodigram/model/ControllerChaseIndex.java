@@ -0,0 +1,200 @@
+package com.Tbence132545.Melodigram.model;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import java.util.Arrays;
+
+/**
+ * Per-channel program, controller and pitch bend state of a sequence, snapshotted at regular
+ * intervals so that a seek can restore the state in effect at any position without replaying
+ * everything before it.
+ */
+public final class ControllerChaseIndex {
+
+    public static final long DEFAULT_KEYFRAME_INTERVAL_MICROS = 2_000_000;
+
+    private static final int CHANNELS = 16;
+    // Layout of one channel inside a snapshot: program, 128 controllers, bend LSB, bend MSB
+    private static final int PROGRAM = 0;
+    private static final int CONTROLLERS = 1;
+    private static final int BEND_LSB = CONTROLLERS + 128;
+    private static final int BEND_MSB = BEND_LSB + 1;
+    private static final int CHANNEL_STRIDE = BEND_MSB + 1;
+    private static final int SNAPSHOT_SIZE = CHANNELS * CHANNEL_STRIDE;
+    private static final byte UNSET = -1;
+
+    private static final int CC_VOLUME = 7;
+    private static final int CC_PAN = 10;
+    private static final int CC_RESET_ALL_CONTROLLERS = 121;
+    private static final int CC_ALL_NOTES_OFF = 123;
+    private static final int FIRST_CHANNEL_MODE_CC = 120;
+
+    private final long[] eventMicros;
+    private final int[] events;
+    private final long[] keyframeMicros;
+    private final int[] keyframeEventIndex;
+    private final byte[][] keyframes;
+    private final int usedChannels;
+    private final byte[] scratch = new byte[SNAPSHOT_SIZE];
+    private final ShortMessage message = new ShortMessage();
+
+    private ControllerChaseIndex(long[] eventMicros, int[] events, long keyframeInterval) {
+        this.eventMicros = eventMicros;
+        this.events = events;
+
+        int used = 0;
+        for (int packed : events) used |= 1 << (packed >>> 16 & 0x0F);
+        this.usedChannels = used;
+
+        long end = eventMicros.length == 0 ? 0 : eventMicros[eventMicros.length - 1];
+        int count = (int) (end / keyframeInterval) + 1;
+        keyframeMicros = new long[count];
+        keyframeEventIndex = new int[count];
+        keyframes = new byte[count][];
+
+        byte[] state = new byte[SNAPSHOT_SIZE];
+        Arrays.fill(state, UNSET);
+        int e = 0;
+        for (int k = 0; k < count; k++) {
+            long at = k * keyframeInterval;
+            while (e < events.length && eventMicros[e] <= at) {
+                apply(state, events[e++]);
+            }
+            keyframeMicros[k] = at;
+            keyframeEventIndex[k] = e;
+            keyframes[k] = state.clone();
+        }
+    }
+
+    /**
+     * Sends the state in effect at the given position to the receiver: sounding notes are cut,
+     * controllers reset, then every controller, program and pitch bend the file has set so far
+     * is re-applied. Only channels the file actually uses are touched.
+     */
+    public synchronized void chase(long micros, Receiver receiver) {
+        restoreState(micros, scratch);
+        try {
+            for (int ch = 0; ch < CHANNELS; ch++) {
+                if ((usedChannels & (1 << ch)) == 0) continue;
+                int base = ch * CHANNEL_STRIDE;
+                send(receiver, ShortMessage.CONTROL_CHANGE, ch, CC_ALL_NOTES_OFF, 0);
+                send(receiver, ShortMessage.CONTROL_CHANGE, ch, CC_RESET_ALL_CONTROLLERS, 0);
+                // Volume and pan survive a controller reset, so fall back to their GM defaults explicitly
+                if (scratch[base + CONTROLLERS + CC_VOLUME] == UNSET) send(receiver, ShortMessage.CONTROL_CHANGE, ch, CC_VOLUME, 100);
+                if (scratch[base + CONTROLLERS + CC_PAN] == UNSET) send(receiver, ShortMessage.CONTROL_CHANGE, ch, CC_PAN, 64);
+                // Controllers go first so bank selects are in place before the program change
+                for (int cc = 0; cc < FIRST_CHANNEL_MODE_CC; cc++) {
+                    byte value = scratch[base + CONTROLLERS + cc];
+                    if (value != UNSET) send(receiver, ShortMessage.CONTROL_CHANGE, ch, cc, value);
+                }
+                byte program = scratch[base + PROGRAM];
+                send(receiver, ShortMessage.PROGRAM_CHANGE, ch, program == UNSET ? 0 : program, 0);
+                if (scratch[base + BEND_MSB] != UNSET) {
+                    send(receiver, ShortMessage.PITCH_BEND, ch, scratch[base + BEND_LSB], scratch[base + BEND_MSB]);
+                }
+            }
+        } catch (InvalidMidiDataException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Fills {@code out} with the snapshot in effect at {@code micros}: the nearest earlier
+     * keyframe plus the few events between it and the position.
+     */
+    void restoreState(long micros, byte[] out) {
+        int k = floorIndex(keyframeMicros, keyframeMicros.length, micros);
+        System.arraycopy(keyframes[k], 0, out, 0, SNAPSHOT_SIZE);
+        for (int e = keyframeEventIndex[k]; e < events.length && eventMicros[e] <= micros; e++) {
+            apply(out, events[e]);
+        }
+    }
+
+    public int getKeyframeCount() {
+        return keyframes.length;
+    }
+
+    private void send(Receiver receiver, int command, int channel, int data1, int data2) throws InvalidMidiDataException {
+        message.setMessage(command, channel, data1, data2);
+        // Receivers are allowed to keep the message, so hand each one its own copy
+        receiver.send((ShortMessage) message.clone(), -1);
+    }
+
+    private static void apply(byte[] state, int packed) {
+        int status = packed >>> 16 & 0xFF;
+        int data1 = packed >>> 8 & 0x7F;
+        int data2 = packed & 0x7F;
+        int base = (status & 0x0F) * CHANNEL_STRIDE;
+        switch (status & 0xF0) {
+            case ShortMessage.PROGRAM_CHANGE -> state[base + PROGRAM] = (byte) data1;
+            case ShortMessage.CONTROL_CHANGE -> {
+                if (data1 == CC_RESET_ALL_CONTROLLERS) {
+                    Arrays.fill(state, base + CONTROLLERS, base + CONTROLLERS + FIRST_CHANNEL_MODE_CC, UNSET);
+                    state[base + BEND_LSB] = UNSET;
+                    state[base + BEND_MSB] = UNSET;
+                } else if (data1 < FIRST_CHANNEL_MODE_CC) {
+                    state[base + CONTROLLERS + data1] = (byte) data2;
+                }
+            }
+            case ShortMessage.PITCH_BEND -> {
+                state[base + BEND_LSB] = (byte) data1;
+                state[base + BEND_MSB] = (byte) data2;
+            }
+            default -> { }
+        }
+    }
+
+    private static int floorIndex(long[] keys, int size, long value) {
+        int lo = 0;
+        int hi = size - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (keys[mid] <= value) lo = mid;
+            else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    /**
+     * Collects state-changing events in any order during preprocessing.
+     */
+    public static final class Builder {
+        private long[] keys = new long[256];
+        private int[] packedEvents = new int[256];
+        private int size;
+
+        public boolean add(long micros, ShortMessage sm) {
+            int command = sm.getCommand();
+            if (command != ShortMessage.PROGRAM_CHANGE && command != ShortMessage.CONTROL_CHANGE && command != ShortMessage.PITCH_BEND) {
+                return false;
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                packedEvents = Arrays.copyOf(packedEvents, size * 2);
+            }
+            keys[size] = micros;
+            packedEvents[size] = (sm.getStatus() << 16) | (sm.getData1() << 8) | sm.getData2();
+            size++;
+            return true;
+        }
+
+        public ControllerChaseIndex build() {
+            return build(DEFAULT_KEYFRAME_INTERVAL_MICROS);
+        }
+
+        public ControllerChaseIndex build(long keyframeIntervalMicros) {
+            // Sort by time while keeping insertion order for simultaneous events
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) order[i] = i;
+            Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+            long[] sortedMicros = new long[size];
+            int[] sortedEvents = new int[size];
+            for (int i = 0; i < size; i++) {
+                sortedMicros[i] = keys[order[i]];
+                sortedEvents[i] = packedEvents[order[i]];
+            }
+            return new ControllerChaseIndex(sortedMicros, sortedEvents, Math.max(1, keyframeIntervalMicros));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.Tbence132545.Melodigram.model;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events for the work that can make Melodigram stutter. They cost next to
+ * nothing while no recording is running; start one with {@link FlightRecording} or
+ * {@code -XX:StartFlightRecording} and open the file in JDK Mission Control.
+ */
+public final class FlightEvents {
+
+    private static final String CATEGORY = "Melodigram";
+
+    private FlightEvents() {}
+
+    @Name("melodigram.FileLoad")
+    @Label("MIDI File Load")
+    @Description("Finding and reading a MIDI file from the library, including parsing it")
+    @Category({CATEGORY, "Loading"})
+    @StackTrace(false)
+    public static final class FileLoad extends Event {
+        @Label("File")
+        public String file;
+        @Label("Imported")
+        public boolean external;
+    }
+
+    @Name("melodigram.Parse")
+    @Label("MIDI Parse")
+    @Category({CATEGORY, "Loading"})
+    @StackTrace(false)
+    public static final class Parse extends Event {
+        @Label("Tracks")
+        public int tracks;
+        @Label("Events")
+        public int events;
+    }
+
+    @Name("melodigram.Preprocess")
+    @Label("Sequence Preprocess")
+    @Description("Building the note table, tempo map and controller index of a sequence")
+    @Category({CATEGORY, "Loading"})
+    @StackTrace(false)
+    public static final class Preprocess extends Event {
+        @Label("Notes")
+        public int notes;
+        @Label("Tempo Changes")
+        public int tempoChanges;
+    }
+
+    @Name("melodigram.Hash")
+    @Label("Sequence Hash")
+    @Category({CATEGORY, "Loading"})
+    @StackTrace(false)
+    public static final class Hash extends Event {
+        @Label("Events")
+        public int events;
+    }
+
+    @Name("melodigram.AssignmentLoad")
+    @Label("Hand Assignment Load")
+    @Category({CATEGORY, "Hand Assignments"})
+    @StackTrace(false)
+    public static final class AssignmentLoad extends Event {
+        @Label("Sequence Hash")
+        public String sequenceHash;
+        @Label("Notes")
+        public int notes;
+        @Label("Found")
+        public boolean found;
+    }
+
+    @Name("melodigram.AssignmentSave")
+    @Label("Hand Assignment Save")
+    @Category({CATEGORY, "Hand Assignments"})
+    @StackTrace(false)
+    public static final class AssignmentSave extends Event {
+        @Label("Sequence Hash")
+        public String sequenceHash;
+        @Label("Notes")
+        public int notes;
+    }
+
+    @Name("melodigram.FramePaint")
+    @Label("Waterfall Paint")
+    @Category({CATEGORY, "Rendering"})
+    @StackTrace(false)
+    public static final class FramePaint extends Event {
+        @Label("Notes Drawn")
+        public int notesDrawn;
+        @Label("Playback Position")
+        @Description("Position in the piece, in milliseconds")
+        public long playbackMillis;
+    }
+
+    @Name("melodigram.FrameSpike")
+    @Label("Frame Spike")
+    @Description("Time between two animation ticks went over the spike threshold")
+    @Category({CATEGORY, "Rendering"})
+    @StackTrace(false)
+    public static final class FrameSpike extends Event {
+        @Label("Frame Time")
+        @Timespan(Timespan.NANOSECONDS)
+        public long frameNanos;
+    }
+
+    @Name("melodigram.MidiInput")
+    @Label("MIDI Input")
+    @Description("Handling one message from the practice keyboard on the EDT")
+    @Category({CATEGORY, "Input"})
+    @StackTrace(false)
+    public static final class MidiInput extends Event {
+        @Label("Status")
+        public int status;
+        @Label("Note")
+        public int note;
+        @Label("Velocity")
+        public int velocity;
+        @Label("Queued")
+        @Description("From arriving at the receiver to being handled")
+        @Timespan(Timespan.NANOSECONDS)
+        public long queuedNanos;
+    }
+}
@@ -0,0 +1,131 @@
+package com.Tbence132545.Melodigram.model;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Event;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * A continuous flight recording with the JDK's low-overhead "default" settings plus the
+ * {@link FlightEvents}, keeping the last few minutes on disk. It is dumped into a folder on demand,
+ * or on its own when a frame takes longer than the spike threshold, at most once a minute.
+ * Started with {@code -Dmelodigram.flightRecorder=true}; the threshold is
+ * {@code -Dmelodigram.flightRecorder.spikeMillis}.
+ */
+public final class FlightRecording implements AutoCloseable {
+
+    public static final long DEFAULT_SPIKE_MILLIS = 100;
+
+    private static final Duration MAX_AGE = Duration.ofMinutes(5);
+    private static final long MAX_SIZE_BYTES = 64L << 20;
+    private static final long SPIKE_COOLDOWN_NANOS = Duration.ofMinutes(1).toNanos();
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private static volatile FlightRecording current;
+
+    private final Recording recording;
+    private final Path directory;
+    private final long spikeNanos;
+    private long lastSpikeDumpNanos = -SPIKE_COOLDOWN_NANOS;
+    private boolean dumping;
+
+    private FlightRecording(Recording recording, Path directory, long spikeMillis) {
+        this.recording = recording;
+        this.directory = directory;
+        this.spikeNanos = spikeMillis * 1_000_000;
+    }
+
+    /**
+     * Starts the recording if the system property asks for it. Returns null otherwise or when
+     * the JVM can't record; the application runs the same either way.
+     */
+    public static FlightRecording startIfRequested() {
+        if (!Boolean.getBoolean("melodigram.flightRecorder")) return null;
+        try {
+            return start(AppDirectories.resolve("recordings"), Long.getLong("melodigram.flightRecorder.spikeMillis", DEFAULT_SPIKE_MILLIS));
+        } catch (IOException | ParseException | IllegalStateException | SecurityException e) {
+            System.err.println("Could not start the flight recording: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public static synchronized FlightRecording start(Path directory, long spikeMillis) throws IOException, ParseException {
+        if (current != null) return current;
+        Recording recording = new Recording(Configuration.getConfiguration("default"));
+        recording.setName("Melodigram");
+        recording.setToDisk(true);
+        recording.setMaxAge(MAX_AGE);
+        recording.setMaxSize(MAX_SIZE_BYTES);
+        for (Class<?> type : FlightEvents.class.getDeclaredClasses()) {
+            if (Event.class.isAssignableFrom(type)) recording.enable(type.asSubclass(Event.class)).withoutThreshold();
+        }
+        recording.start();
+        current = new FlightRecording(recording, directory, spikeMillis);
+        return current;
+    }
+
+    /**
+     * The running recording, or null if none was started.
+     */
+    public static FlightRecording current() {
+        return current;
+    }
+
+    /**
+     * Copies what is recorded so far into a new file named after the time and the reason.
+     */
+    public Path dump(String reason) throws IOException {
+        Files.createDirectories(directory);
+        Path file = directory.resolve("melodigram-" + LocalDateTime.now().format(FILE_TIME) + "-" + reason + ".jfr");
+        recording.dump(file);
+        return file;
+    }
+
+    /**
+     * Reports the time one frame took; a spike is recorded as an event and, unless another dump
+     * happened within the last minute, dumped in the background a moment later so the recording
+     * also holds what followed it.
+     */
+    public void frameTime(long frameNanos, long nowNanos) {
+        if (frameNanos < spikeNanos) return;
+        FlightEvents.FrameSpike spike = new FlightEvents.FrameSpike();
+        spike.frameNanos = frameNanos;
+        spike.commit();
+        synchronized (this) {
+            if (dumping || nowNanos - lastSpikeDumpNanos < SPIKE_COOLDOWN_NANOS) return;
+            dumping = true;
+            lastSpikeDumpNanos = nowNanos;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                Thread.sleep(1000);
+                System.err.println("Frame took " + frameNanos / 1_000_000 + " ms, flight recording saved to " + dump("spike"));
+            } catch (IOException e) {
+                System.err.println("Could not save the flight recording: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                synchronized (this) {
+                    dumping = false;
+                }
+            }
+        }, "flight-recording-dump");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void close() {
+        synchronized (FlightRecording.class) {
+            if (current == this) current = null;
+        }
+        recording.close();
+    }
+}
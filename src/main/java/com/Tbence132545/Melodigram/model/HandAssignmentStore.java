@@ -0,0 +1,420 @@
+package com.Tbence132545.Melodigram.model;
+
+import com.google.gson.Gson;
+
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Track;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.Consumer;
+
+/**
+ * Hand assignments of a piece, one 2-bit code per note in {@link NoteTable} order, stored as
+ * {@code <sequence hash>.mha}. The header carries a checksum of the pitches and onsets the codes
+ * were written against, so a file is never applied to a differently parsed piece. Since version 2
+ * the pitches and onsets themselves follow the codes, which lets assignments be carried over to
+ * an edited version of the file via {@link NoteAligner}; an index remembers the last hash seen
+ * for each file name. Older JSON files are read once and rewritten in this format.
+ */
+public final class HandAssignmentStore {
+
+    public static final byte HAND_NONE = 0;
+    public static final byte HAND_LEFT = 1;
+    public static final byte HAND_RIGHT = 2;
+
+    private static final int MAGIC = 0x4D484131; // "MHA1"
+    private static final short VERSION = 2;
+    private static final short VERSION_WITHOUT_NOTES = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final String BINARY_SUFFIX = ".mha";
+    private static final String LEGACY_SUFFIX = ".json";
+    private static final long LEGACY_MATCH_TOLERANCE_MS = 5;
+    private static final String NAME_INDEX = "names.properties";
+
+    /**
+     * Outcome of moving assignments from an earlier version of a piece onto its current notes.
+     */
+    public record Retarget(byte[] hands, int previouslyAssigned, int carriedOver) {}
+
+    /**
+     * One library entry whose assignments were moved to a new version of the file.
+     */
+    public record RetargetReport(String name, int previouslyAssigned, int carriedOver) {}
+
+    private record Stored(int count, long checksum, byte[] hands, int[] pitches, long[] onsets) {}
+
+    private final Path directory;
+
+    public HandAssignmentStore(Path directory) {
+        this.directory = directory;
+    }
+
+    public static HandAssignmentStore openDefault() {
+        return new HandAssignmentStore(AppDirectories.resolve("assignments"));
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public Path pathFor(String sequenceHash) {
+        return directory.resolve(sequenceHash + BINARY_SUFFIX);
+    }
+
+    public boolean exists(String sequenceHash) {
+        return Files.exists(pathFor(sequenceHash)) || Files.exists(legacyPathFor(sequenceHash));
+    }
+
+    public synchronized void save(String sequenceHash, NoteTable notes, byte[] hands) throws IOException {
+        FlightEvents.AssignmentSave event = new FlightEvents.AssignmentSave();
+        event.begin();
+        Files.createDirectories(directory);
+        int count = notes.size();
+        // hands, then one pitch byte per note, then onset deltas as varints of at most 10 bytes
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + packedLength(count) + count * 11).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putInt(count).putLong(checksum(notes)).putInt(0);
+        for (int i = 0; i < count; i += 4) {
+            int packed = 0;
+            for (int j = 0; j < 4 && i + j < count; j++) {
+                packed |= (hands[i + j] & 0b11) << (j * 2);
+            }
+            buffer.put((byte) packed);
+        }
+        for (int i = 0; i < count; i++) {
+            buffer.put((byte) notes.pitch(i));
+        }
+        long previousOnset = 0;
+        for (int i = 0; i < count; i++) {
+            putVarLong(buffer, notes.onMillis(i) - previousOnset);
+            previousOnset = notes.onMillis(i);
+        }
+        buffer.flip();
+        // Written beside the target and renamed over it, so readers never see a half-written file
+        AtomicFiles.write(pathFor(sequenceHash), temp -> {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining()) channel.write(buffer);
+                channel.force(false);
+            }
+        });
+        event.sequenceHash = sequenceHash;
+        event.notes = count;
+        event.commit();
+    }
+
+    /**
+     * The hand code of every note, or null when nothing is stored for this piece. A legacy JSON
+     * file is migrated on the way and renamed to {@code .json.bak}.
+     */
+    public byte[] load(String sequenceHash, NoteTable notes) throws IOException {
+        FlightEvents.AssignmentLoad event = new FlightEvents.AssignmentLoad();
+        event.begin();
+        byte[] hands = loadStored(sequenceHash, notes);
+        event.sequenceHash = sequenceHash;
+        event.notes = notes.size();
+        event.found = hands != null;
+        event.commit();
+        return hands;
+    }
+
+    private byte[] loadStored(String sequenceHash, NoteTable notes) throws IOException {
+        Path file = pathFor(sequenceHash);
+        if (Files.exists(file)) {
+            Stored stored = readBinary(file);
+            if (stored.count() != notes.size() || stored.checksum() != checksum(notes)) {
+                throw new IOException("Hand assignments do not match the notes of this piece: " + file);
+            }
+            return stored.hands();
+        }
+        Path legacy = legacyPathFor(sequenceHash);
+        if (!Files.exists(legacy)) {
+            return null;
+        }
+        byte[] hands = readLegacy(legacy, notes);
+        save(sequenceHash, notes, hands);
+        Files.move(legacy, legacy.resolveSibling(legacy.getFileName() + ".bak"), StandardCopyOption.REPLACE_EXISTING);
+        return hands;
+    }
+
+    /**
+     * Moves the assignments saved for an earlier version of a piece onto its current notes. Null
+     * when the earlier file is missing or predates version 2 and so has no notes to align with.
+     */
+    public Retarget retarget(String previousHash, NoteTable notes) throws IOException {
+        Path file = pathFor(previousHash);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        Stored stored = readBinary(file);
+        if (stored.pitches() == null) {
+            return null;
+        }
+        int[] match = NoteAligner.align(stored.pitches(), stored.onsets(), notes, NoteAligner.DEFAULT_TOLERANCE_MS);
+        byte[] hands = new byte[notes.size()];
+        int carried = 0;
+        for (int i = 0; i < match.length; i++) {
+            if (match[i] >= 0 && stored.hands()[match[i]] != HAND_NONE) {
+                hands[i] = stored.hands()[match[i]];
+                carried++;
+            }
+        }
+        int assigned = 0;
+        for (byte hand : stored.hands()) {
+            if (hand != HAND_NONE) assigned++;
+        }
+        return new Retarget(hands, assigned, carried);
+    }
+
+    /**
+     * Loads the assignments of a piece by exact hash, or failing that carries them over from the
+     * version of the same file name seen last time and saves them under the new hash. The name
+     * index only moves to the new hash once it has assignments. {@code onRetarget} hears about a
+     * carry-over and may be null.
+     */
+    public byte[] loadOrRetarget(String name, String sequenceHash, NoteTable notes,
+                                 Consumer<Retarget> onRetarget) throws IOException {
+        byte[] hands = load(sequenceHash, notes);
+        String previousHash = name != null ? previousHash(name) : null;
+        if (hands == null && previousHash != null && !previousHash.equals(sequenceHash)) {
+            Retarget retarget = retarget(previousHash, notes);
+            if (retarget != null) {
+                save(sequenceHash, notes, retarget.hands());
+                hands = retarget.hands();
+                if (onRetarget != null) onRetarget.accept(retarget);
+            }
+        }
+        // A carry-over that failed keeps the index pointing at the old assignments, so nothing is lost
+        if (name != null && hands != null) {
+            remember(name, sequenceHash);
+        }
+        return hands;
+    }
+
+    /**
+     * Carries assignments over for every known file whose contents changed since they were saved.
+     */
+    public List<RetargetReport> retargetLibrary(MidiFileService files) throws IOException {
+        List<RetargetReport> reports = new ArrayList<>();
+        Properties index = readIndex();
+        for (String name : index.stringPropertyNames()) {
+            Sequence sequence;
+            try {
+                sequence = files.loadSequence(name);
+            } catch (Exception e) {
+                continue; // file was removed from the library
+            }
+            String hash = sequenceHash(sequence);
+            if (hash.equals(index.getProperty(name)) || Files.exists(pathFor(hash))) continue;
+            NoteTable notes = SequencePreprocessor.preprocess(sequence).notes();
+            Retarget retarget = retarget(index.getProperty(name), notes);
+            if (retarget == null) continue;
+            save(hash, notes, retarget.hands());
+            remember(name, hash);
+            reports.add(new RetargetReport(name, retarget.previouslyAssigned(), retarget.carriedOver()));
+        }
+        return reports;
+    }
+
+    public String previousHash(String name) throws IOException {
+        return readIndex().getProperty(name);
+    }
+
+    public boolean existsFor(String name, String sequenceHash) throws IOException {
+        if (exists(sequenceHash)) return true;
+        String previousHash = previousHash(name);
+        return previousHash != null && Files.exists(pathFor(previousHash));
+    }
+
+    /**
+     * Records that the assignments of the named file are now kept under this hash.
+     */
+    public synchronized void remember(String name, String sequenceHash) throws IOException {
+        Properties index = readIndex();
+        if (sequenceHash.equals(index.getProperty(name))) return;
+        index.setProperty(name, sequenceHash);
+        Files.createDirectories(directory);
+        AtomicFiles.write(directory.resolve(NAME_INDEX), temp -> {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                index.store(writer, "MIDI file name -> sequence hash of its saved hand assignments");
+            }
+        });
+    }
+
+    private synchronized Properties readIndex() throws IOException {
+        Properties index = new Properties();
+        Path file = directory.resolve(NAME_INDEX);
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                index.load(reader);
+            }
+        }
+        return index;
+    }
+
+    private Stored readBinary(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // a regular file fills the buffer in one read
+            }
+        }
+        buffer.flip();
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a hand assignment file: " + file);
+        }
+        short version = buffer.getShort();
+        if (version != VERSION && version != VERSION_WITHOUT_NOTES) {
+            throw new IOException("Unsupported hand assignment version " + version + ": " + file);
+        }
+        buffer.getShort();
+        int count = buffer.getInt();
+        long checksum = buffer.getLong();
+        buffer.getInt();
+        if (count < 0 || buffer.remaining() < packedLength(count)) {
+            throw new IOException("Truncated hand assignment file: " + file);
+        }
+        byte[] hands = new byte[count];
+        for (int i = 0; i < count; i += 4) {
+            int packed = buffer.get();
+            for (int j = 0; j < 4 && i + j < count; j++) {
+                hands[i + j] = (byte) (packed >>> (j * 2) & 0b11);
+            }
+        }
+        if (version == VERSION_WITHOUT_NOTES) {
+            return new Stored(count, checksum, hands, null, null);
+        }
+        try {
+            int[] pitches = new int[count];
+            for (int i = 0; i < count; i++) {
+                pitches[i] = buffer.get() & 0x7F;
+            }
+            long[] onsets = new long[count];
+            long onset = 0;
+            for (int i = 0; i < count; i++) {
+                onset += getVarLong(buffer);
+                onsets[i] = onset;
+            }
+            return new Stored(count, checksum, hands, pitches, onsets);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated hand assignment file: " + file, e);
+        }
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+
+    private static class LegacyFile {
+        String midiHash;
+        List<LegacyAssignment> assignments;
+    }
+
+    private static class LegacyAssignment {
+        int midiNote;
+        long on;
+        long off;
+        String hand;
+    }
+
+    private byte[] readLegacy(Path file, NoteTable notes) throws IOException {
+        LegacyFile data = new Gson().fromJson(Files.readString(file, StandardCharsets.UTF_8), LegacyFile.class);
+        byte[] hands = new byte[notes.size()];
+        if (data == null || data.assignments == null) {
+            return hands;
+        }
+        for (LegacyAssignment a : data.assignments) {
+            byte code = "LEFT".equals(a.hand) ? HAND_LEFT : "RIGHT".equals(a.hand) ? HAND_RIGHT : HAND_NONE;
+            if (code == HAND_NONE) continue;
+            // Notes are sorted by onset, so only the tolerance window around a.on needs scanning
+            for (int i = notes.firstOnsetAfter(a.on - LEGACY_MATCH_TOLERANCE_MS - 1);
+                 i < notes.size() && notes.onMillis(i) <= a.on + LEGACY_MATCH_TOLERANCE_MS; i++) {
+                if (notes.pitch(i) == a.midiNote && Math.abs(notes.offMillis(i) - a.off) <= LEGACY_MATCH_TOLERANCE_MS) {
+                    hands[i] = code;
+                }
+            }
+        }
+        return hands;
+    }
+
+    private Path legacyPathFor(String sequenceHash) {
+        return directory.resolve(sequenceHash + LEGACY_SUFFIX);
+    }
+
+    private static int packedLength(int count) {
+        return (count + 3) / 4;
+    }
+
+    private static long checksum(NoteTable notes) {
+        long h = 0xcbf29ce484222325L; // FNV-1a over (pitch, onset) pairs
+        for (int i = 0; i < notes.size(); i++) {
+            h = (h ^ notes.pitch(i)) * 0x100000001b3L;
+            h = (h ^ notes.onMillis(i)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * SHA-1 over every event tick and message of the sequence, used to key per-piece data.
+     */
+    public static String sequenceHash(Sequence sequence) {
+        FlightEvents.Hash event = new FlightEvents.Hash();
+        event.begin();
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte[] tickBytes = new byte[8];
+            for (Track track : sequence.getTracks()) {
+                for (int i = 0; i < track.size(); i++) {
+                    MidiEvent ev = track.get(i);
+                    long tick = ev.getTick();
+                    for (int b = 7; b >= 0; b--) {
+                        tickBytes[b] = (byte) (tick & 0xFF);
+                        tick >>= 8;
+                    }
+                    md.update(tickBytes);
+                    MidiMessage msg = ev.getMessage();
+                    md.update(msg.getMessage(), 0, msg.getLength());
+                }
+            }
+            byte[] digest = md.digest();
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) sb.append(String.format("%02x", b));
+            if (event.shouldCommit()) {
+                for (Track track : sequence.getTracks()) event.events += track.size();
+                event.commit();
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-1 unavailable", e);
+        }
+    }
+}
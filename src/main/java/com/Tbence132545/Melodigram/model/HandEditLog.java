@@ -0,0 +1,153 @@
+package com.Tbence132545.Melodigram.model;
+
+import java.util.Arrays;
+
+/**
+ * Undo/redo history of hand assignment edits. Every change of one note is a single packed int
+ * (note index, old hand, new hand) and an entry is a run of them, so a bulk operation such as an
+ * automatic split undoes in one step. When the log outgrows its budget the oldest entries are
+ * dropped. Replaying through an {@link Applier} is how edits reach the view and the autosaver.
+ */
+public final class HandEditLog {
+
+    public static final int DEFAULT_MAX_OPS = 1 << 20; // 4 MB of history
+
+    private static final int INDEX_SHIFT = 4;
+    private static final int MAX_NOTE_INDEX = (1 << (32 - INDEX_SHIFT)) - 1;
+
+    public interface Applier {
+        void setHand(int noteIndex, byte hand);
+    }
+
+    private final int maxOps;
+    private int[] ops = new int[256];
+    private int opCount;
+    private int[] entryEnd = new int[64]; // exclusive op index where each entry ends
+    private int entryCount;
+    private int appliedEntries;           // entries below this are done, the rest can be redone
+    private int openEntryStart = -1;
+
+    public HandEditLog() {
+        this(DEFAULT_MAX_OPS);
+    }
+
+    public HandEditLog(int maxOps) {
+        this.maxOps = Math.max(1, maxOps);
+    }
+
+    /**
+     * Records a single note edit as its own entry.
+     */
+    public void record(int noteIndex, byte oldHand, byte newHand) {
+        boolean standalone = openEntryStart < 0;
+        if (standalone) beginEntry();
+        add(noteIndex, oldHand, newHand);
+        if (standalone) endEntry();
+    }
+
+    /**
+     * Records every difference between two hand arrays as one entry.
+     */
+    public void recordBulk(byte[] before, byte[] after) {
+        beginEntry();
+        for (int i = 0; i < after.length; i++) {
+            if (before[i] != after[i]) add(i, before[i], after[i]);
+        }
+        endEntry();
+    }
+
+    /**
+     * Starts grouping the following edits into one undo step, until {@link #endEntry()}.
+     */
+    public void beginEntry() {
+        if (openEntryStart >= 0) return;
+        discardRedo();
+        openEntryStart = opCount;
+    }
+
+    public void endEntry() {
+        if (openEntryStart < 0) return;
+        if (opCount > openEntryStart) {
+            if (entryCount == entryEnd.length) entryEnd = Arrays.copyOf(entryEnd, entryCount * 2);
+            entryEnd[entryCount++] = opCount;
+            appliedEntries = entryCount;
+        }
+        openEntryStart = -1;
+        trimToBudget();
+    }
+
+    public boolean canUndo() {
+        return appliedEntries > 0;
+    }
+
+    public boolean canRedo() {
+        return appliedEntries < entryCount;
+    }
+
+    /**
+     * Reverts the latest entry, last edit first. Returns the number of notes touched.
+     */
+    public int undo(Applier applier) {
+        if (!canUndo()) return 0;
+        int entry = --appliedEntries;
+        int from = entry == 0 ? 0 : entryEnd[entry - 1];
+        for (int i = entryEnd[entry] - 1; i >= from; i--) {
+            int op = ops[i];
+            applier.setHand(op >>> INDEX_SHIFT, (byte) (op >>> 2 & 0b11));
+        }
+        return entryEnd[entry] - from;
+    }
+
+    public int redo(Applier applier) {
+        if (!canRedo()) return 0;
+        int entry = appliedEntries++;
+        int from = entry == 0 ? 0 : entryEnd[entry - 1];
+        for (int i = from; i < entryEnd[entry]; i++) {
+            int op = ops[i];
+            applier.setHand(op >>> INDEX_SHIFT, (byte) (op & 0b11));
+        }
+        return entryEnd[entry] - from;
+    }
+
+    public void clear() {
+        opCount = 0;
+        entryCount = 0;
+        appliedEntries = 0;
+        openEntryStart = -1;
+    }
+
+    public int getOpCount() {
+        return opCount;
+    }
+
+    private void add(int noteIndex, byte oldHand, byte newHand) {
+        if (noteIndex < 0 || noteIndex > MAX_NOTE_INDEX) {
+            throw new IllegalArgumentException("Note index out of range: " + noteIndex);
+        }
+        if (opCount == ops.length) ops = Arrays.copyOf(ops, opCount * 2);
+        ops[opCount++] = noteIndex << INDEX_SHIFT | (oldHand & 0b11) << 2 | (newHand & 0b11);
+    }
+
+    private void discardRedo() {
+        if (appliedEntries == entryCount) return;
+        entryCount = appliedEntries;
+        opCount = entryCount == 0 ? 0 : entryEnd[entryCount - 1];
+    }
+
+    /**
+     * Drops the oldest entries until the log is back under budget, keeping at least the newest one.
+     */
+    private void trimToBudget() {
+        if (opCount <= maxOps || entryCount <= 1) return;
+        int drop = 0;
+        while (drop < entryCount - 2 && opCount - entryEnd[drop] > maxOps * 3 / 4) drop++;
+        int droppedOps = entryEnd[drop];
+        int keepFrom = drop + 1;
+        System.arraycopy(ops, droppedOps, ops, 0, opCount - droppedOps);
+        opCount -= droppedOps;
+        for (int e = keepFrom; e < entryCount; e++) entryEnd[e - keepFrom] = entryEnd[e] - droppedOps;
+        entryCount -= keepFrom;
+        appliedEntries = Math.max(0, appliedEntries - keepFrom);
+        if (ops.length > 2 * Math.max(256, opCount)) ops = Arrays.copyOf(ops, Math.max(256, opCount));
+    }
+}
@@ -0,0 +1,206 @@
+package com.Tbence132545.Melodigram.model;
+
+import java.util.Arrays;
+
+/**
+ * Guesses which hand plays each note. Notes are grouped into onset clusters and every cluster is
+ * split at some pitch into a left and a right part; a dynamic programming pass picks the split
+ * sequence with the lowest total cost, where the cost punishes hand spans beyond a tenth, too many
+ * notes per hand, hands far from their usual register, a hand jumping between clusters, hands
+ * crossing, and disagreeing with the track or channel layout when the file has one bass and one
+ * treble part. Hands already assigned by the user are kept. A cluster of k notes has k + 1
+ * splits, each costing O(k) to score and O(k') to reach from the k' + 1 splits of the cluster
+ * before, so the pass is quadratic in cluster size: linear in the number of notes for piano
+ * chords, but a file that sounds hundreds of notes at once takes correspondingly longer.
+ */
+public final class HandSplitter {
+
+    private static final long CLUSTER_TOLERANCE_MS = PracticeCursor.DEFAULT_CHORD_TOLERANCE_MS;
+    private static final int MAX_SPAN = 16;          // a tenth, plus a little slack for large hands
+    private static final int MAX_NOTES_PER_HAND = 5;
+    private static final int LEFT_REGISTER_TOP = 64;
+    private static final int RIGHT_REGISTER_BOTTOM = 55;
+    private static final double SPAN_COST = 12;
+    private static final double CROWD_COST = 40;
+    private static final double REGISTER_COST = 0.5;
+    private static final double MOVE_COST = 0.6;
+    private static final double CROSSING_COST = 8;
+    private static final double HINT_COST = 6;
+    private static final double FIXED_COST = 1000;
+    private static final double MIN_HINT_SEPARATION = 7; // semitones between the two parts' mean pitch
+
+    private HandSplitter() {}
+
+    public static byte[] split(NoteTable notes) {
+        return split(notes, new byte[notes.size()]);
+    }
+
+    /**
+     * @param fixed hand codes already chosen by the user; {@link HandAssignmentStore#HAND_NONE} entries are free
+     * @return a {@link HandAssignmentStore} hand code for every note
+     */
+    public static byte[] split(NoteTable notes, byte[] fixed) {
+        int n = notes.size();
+        byte[] hands = new byte[n];
+        if (n == 0) return hands;
+        byte[] hint = partHints(notes);
+
+        // Cluster boundaries and, per cluster, note indices ordered by pitch
+        int[] clusterStart = new int[n + 1];
+        int clusters = 0;
+        for (int i = 0; i < n; ) {
+            clusterStart[clusters++] = i;
+            long onset = notes.onMillis(i);
+            do i++; while (i < n && notes.onMillis(i) - onset <= CLUSTER_TOLERANCE_MS);
+        }
+        clusterStart[clusters] = n;
+        int[] byPitch = new int[n];
+        long[] sortKey = new long[n];
+        for (int c = 0; c < clusters; c++) {
+            int from = clusterStart[c];
+            int to = clusterStart[c + 1];
+            for (int i = from; i < to; i++) sortKey[i] = (long) notes.pitch(i) << 32 | i;
+            Arrays.sort(sortKey, from, to);
+            for (int i = from; i < to; i++) byPitch[i] = (int) sortKey[i];
+        }
+
+        // A state of cluster c is its split point s: the s lowest notes go to the left hand
+        int[] stateOffset = new int[clusters + 1];
+        for (int c = 0; c < clusters; c++) {
+            stateOffset[c + 1] = stateOffset[c] + (clusterStart[c + 1] - clusterStart[c]) + 1;
+        }
+        int states = stateOffset[clusters];
+        double[] best = new double[states];
+        int[] from = new int[states];
+        float[] leftCenter = new float[states];  // hand positions after each state, carried through clusters where the hand rests
+        float[] rightCenter = new float[states];
+
+        for (int c = 0; c < clusters; c++) {
+            int first = clusterStart[c];
+            int size = clusterStart[c + 1] - first;
+            for (int s = 0; s <= size; s++) {
+                int state = stateOffset[c] + s;
+                double local = clusterCost(notes, byPitch, first, size, s, hint, fixed);
+                float left = s > 0 ? center(notes, byPitch, first, 0, s) : Float.NaN;
+                float right = s < size ? center(notes, byPitch, first, s, size) : Float.NaN;
+                if (c == 0) {
+                    best[state] = local;
+                    from[state] = -1;
+                    leftCenter[state] = Float.isNaN(left) ? LEFT_REGISTER_TOP - 12 : left;
+                    rightCenter[state] = Float.isNaN(right) ? RIGHT_REGISTER_BOTTOM + 12 : right;
+                    continue;
+                }
+                double bestCost = Double.MAX_VALUE;
+                int bestPrevious = -1;
+                for (int p = stateOffset[c - 1]; p < stateOffset[c]; p++) {
+                    double cost = best[p];
+                    if (!Float.isNaN(left)) cost += MOVE_COST * Math.abs(left - leftCenter[p]);
+                    if (!Float.isNaN(right)) cost += MOVE_COST * Math.abs(right - rightCenter[p]);
+                    // A resting hand stays where it was, and shouldn't end up on the wrong side of the other
+                    if ((Float.isNaN(left) ? leftCenter[p] : left) > (Float.isNaN(right) ? rightCenter[p] : right)) {
+                        cost += CROSSING_COST;
+                    }
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        bestPrevious = p;
+                    }
+                }
+                best[state] = bestCost + local;
+                from[state] = bestPrevious;
+                leftCenter[state] = Float.isNaN(left) ? leftCenter[bestPrevious] : left;
+                rightCenter[state] = Float.isNaN(right) ? rightCenter[bestPrevious] : right;
+            }
+        }
+
+        int state = stateOffset[clusters - 1];
+        for (int s = stateOffset[clusters - 1]; s < states; s++) {
+            if (best[s] < best[state]) state = s;
+        }
+        for (int c = clusters - 1; c >= 0; c--) {
+            int split = state - stateOffset[c];
+            int first = clusterStart[c];
+            int size = clusterStart[c + 1] - first;
+            for (int k = 0; k < size; k++) {
+                hands[byPitch[first + k]] = k < split ? HandAssignmentStore.HAND_LEFT : HandAssignmentStore.HAND_RIGHT;
+            }
+            state = from[state];
+        }
+        for (int i = 0; i < n; i++) {
+            if (fixed[i] != HandAssignmentStore.HAND_NONE) hands[i] = fixed[i];
+        }
+        return hands;
+    }
+
+    private static double clusterCost(NoteTable notes, int[] byPitch, int first, int size, int split, byte[] hint, byte[] fixed) {
+        double cost = 0;
+        if (split > 0) cost += handCost(notes, byPitch, first, 0, split);
+        if (split < size) cost += handCost(notes, byPitch, first, split, size);
+        for (int k = 0; k < size; k++) {
+            int note = byPitch[first + k];
+            int pitch = notes.pitch(note);
+            byte hand = k < split ? HandAssignmentStore.HAND_LEFT : HandAssignmentStore.HAND_RIGHT;
+            cost += hand == HandAssignmentStore.HAND_LEFT
+                    ? REGISTER_COST * Math.max(0, pitch - LEFT_REGISTER_TOP)
+                    : REGISTER_COST * Math.max(0, RIGHT_REGISTER_BOTTOM - pitch);
+            if (hint[note] != HandAssignmentStore.HAND_NONE && hint[note] != hand) cost += HINT_COST;
+            if (fixed[note] != HandAssignmentStore.HAND_NONE && fixed[note] != hand) cost += FIXED_COST;
+        }
+        return cost;
+    }
+
+    private static double handCost(NoteTable notes, int[] byPitch, int first, int from, int to) {
+        int span = notes.pitch(byPitch[first + to - 1]) - notes.pitch(byPitch[first + from]);
+        int count = to - from;
+        return SPAN_COST * Math.max(0, span - MAX_SPAN) + CROWD_COST * Math.max(0, count - MAX_NOTES_PER_HAND);
+    }
+
+    private static float center(NoteTable notes, int[] byPitch, int first, int from, int to) {
+        return (notes.pitch(byPitch[first + from]) + notes.pitch(byPitch[first + to - 1])) / 2f;
+    }
+
+    /**
+     * Per-note hand suggested by the file layout, when the notes come in exactly two tracks or
+     * channels of which one sits clearly lower than the other; otherwise all {@code HAND_NONE}.
+     */
+    private static byte[] partHints(NoteTable notes) {
+        int n = notes.size();
+        byte[] hint = new byte[n];
+        int[] part = new int[n];
+        boolean byTrack = distinctParts(notes, true, part) == 2;
+        if (!byTrack && distinctParts(notes, false, part) != 2) return hint;
+        double[] sum = new double[2];
+        int[] count = new int[2];
+        for (int i = 0; i < n; i++) {
+            sum[part[i]] += notes.pitch(i);
+            count[part[i]]++;
+        }
+        if (Math.min(count[0], count[1]) < n / 10) return hint; // a few stray notes, not a second hand
+        double mean0 = sum[0] / count[0];
+        double mean1 = sum[1] / count[1];
+        if (Math.abs(mean0 - mean1) < MIN_HINT_SEPARATION) return hint;
+        int lowerPart = mean0 < mean1 ? 0 : 1;
+        for (int i = 0; i < n; i++) {
+            hint[i] = part[i] == lowerPart ? HandAssignmentStore.HAND_LEFT : HandAssignmentStore.HAND_RIGHT;
+        }
+        return hint;
+    }
+
+    /**
+     * Numbers the tracks (or channels) in use as 0, 1, ... into {@code part} and returns how many there are.
+     */
+    private static int distinctParts(NoteTable notes, boolean byTrack, int[] part) {
+        int[] ids = new int[2];
+        int distinct = 0;
+        for (int i = 0; i < notes.size(); i++) {
+            int id = byTrack ? notes.track(i) : notes.channel(i);
+            int index = distinct > 0 && ids[0] == id ? 0 : distinct > 1 && ids[1] == id ? 1 : -1;
+            if (index < 0) {
+                if (distinct == 2) return 3;
+                ids[distinct] = id;
+                index = distinct++;
+            }
+            part[i] = index;
+        }
+        return distinct;
+    }
+}
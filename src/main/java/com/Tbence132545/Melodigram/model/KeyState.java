@@ -0,0 +1,131 @@
+package com.Tbence132545.Melodigram.model;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.function.IntConsumer;
+
+/**
+ * A set of MIDI pitches 0-127 held in two longs. Single-pitch updates are atomic, so a key
+ * state may be written by a MIDI thread and read elsewhere; set comparisons are a few
+ * bitwise operations and nothing here allocates.
+ */
+public final class KeyState {
+
+    private static final VarHandle LOW;
+    private static final VarHandle HIGH;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            LOW = lookup.findVarHandle(KeyState.class, "low", long.class);
+            HIGH = lookup.findVarHandle(KeyState.class, "high", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private volatile long low;  // pitches 0-63
+    private volatile long high; // pitches 64-127
+
+    /**
+     * Adds the pitch and returns true if it was not already in the set.
+     */
+    public boolean add(int pitch) {
+        // Shift distances are taken mod 64, so the same bit expression serves both words
+        long bit = 1L << pitch;
+        long previous = pitch < 64 ? (long) LOW.getAndBitwiseOr(this, bit) : (long) HIGH.getAndBitwiseOr(this, bit);
+        return (previous & bit) == 0;
+    }
+
+    /**
+     * Removes the pitch and returns true if it was in the set.
+     */
+    public boolean remove(int pitch) {
+        long bit = 1L << pitch;
+        long previous = pitch < 64 ? (long) LOW.getAndBitwiseAnd(this, ~bit) : (long) HIGH.getAndBitwiseAnd(this, ~bit);
+        return (previous & bit) != 0;
+    }
+
+    public boolean contains(int pitch) {
+        long bit = 1L << pitch;
+        return ((pitch < 64 ? low : high) & bit) != 0;
+    }
+
+    public void clear() {
+        low = 0;
+        high = 0;
+    }
+
+    public void copyFrom(KeyState other) {
+        low = other.low;
+        high = other.high;
+    }
+
+    public void addAll(KeyState other) {
+        addWords(other.low, other.high);
+    }
+
+    void addWords(long lowWord, long highWord) {
+        LOW.getAndBitwiseOr(this, lowWord);
+        HIGH.getAndBitwiseOr(this, highWord);
+    }
+
+    public boolean isEmpty() {
+        return (low | high) == 0;
+    }
+
+    public int size() {
+        return Long.bitCount(low) + Long.bitCount(high);
+    }
+
+    /**
+     * True when every pitch of this set is also in {@code other}.
+     */
+    public boolean isSubsetOf(KeyState other) {
+        return (low & ~other.low) == 0 && (high & ~other.high) == 0;
+    }
+
+    public boolean sameKeys(KeyState other) {
+        return low == other.low && high == other.high;
+    }
+
+    /**
+     * Lowest pitch at or above {@code fromPitch}, or -1. Loop with {@code nextKey(p + 1)} to iterate.
+     */
+    public int nextKey(int fromPitch) {
+        if (fromPitch < 64) {
+            long word = low & (-1L << fromPitch);
+            if (word != 0) return Long.numberOfTrailingZeros(word);
+            fromPitch = 64;
+        }
+        if (fromPitch > 127) return -1;
+        long word = high & (-1L << (fromPitch - 64));
+        return word != 0 ? 64 + Long.numberOfTrailingZeros(word) : -1;
+    }
+
+    public void forEach(IntConsumer action) {
+        for (int p = nextKey(0); p >= 0; p = nextKey(p + 1)) {
+            action.accept(p);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof KeyState other && sameKeys(other);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(low) * 31 + Long.hashCode(high);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int p = nextKey(0); p >= 0; p = nextKey(p + 1)) {
+            if (sb.length() > 1) sb.append(", ");
+            sb.append(p);
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,96 @@
+package com.Tbence132545.Melodigram.model;
+
+import java.util.Arrays;
+
+/**
+ * Measures how long a key press takes to show up on the keyboard. Each note-on is stamped when
+ * the input receiver gets it, when the controller applies it, and when the lit key is painted;
+ * the two intervals go into fixed-bucket histograms. All calls must come from one thread (the EDT).
+ */
+public final class LatencyProbe {
+
+    public record Report(long samples, double p50Millis, double p95Millis, double p99Millis, double maxMillis) {
+        @Override
+        public String toString() {
+            return String.format("n=%d p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms", samples, p50Millis, p95Millis, p99Millis, maxMillis);
+        }
+    }
+
+    private static final int BUCKET_MICROS = 50;
+    private static final int BUCKETS = 4000; // 200 ms in 50 µs steps, slower samples land in the last bucket
+
+    private final long[] receivedAt = new long[128];
+    private final long[] appliedAt = new long[128];
+    private final Histogram toApply = new Histogram();
+    private final Histogram toPaint = new Histogram();
+
+    public void received(int pitch, long nanoTime) {
+        receivedAt[pitch] = nanoTime;
+        appliedAt[pitch] = 0;
+    }
+
+    public void applied(int pitch, long nanoTime) {
+        if (receivedAt[pitch] == 0) return;
+        appliedAt[pitch] = nanoTime;
+        toApply.add(nanoTime - receivedAt[pitch]);
+    }
+
+    /**
+     * The key was painted while lit; the first paint after a press completes its measurement.
+     */
+    public void keyPainted(int pitch, long nanoTime) {
+        if (receivedAt[pitch] == 0 || appliedAt[pitch] == 0) return;
+        toPaint.add(nanoTime - receivedAt[pitch]);
+        receivedAt[pitch] = 0;
+        appliedAt[pitch] = 0;
+    }
+
+    public Report applyReport() {
+        return toApply.report();
+    }
+
+    public Report paintReport() {
+        return toPaint.report();
+    }
+
+    public void reset() {
+        Arrays.fill(receivedAt, 0);
+        Arrays.fill(appliedAt, 0);
+        toApply.reset();
+        toPaint.reset();
+    }
+
+    private static final class Histogram {
+        private final long[] counts = new long[BUCKETS];
+        private long samples;
+        private long maxNanos;
+
+        void add(long nanos) {
+            long bucket = Math.max(0, nanos) / 1000 / BUCKET_MICROS;
+            counts[(int) Math.min(BUCKETS - 1, bucket)]++;
+            samples++;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        Report report() {
+            return new Report(samples, percentile(0.50), percentile(0.95), percentile(0.99), maxNanos / 1_000_000.0);
+        }
+
+        private double percentile(double p) {
+            if (samples == 0) return 0;
+            long rank = (long) Math.ceil(p * samples);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) return (i + 1) * BUCKET_MICROS / 1000.0; // upper bucket edge
+            }
+            return maxNanos / 1_000_000.0;
+        }
+
+        void reset() {
+            Arrays.fill(counts, 0);
+            samples = 0;
+            maxNanos = 0;
+        }
+    }
+}
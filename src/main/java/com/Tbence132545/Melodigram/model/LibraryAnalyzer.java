@@ -0,0 +1,168 @@
+package com.Tbence132545.Melodigram.model;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs {@link PieceAnalysis} over the whole library, one fork-join task per file, and keeps the
+ * results in a tab-separated file next to the other app data. Each result remembers the size and
+ * modification time of the file it came from, so only new or changed files are analysed again.
+ * A pass loads, merges and saves the whole file, so passes over the same file must not overlap.
+ */
+public final class LibraryAnalyzer {
+
+    private static final String HEADER = "# Melodigram library analysis v1";
+    private static final int FIELDS = 11;
+
+    private record Stamped(long size, long modified, PieceAnalysis analysis) {}
+
+    private final Path file;
+    private final MidiFileService midiFileService;
+    private final ForkJoinPool pool;
+
+    public LibraryAnalyzer(Path file, MidiFileService midiFileService) {
+        this(file, midiFileService, ForkJoinPool.commonPool());
+    }
+
+    public LibraryAnalyzer(Path file, MidiFileService midiFileService, ForkJoinPool pool) {
+        this.file = file;
+        this.midiFileService = midiFileService;
+        this.pool = pool;
+    }
+
+    public static LibraryAnalyzer openDefault(MidiFileService midiFileService) {
+        return new LibraryAnalyzer(AppDirectories.resolve("library-analysis.tsv"), midiFileService);
+    }
+
+    /**
+     * Analysis of every named file that could be read, reusing stored results for unchanged files.
+     * Blocks until the parallel pass is done, so call it off the EDT.
+     */
+    public Map<String, PieceAnalysis> analyzeLibrary(List<String> names) {
+        return analyze(names, List.of(), true);
+    }
+
+    /**
+     * Analysis of just the given files, which may have changed, keeping the stored results of the
+     * rest of the library and dropping those of removed files.
+     */
+    public Map<String, PieceAnalysis> analyzeChanged(List<String> names, Collection<String> removed) {
+        return analyze(names, removed, false);
+    }
+
+    private Map<String, PieceAnalysis> analyze(List<String> names, Collection<String> removed, boolean wholeLibrary) {
+        Map<String, Stamped> stored = load();
+        Map<String, Stamped> results = new ConcurrentHashMap<>();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (String name : names) {
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    Stamped result = analyzeIfChanged(name, stored.get(name));
+                    if (result != null) results.put(name, result);
+                }
+            });
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+
+        boolean changed = wholeLibrary ? results.size() != stored.size() : stored.keySet().removeAll(removed);
+        for (Map.Entry<String, Stamped> entry : results.entrySet()) {
+            changed |= stored.get(entry.getKey()) != entry.getValue();
+        }
+        if (changed) {
+            Map<String, Stamped> kept = results;
+            if (!wholeLibrary) {
+                kept = new HashMap<>(stored);
+                kept.putAll(results);
+            }
+            try {
+                save(kept);
+            } catch (IOException e) {
+                System.err.println("Could not save library analysis: " + e.getMessage());
+            }
+        }
+        Map<String, PieceAnalysis> analyses = new HashMap<>();
+        results.forEach((name, stamped) -> analyses.put(name, stamped.analysis()));
+        return analyses;
+    }
+
+    private Stamped analyzeIfChanged(String name, Stamped previous) {
+        try {
+            long[] stamp = midiFileService.fileStamp(name);
+            if (previous != null && previous.size() == stamp[0] && previous.modified() == stamp[1]) return previous;
+            PieceAnalysis analysis = PieceAnalysis.analyze(SequencePreprocessor.preprocess(midiFileService.loadSequence(name)));
+            return new Stamped(stamp[0], stamp[1], analysis);
+        } catch (Exception e) {
+            System.err.println("Could not analyse " + name + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private Map<String, Stamped> load() {
+        Map<String, Stamped> stored = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(reader.readLine())) return stored;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] f = line.split("\t");
+                if (f.length != FIELDS) continue;
+                try {
+                    PieceAnalysis analysis = new PieceAnalysis(Long.parseLong(f[3]), Integer.parseInt(f[4]),
+                            Double.parseDouble(f[5]), Integer.parseInt(f[6]), Integer.parseInt(f[7]),
+                            Integer.parseInt(f[8]), Integer.parseInt(f[9]), Float.parseFloat(f[10]));
+                    stored.put(f[0], new Stamped(Long.parseLong(f[1]), Long.parseLong(f[2]), analysis));
+                } catch (NumberFormatException e) {
+                    // a damaged line only costs that file a fresh analysis
+                }
+            }
+        } catch (NoSuchFileException e) {
+            return stored;
+        } catch (IOException e) {
+            System.err.println("Could not read library analysis: " + e.getMessage());
+        }
+        return stored;
+    }
+
+    private void save(Map<String, Stamped> results) throws IOException {
+        Files.createDirectories(file.getParent());
+        String[] names = results.keySet().toArray(new String[0]);
+        Arrays.sort(names);
+        AtomicFiles.write(file, temp -> {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writer.write(HEADER);
+                writer.newLine();
+                for (String name : names) {
+                    if (name.indexOf('\t') >= 0 || name.indexOf('\n') >= 0) continue;
+                    Stamped s = results.get(name);
+                    PieceAnalysis a = s.analysis();
+                    writer.write(String.join("\t", name, Long.toString(s.size()), Long.toString(s.modified()),
+                            Long.toString(a.durationMillis()), Integer.toString(a.noteCount()), Double.toString(a.notesPerSecond()),
+                            Integer.toString(a.maxChordSize()), Integer.toString(a.pitchSpan()),
+                            Integer.toString(a.handSpanViolations()), Integer.toString(a.tempoChanges()),
+                            Float.toString(a.difficulty())));
+                    writer.newLine();
+                }
+            }
+        });
+    }
+}
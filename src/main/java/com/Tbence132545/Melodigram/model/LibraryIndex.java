@@ -0,0 +1,424 @@
+package com.Tbence132545.Melodigram.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory search over the MIDI library. Every entry's searchable text (file name words plus any
+ * metadata words such as the composer) is broken into trigrams with an inverted index from trigram
+ * to entries; a query word scores each entry by how many of its trigrams it shares, so small typos
+ * still match, and words of up to three letters use a sorted word table for prefix lookups.
+ * Query words are ANDed, and {@code dur<3m}, {@code dur>=90s}, {@code diff<4} style terms filter on
+ * duration and difficulty once those are known. Queries run in a few milliseconds for 50k entries.
+ */
+public final class LibraryIndex {
+
+    private static final double MIN_TRIGRAM_SHARE = 0.6;
+    private static final int MIN_TRIGRAM_TERM = 4; // shorter words are matched as exact prefixes
+    private static final int[] NO_ENTRIES = new int[0];
+
+    private String[] names;
+    private String[][] extraWords;
+    private long[] durationMillis;
+    private float[] difficulty;
+    private final Map<Long, int[]> postings = new HashMap<>();
+    private String[] words;       // every distinct entry word, sorted, for prefix search
+    private int[][] wordEntries;  // entries containing each word
+    private int[] scores;
+    private int[] touched;
+
+    /**
+     * @param names the library in list order, which is sorted by name
+     */
+    public LibraryIndex(List<String> names) {
+        this.names = names.toArray(new String[0]);
+        int n = this.names.length;
+        this.extraWords = new String[n][];
+        this.durationMillis = new long[n];
+        this.difficulty = new float[n];
+        Arrays.fill(durationMillis, -1);
+        Arrays.fill(difficulty, Float.NaN);
+        this.scores = new int[n];
+        this.touched = new int[n];
+        rebuild();
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public String name(int entry) {
+        return names[entry];
+    }
+
+    public int indexOf(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    public long getDurationMillis(int entry) {
+        return durationMillis[entry];
+    }
+
+    public float getDifficulty(int entry) {
+        return difficulty[entry];
+    }
+
+    /**
+     * Attaches metadata to an entry. Words (e.g. the composer) become searchable after
+     * {@link #rebuild()}; unknown values are -1 for duration and NaN for difficulty.
+     */
+    public void setMetadata(int entry, long durationMillis, float difficulty, String... words) {
+        this.durationMillis[entry] = durationMillis;
+        this.difficulty[entry] = difficulty;
+        this.extraWords[entry] = words;
+    }
+
+    /**
+     * Inserts a file at its sorted position, updating the tables in place; the entries after it
+     * move up by one. Returns the new entry, or -1 if the name is already there.
+     */
+    public synchronized int add(String name) {
+        int entry = Arrays.binarySearch(names, name);
+        if (entry >= 0) return -1;
+        entry = -entry - 1;
+        renumber(entry, 1);
+        int n = names.length + 1;
+        names = insertAt(names, entry, name);
+        extraWords = insertAt(extraWords, entry, null);
+        long[] durations = new long[n];
+        float[] difficulties = new float[n];
+        for (int i = 0, from = 0; i < n; i++) {
+            durations[i] = i == entry ? -1 : durationMillis[from];
+            difficulties[i] = i == entry ? Float.NaN : difficulty[from++];
+        }
+        durationMillis = durations;
+        difficulty = difficulties;
+        scores = new int[n];
+        touched = new int[n];
+        for (String word : entryWords(entry)) {
+            int w = Arrays.binarySearch(words, word);
+            if (w >= 0) {
+                wordEntries[w] = withEntry(wordEntries[w], entry);
+            } else {
+                w = -w - 1;
+                words = insertAt(words, w, word);
+                wordEntries = insertAt(wordEntries, w, new int[]{entry});
+            }
+            for (long trigram : trigrams(word)) {
+                int[] list = postings.get(trigram);
+                postings.put(trigram, list == null ? new int[]{entry} : withEntry(list, entry));
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Removes a file, updating the tables in place; the entries after it move down by one.
+     * Returns the entry it had, or -1 if it wasn't there.
+     */
+    public synchronized int remove(String name) {
+        int entry = indexOf(name);
+        if (entry < 0) return -1;
+        for (String word : entryWords(entry)) {
+            int w = Arrays.binarySearch(words, word);
+            if (w < 0) continue;
+            wordEntries[w] = withoutEntry(wordEntries[w], entry);
+            if (wordEntries[w].length == 0) {
+                words = removeAt(words, w);
+                wordEntries = removeAt(wordEntries, w);
+            }
+            for (long trigram : trigrams(word)) {
+                int[] list = postings.get(trigram);
+                if (list == null) continue;
+                list = withoutEntry(list, entry);
+                if (list.length == 0) postings.remove(trigram);
+                else postings.put(trigram, list);
+            }
+        }
+        renumber(entry + 1, -1);
+        int n = names.length - 1;
+        names = removeAt(names, entry);
+        extraWords = removeAt(extraWords, entry);
+        long[] durations = new long[n];
+        float[] difficulties = new float[n];
+        for (int i = 0; i < n; i++) {
+            int from = i < entry ? i : i + 1;
+            durations[i] = durationMillis[from];
+            difficulties[i] = difficulty[from];
+        }
+        durationMillis = durations;
+        difficulty = difficulties;
+        scores = new int[n];
+        touched = new int[n];
+        return entry;
+    }
+
+    /**
+     * Rebuilds the word and trigram tables, after metadata words changed.
+     */
+    public synchronized void rebuild() {
+        Map<Long, IntList> trigramLists = new HashMap<>();
+        Map<String, IntList> wordLists = new HashMap<>();
+        for (int entry = 0; entry < names.length; entry++) {
+            for (String word : entryWords(entry)) {
+                wordLists.computeIfAbsent(word, w -> new IntList()).addOnce(entry);
+                for (long trigram : trigrams(word)) {
+                    trigramLists.computeIfAbsent(trigram, t -> new IntList()).addOnce(entry);
+                }
+            }
+        }
+        postings.clear();
+        trigramLists.forEach((trigram, list) -> postings.put(trigram, list.toArray()));
+        words = wordLists.keySet().toArray(new String[0]);
+        Arrays.sort(words);
+        wordEntries = new int[words.length][];
+        for (int i = 0; i < words.length; i++) {
+            wordEntries[i] = wordLists.get(words[i]).toArray();
+        }
+    }
+
+    /**
+     * Entries matching the query, best match first; all entries in library order for a blank query.
+     */
+    public synchronized int[] search(String query) {
+        List<Filter> filters = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        for (String term : query.toLowerCase(Locale.ROOT).trim().split("\\s+")) {
+            Filter filter = Filter.parse(term);
+            if (filter != null) filters.add(filter);
+            else text.append(normalize(term)).append(' ');
+        }
+        boolean[] keep = null;
+        int[] total = new int[names.length];
+        for (String term : text.toString().trim().split(" +")) {
+            if (term.isEmpty()) continue;
+            boolean[] matched = new boolean[names.length];
+            int count = term.length() < MIN_TRIGRAM_TERM ? prefixMatches(term, matched) : trigramMatches(term, matched, total);
+            if (count == 0) return NO_ENTRIES;
+            if (keep == null) {
+                keep = matched;
+            } else {
+                for (int i = 0; i < keep.length; i++) keep[i] &= matched[i];
+            }
+        }
+        int resultCount = 0;
+        int[] result = new int[names.length];
+        for (int entry = 0; entry < names.length; entry++) {
+            if ((keep == null || keep[entry]) && passesFilters(entry, filters)) result[resultCount++] = entry;
+        }
+        result = Arrays.copyOf(result, resultCount);
+        if (keep != null) {
+            // Higher trigram score first, then library order; packed so the sort stays primitive
+            long[] order = new long[resultCount];
+            for (int i = 0; i < resultCount; i++) {
+                order[i] = (long) (Integer.MAX_VALUE - total[result[i]]) << 32 | result[i];
+            }
+            Arrays.sort(order);
+            for (int i = 0; i < resultCount; i++) result[i] = (int) order[i];
+        }
+        return result;
+    }
+
+    /**
+     * The given entries (all of them for null) ordered from easiest to hardest, entries without a
+     * known difficulty last; equal difficulties keep their order.
+     */
+    public int[] sortedByDifficulty(int[] entries) {
+        Integer[] order = new Integer[entries != null ? entries.length : names.length];
+        for (int i = 0; i < order.length; i++) order[i] = entries != null ? entries[i] : i;
+        Arrays.sort(order, (a, b) -> {
+            float da = difficulty[a];
+            float db = difficulty[b];
+            if (Float.isNaN(da) || Float.isNaN(db)) return Boolean.compare(Float.isNaN(da), Float.isNaN(db));
+            return Float.compare(da, db);
+        });
+        int[] sorted = new int[order.length];
+        for (int i = 0; i < sorted.length; i++) sorted[i] = order[i];
+        return sorted;
+    }
+
+    /**
+     * Shifts every stored entry number from {@code from} up by {@code delta}; lists stay sorted.
+     */
+    private void renumber(int from, int delta) {
+        for (int[] list : postings.values()) shift(list, from, delta);
+        for (int[] list : wordEntries) shift(list, from, delta);
+    }
+
+    private static void shift(int[] sortedEntries, int from, int delta) {
+        int i = Arrays.binarySearch(sortedEntries, from);
+        for (i = i < 0 ? -i - 1 : i; i < sortedEntries.length; i++) sortedEntries[i] += delta;
+    }
+
+    private static int[] withEntry(int[] sortedEntries, int entry) {
+        int i = Arrays.binarySearch(sortedEntries, entry);
+        if (i >= 0) return sortedEntries;
+        i = -i - 1;
+        int[] result = new int[sortedEntries.length + 1];
+        System.arraycopy(sortedEntries, 0, result, 0, i);
+        result[i] = entry;
+        System.arraycopy(sortedEntries, i, result, i + 1, sortedEntries.length - i);
+        return result;
+    }
+
+    private static int[] withoutEntry(int[] sortedEntries, int entry) {
+        int i = Arrays.binarySearch(sortedEntries, entry);
+        return i < 0 ? sortedEntries : removeAt(sortedEntries, i);
+    }
+
+    private static int[] removeAt(int[] array, int index) {
+        int[] result = new int[array.length - 1];
+        System.arraycopy(array, 0, result, 0, index);
+        System.arraycopy(array, index + 1, result, index, result.length - index);
+        return result;
+    }
+
+    private static <T> T[] insertAt(T[] array, int index, T value) {
+        T[] result = Arrays.copyOf(array, array.length + 1);
+        System.arraycopy(array, index, result, index + 1, array.length - index);
+        result[index] = value;
+        return result;
+    }
+
+    private static <T> T[] removeAt(T[] array, int index) {
+        T[] result = Arrays.copyOf(array, array.length - 1);
+        System.arraycopy(array, index + 1, result, index, result.length - index);
+        return result;
+    }
+
+    private int prefixMatches(String prefix, boolean[] matched) {
+        int from = Arrays.binarySearch(words, prefix);
+        if (from < 0) from = -from - 1;
+        int count = 0;
+        for (int w = from; w < words.length && words[w].startsWith(prefix); w++) {
+            for (int entry : wordEntries[w]) {
+                if (!matched[entry]) count++;
+                matched[entry] = true;
+            }
+        }
+        return count;
+    }
+
+    private int trigramMatches(String term, boolean[] matched, int[] total) {
+        long[] termTrigrams = trigrams(term);
+        int touchedCount = 0;
+        for (long trigram : termTrigrams) {
+            int[] list = postings.get(trigram);
+            if (list == null) continue;
+            for (int entry : list) {
+                if (scores[entry]++ == 0) touched[touchedCount++] = entry;
+            }
+        }
+        // The word-start trigram is a bonus, so the rest of a word also matches as a substring
+        int needed = Math.max(2, (int) Math.ceil((termTrigrams.length - 1) * MIN_TRIGRAM_SHARE));
+        int count = 0;
+        for (int t = 0; t < touchedCount; t++) {
+            int entry = touched[t];
+            if (scores[entry] >= needed) {
+                matched[entry] = true;
+                total[entry] += scores[entry];
+                count++;
+            }
+            scores[entry] = 0;
+        }
+        return count;
+    }
+
+    private boolean passesFilters(int entry, List<Filter> filters) {
+        for (Filter filter : filters) {
+            if (filter.duration() ? durationMillis[entry] < 0 : Float.isNaN(difficulty[entry])) return false;
+            if (!filter.test(filter.duration() ? durationMillis[entry] / 1000.0 : difficulty[entry])) return false;
+        }
+        return true;
+    }
+
+    /**
+     * A {@code dur} or {@code diff} comparison from the query; durations are in seconds, and take
+     * an {@code s} or {@code m} suffix with minutes as the default.
+     */
+    private record Filter(boolean duration, String op, double limit) {
+        private static final Pattern SYNTAX = Pattern.compile("(dur|diff)(<=|>=|<|>|=)([0-9]+(?:\\.[0-9]+)?)([sm]?)");
+
+        static Filter parse(String term) {
+            Matcher m = SYNTAX.matcher(term);
+            if (!m.matches()) return null;
+            boolean duration = m.group(1).equals("dur");
+            double value = Double.parseDouble(m.group(3));
+            if (duration && !m.group(4).equals("s")) value *= 60;
+            return new Filter(duration, m.group(2), value);
+        }
+
+        boolean test(double actual) {
+            return switch (op) {
+                case "<" -> actual < limit;
+                case "<=" -> actual <= limit;
+                case ">" -> actual > limit;
+                case ">=" -> actual >= limit;
+                default -> actual == limit;
+            };
+        }
+    }
+
+    private String[] entryWords(int entry) {
+        String name = names[entry];
+        int dot = name.lastIndexOf('.');
+        String text = normalize(dot > 0 ? name.substring(0, dot) : name);
+        String[] extra = extraWords[entry];
+        if (extra != null && extra.length > 0) text += " " + normalize(String.join(" ", extra));
+        return text.trim().split(" +");
+    }
+
+    /**
+     * Lower case with everything but letters and digits turned into spaces.
+     */
+    private static String normalize(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            sb.append(Character.isLetterOrDigit(c) ? c : ' ');
+        }
+        return sb.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Distinct trigrams of the word padded with a leading space, so word starts weigh in; each is
+     * three UTF-16 chars packed into a long.
+     */
+    private static long[] trigrams(String word) {
+        String padded = " " + word;
+        long[] trigrams = new long[Math.max(0, padded.length() - 2)];
+        for (int i = 0; i < trigrams.length; i++) {
+            trigrams[i] = (long) padded.charAt(i) << 32 | (long) padded.charAt(i + 1) << 16 | padded.charAt(i + 2);
+        }
+        Arrays.sort(trigrams);
+        int distinct = 0;
+        for (int i = 0; i < trigrams.length; i++) {
+            if (i == 0 || trigrams[i] != trigrams[i - 1]) trigrams[distinct++] = trigrams[i];
+        }
+        return Arrays.copyOf(trigrams, distinct);
+    }
+
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void addOnce(int value) {
+            if (size > 0 && values[size - 1] == value) return; // callers add in ascending order
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.Tbence132545.Melodigram.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer/single-consumer queue of short MIDI messages.
+ * Each event is stored as two longs (packed status/data bytes and a {@link System#nanoTime()}
+ * stamp), so offering and draining never allocate. One ring per MIDI source: the source's
+ * thread offers, the controller drains on the EDT.
+ */
+public final class MidiEventRing {
+
+    public interface Handler {
+        void onEvent(int status, int data1, int data2, long nanoTime);
+    }
+
+    private final long[] slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public MidiEventRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new long[size * 2];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Producer side. Returns false and counts the event as dropped when the ring is full.
+     */
+    public boolean offer(int status, int data1, int data2, long nanoTime) {
+        long h = head.get();
+        if (h - tail.get() > mask) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        int slot = (int) (h & mask) << 1;
+        slots[slot] = ((status & 0xFF) << 16) | ((data1 & 0x7F) << 8) | (data2 & 0x7F);
+        slots[slot + 1] = nanoTime;
+        head.lazySet(h + 1);
+        return true;
+    }
+
+    /**
+     * Consumer side. Hands every queued event to the handler and returns how many there were.
+     */
+    public int drain(Handler handler) {
+        long t = tail.get();
+        long h = head.get();
+        if (t == h) return 0;
+        for (long i = t; i < h; i++) {
+            int slot = (int) (i & mask) << 1;
+            int packed = (int) slots[slot];
+            handler.onEvent(packed >>> 16 & 0xFF, packed >>> 8 & 0x7F, packed & 0x7F, slots[slot + 1]);
+        }
+        tail.lazySet(h);
+        return (int) (h - t);
+    }
+
+    /**
+     * Consumer side. Discards everything queued so far.
+     */
+    public void clear() {
+        tail.lazySet(head.get());
+    }
+
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public static boolean isNoteOn(int status, int velocity) {
+        return (status & 0xF0) == 0x90 && velocity > 0;
+    }
+
+    public static boolean isNoteOff(int status, int velocity) {
+        return (status & 0xF0) == 0x80 || ((status & 0xF0) == 0x90 && velocity == 0);
+    }
+}
@@ -3,17 +3,20 @@ package com.Tbence132545.Melodigram.model;
 
 import javax.sound.midi.MidiSystem;
 import javax.sound.midi.Sequence;
+import javax.sound.midi.Track;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.JarURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.stream.Collectors;
@@ -42,24 +45,128 @@ public class MidiFileService {
 
 
     public MidiData loadMidiData(String midiFileName) throws Exception {
+        FlightEvents.FileLoad event = new FlightEvents.FileLoad();
+        event.begin();
         MidiPlayer midiPlayer = new MidiPlayer();
         Sequence sequence;
 
         Path externalFile = externalMidiDir.resolve(midiFileName);
         if (Files.exists(externalFile)) {
             midiPlayer.loadMidiFromFile(externalFile.toAbsolutePath().toString());
-            sequence = MidiSystem.getSequence(externalFile.toFile());
+            sequence = parse(externalFile.toFile());
         } else {
             String resourcePath = INTERNAL_MIDI_DIR + midiFileName;
             midiPlayer.loadMidiFromResources(resourcePath);
             try (InputStream is = getClass().getClassLoader().getResourceAsStream(resourcePath)) {
                 if (is == null) throw new FileNotFoundException("Cannot find resource: " + resourcePath);
-                sequence = MidiSystem.getSequence(is);
+                sequence = parse(is);
             }
         }
+        event.file = midiFileName;
+        event.external = Files.exists(externalFile);
+        event.commit();
         return new MidiData(midiPlayer, sequence);
     }
 
+    /**
+     * Loads only the sequence, without opening a sequencer or synthesizer.
+     */
+    public Sequence loadSequence(String midiFileName) throws Exception {
+        FlightEvents.FileLoad event = new FlightEvents.FileLoad();
+        event.begin();
+        event.file = midiFileName;
+        Path externalFile = externalMidiDir.resolve(midiFileName);
+        Sequence sequence;
+        if (Files.exists(externalFile)) {
+            event.external = true;
+            sequence = parse(externalFile.toFile());
+        } else {
+            String resourcePath = INTERNAL_MIDI_DIR + midiFileName;
+            try (InputStream is = getClass().getClassLoader().getResourceAsStream(resourcePath)) {
+                if (is == null) throw new FileNotFoundException("Cannot find resource: " + resourcePath);
+                sequence = parse(is);
+            }
+        }
+        event.commit();
+        return sequence;
+    }
+
+    private static Sequence parse(File file) throws Exception {
+        FlightEvents.Parse event = new FlightEvents.Parse();
+        event.begin();
+        return parsed(event, MidiSystem.getSequence(file));
+    }
+
+    private static Sequence parse(InputStream in) throws Exception {
+        FlightEvents.Parse event = new FlightEvents.Parse();
+        event.begin();
+        return parsed(event, MidiSystem.getSequence(in));
+    }
+
+    private static Sequence parsed(FlightEvents.Parse event, Sequence sequence) {
+        event.end();
+        if (event.shouldCommit()) {
+            Track[] tracks = sequence.getTracks();
+            event.tracks = tracks.length;
+            for (Track track : tracks) event.events += track.size();
+            event.commit();
+        }
+        return sequence;
+    }
+
+    /**
+     * The raw file contents, for hashing or parsing off the EDT.
+     */
+    public byte[] readMidiBytes(String midiFileName) throws IOException {
+        Path externalFile = externalMidiDir.resolve(midiFileName);
+        if (Files.exists(externalFile)) {
+            return Files.readAllBytes(externalFile);
+        }
+        String resourcePath = INTERNAL_MIDI_DIR + midiFileName;
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream(resourcePath)) {
+            if (is == null) throw new FileNotFoundException("Cannot find resource: " + resourcePath);
+            return is.readAllBytes();
+        }
+    }
+
+    /**
+     * Size and modification time of a file, {@code {size, lastModifiedMillis}}, to tell whether it
+     * changed since it was last looked at.
+     */
+    public long[] fileStamp(String midiFileName) throws IOException {
+        Path externalFile = externalMidiDir.resolve(midiFileName);
+        if (Files.exists(externalFile)) {
+            return new long[]{Files.size(externalFile), Files.getLastModifiedTime(externalFile).toMillis()};
+        }
+        URL resource = getClass().getClassLoader().getResource(INTERNAL_MIDI_DIR + midiFileName);
+        if (resource == null) throw new FileNotFoundException("Cannot find resource: " + INTERNAL_MIDI_DIR + midiFileName);
+        URLConnection connection = resource.openConnection();
+        connection.setUseCaches(false);
+        // Connecting fills in the length and date; the stream itself is not needed
+        connection.getInputStream().close();
+        return new long[]{connection.getContentLengthLong(), connection.getLastModified()};
+    }
+
+    /**
+     * Whether the name is in the library, as an imported file or a bundled one.
+     */
+    public boolean exists(String midiFileName) {
+        return Files.exists(externalMidiDir.resolve(midiFileName))
+                || getClass().getClassLoader().getResource(INTERNAL_MIDI_DIR + midiFileName) != null;
+    }
+
+    /**
+     * Starts reporting files added to, removed from or changed in the imported MIDI folder.
+     */
+    public MidiFolderWatcher watchExternalFolder(Consumer<MidiFolderWatcher.Changes> listener) throws IOException {
+        return new MidiFolderWatcher(externalMidiDir, MidiFolderWatcher.DEFAULT_DEBOUNCE_MS, listener);
+    }
+
+    public static boolean isMidiFileName(String name) {
+        String lower = name.toLowerCase();
+        return lower.endsWith(".mid") || lower.endsWith(".midi");
+    }
+
     public List<String> getAllMidiFileNames() {
         Set<String> allFiles = new HashSet<>(listInternalMidiResources());
         allFiles.addAll(listExternalMidiFiles());
@@ -76,7 +183,7 @@ public class MidiFileService {
         try (Stream<Path> paths = Files.walk(externalMidiDir, 1)) {
             return paths.filter(Files::isRegularFile)
                     .map(path -> path.getFileName().toString())
-                    .filter(name -> name.toLowerCase().endsWith(".mid") || name.toLowerCase().endsWith(".midi"))
+                    .filter(MidiFileService::isMidiFileName)
                     .collect(Collectors.toList());
         } catch (IOException e) {
             System.err.println("Error reading external MIDI folder: " + e.getMessage());
@@ -95,7 +202,7 @@ public class MidiFileService {
                     return jar.stream()
                             .map(JarEntry::getName)
                             .filter(name -> name.startsWith(INTERNAL_MIDI_DIR) && !name.endsWith("/"))
-                            .filter(name -> name.toLowerCase().endsWith(".mid") || name.toLowerCase().endsWith(".midi"))
+                            .filter(MidiFileService::isMidiFileName)
                             .map(name -> name.substring(INTERNAL_MIDI_DIR.length()))
                             .collect(Collectors.toList());
                 }
@@ -103,7 +210,7 @@ public class MidiFileService {
                 try (Stream<Path> stream = Files.list(Paths.get(url.toURI()))) {
                     return stream.filter(Files::isRegularFile)
                             .map(p -> p.getFileName().toString())
-                            .filter(n -> n.toLowerCase().endsWith(".mid") || n.toLowerCase().endsWith(".midi"))
+                            .filter(MidiFileService::isMidiFileName)
                             .collect(Collectors.toList());
                 }
             }
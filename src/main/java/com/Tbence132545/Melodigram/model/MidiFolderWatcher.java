@@ -0,0 +1,152 @@
+package com.Tbence132545.Melodigram.model;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Watches a folder for MIDI files appearing, disappearing or being rewritten. Events are
+ * collected until the folder has been quiet for the debounce interval, so a sync dropping a batch
+ * of files, or a large file written in chunks, is reported once, and then resolved against what
+ * is actually on disk. Reports arrive on the watcher's own thread.
+ */
+public final class MidiFolderWatcher implements AutoCloseable {
+
+    public static final long DEFAULT_DEBOUNCE_MS = 400;
+    private static final int MAX_DEBOUNCE_INTERVALS = 10; // a folder that never goes quiet is still reported
+
+    public record Changes(Set<String> added, Set<String> removed, Set<String> modified) {
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty() && modified.isEmpty();
+        }
+    }
+
+    private final Path directory;
+    private final long debounceMillis;
+    private final Consumer<Changes> listener;
+    private final WatchService watchService;
+    private final Set<String> known;  // only touched by the watcher thread after construction
+    private final Thread thread;
+    private volatile boolean closed;
+
+    public MidiFolderWatcher(Path directory, long debounceMillis, Consumer<Changes> listener) throws IOException {
+        this.directory = directory;
+        this.debounceMillis = debounceMillis;
+        this.listener = listener;
+        Files.createDirectories(directory);
+        this.watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.known = listMidiFiles();
+        this.thread = new Thread(this::run, "midi-folder-watch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            System.err.println("Could not close folder watch: " + e.getMessage());
+        }
+        thread.interrupt();
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                Set<String> touched = new HashSet<>();
+                boolean overflow = collect(watchService.take(), touched);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(debounceMillis * MAX_DEBOUNCE_INTERVALS);
+                while (true) {
+                    long wait = Math.min(TimeUnit.MILLISECONDS.toNanos(debounceMillis), deadline - System.nanoTime());
+                    WatchKey key = wait > 0 ? watchService.poll(wait, TimeUnit.NANOSECONDS) : null;
+                    if (key == null) break;
+                    overflow |= collect(key, touched);
+                }
+                Changes changes = overflow ? rescan() : resolve(touched);
+                if (!changes.isEmpty()) {
+                    try {
+                        listener.accept(changes);
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    /**
+     * Adds the MIDI file names of the key's events to {@code touched}; true if events were lost.
+     */
+    private boolean collect(WatchKey key, Set<String> touched) {
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            String name = ((Path) event.context()).getFileName().toString();
+            if (MidiFileService.isMidiFileName(name)) touched.add(name);
+        }
+        return !key.reset() || overflow;
+    }
+
+    private Changes resolve(Set<String> touched) {
+        Set<String> added = new TreeSet<>();
+        Set<String> removed = new TreeSet<>();
+        Set<String> modified = new TreeSet<>();
+        for (String name : touched) {
+            boolean exists = Files.isRegularFile(directory.resolve(name));
+            if (exists && known.add(name)) added.add(name);
+            else if (exists) modified.add(name);
+            else if (known.remove(name)) removed.add(name);
+        }
+        return new Changes(added, removed, modified);
+    }
+
+    /**
+     * After lost events: compares a fresh listing with what was known, and reports every file
+     * that stayed as possibly modified.
+     */
+    private Changes rescan() {
+        Set<String> current = listMidiFiles();
+        Set<String> added = new TreeSet<>(current);
+        added.removeAll(known);
+        Set<String> removed = new TreeSet<>(known);
+        removed.removeAll(current);
+        Set<String> modified = new TreeSet<>(current);
+        modified.removeAll(added);
+        known.clear();
+        known.addAll(current);
+        return new Changes(added, removed, modified);
+    }
+
+    private Set<String> listMidiFiles() {
+        Set<String> names = new HashSet<>();
+        try (Stream<Path> paths = Files.list(directory)) {
+            paths.filter(Files::isRegularFile)
+                    .map(path -> path.getFileName().toString())
+                    .filter(MidiFileService::isMidiFileName)
+                    .forEach(names::add);
+        } catch (IOException e) {
+            System.err.println("Error reading external MIDI folder: " + e.getMessage());
+        }
+        return names;
+    }
+}
@@ -4,11 +4,11 @@ import javax.sound.midi.*;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
-import java.util.function.IntConsumer;
 public class MidiPlayer {
     private Sequencer sequencer;
-    private IntConsumer noteOnListener;
-    private IntConsumer noteOffListener;
+    private final MidiEventRing noteEvents = new MidiEventRing(4096);
+    private Receiver synthReceiver;
+    private ControllerChaseIndex chaseIndex;
 
     public MidiPlayer() {
         try {
@@ -18,16 +18,14 @@ public class MidiPlayer {
             synth.open();
 
             Transmitter transmitter = sequencer.getTransmitter();
-            Receiver synthReceiver = synth.getReceiver();
+            synthReceiver = synth.getReceiver();
 
             transmitter.setReceiver(new Receiver() {
                 public void send(MidiMessage message, long timeStamp) {
                     if (message instanceof ShortMessage sm) {
-                        if (sm.getCommand() == ShortMessage.NOTE_ON && sm.getData2() > 0) {
-                            if (noteOnListener != null) noteOnListener.accept(sm.getData1());
-                        } else if (sm.getCommand() == ShortMessage.NOTE_OFF ||
-                                (sm.getCommand() == ShortMessage.NOTE_ON && sm.getData2() == 0)) {
-                            if (noteOffListener != null) noteOffListener.accept(sm.getData1());
+                        int command = sm.getCommand();
+                        if (command == ShortMessage.NOTE_ON || command == ShortMessage.NOTE_OFF) {
+                            noteEvents.offer(sm.getStatus(), sm.getData1(), sm.getData2(), System.nanoTime());
                         }
                     }
                     synthReceiver.send(message, timeStamp);
@@ -101,11 +99,23 @@ public class MidiPlayer {
     public void stop() {
         sequencer.stop();
     }
-    public void setNoteOnListener(IntConsumer listener) {
-        this.noteOnListener = listener;
+    public void setChaseIndex(ControllerChaseIndex chaseIndex) {
+        this.chaseIndex = chaseIndex;
     }
-    public void setNoteOffListener(IntConsumer listener) {
-        this.noteOffListener = listener;
+
+    /**
+     * Restores program, controller and pitch bend state for the given position after a seek.
+     */
+    public void chaseTo(long microseconds) {
+        if (chaseIndex != null && synthReceiver != null) {
+            chaseIndex.chase(microseconds, synthReceiver);
+        }
+    }
+    /**
+     * Note on/off events leaving the sequencer, to be drained by the controller.
+     */
+    public MidiEventRing getNoteEvents() {
+        return noteEvents;
     }
     public Sequencer getSequencer() {
         return this.sequencer;
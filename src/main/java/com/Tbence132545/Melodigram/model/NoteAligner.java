@@ -0,0 +1,212 @@
+package com.Tbence132545.Melodigram.model;
+
+import java.util.Arrays;
+
+/**
+ * Matches the notes of an edited piece to the notes of its earlier version, patience-diff style:
+ * (pitch, onset) pairs that are unique in both versions become anchors and the longest run of
+ * anchors that is in order in both is kept. Gaps between anchors, such as passages that moved in
+ * time, get a second round of anchors keyed on the time since the previous note instead, and
+ * whatever is left is matched by pitch within an onset tolerance, corrected by the time shift of
+ * the nearest anchor. Both inputs must be in {@link NoteTable} order. Runs in O(n log n).
+ */
+public final class NoteAligner {
+
+    public static final long DEFAULT_TOLERANCE_MS = 20;
+
+    private static final int INDEX_BITS = 24;
+    private static final int MAX_NOTES = 1 << INDEX_BITS;
+
+    private NoteAligner() {}
+
+    /**
+     * For each new note, the index of the old note it corresponds to, or -1.
+     */
+    public static int[] align(int[] oldPitch, long[] oldOnset, int[] newPitch, long[] newOnset, long toleranceMs) {
+        if (oldPitch.length >= MAX_NOTES || newPitch.length >= MAX_NOTES) {
+            throw new IllegalArgumentException("Too many notes to align");
+        }
+        Side old = new Side(oldPitch, oldOnset);
+        Side current = new Side(newPitch, newOnset);
+        int[] match = new int[newPitch.length];
+        Arrays.fill(match, -1);
+        boolean[] oldUsed = new boolean[oldPitch.length];
+        alignRange(old, current, 0, 0, oldPitch.length, 0, newPitch.length, -1, -1, -1, -1, toleranceMs, match, oldUsed);
+        return match;
+    }
+
+    public static int[] align(int[] oldPitch, long[] oldOnset, NoteTable notes, long toleranceMs) {
+        int[] pitch = new int[notes.size()];
+        long[] onset = new long[notes.size()];
+        for (int i = 0; i < pitch.length; i++) {
+            pitch[i] = notes.pitch(i);
+            onset[i] = notes.onMillis(i);
+        }
+        return align(oldPitch, oldOnset, pitch, onset, toleranceMs);
+    }
+
+    /**
+     * Both key kinds of one version: exact (onset, pitch) and, for passages that moved in time,
+     * (time since previous note, previous pitch, pitch).
+     */
+    private static final class Side {
+        final int[] pitch;
+        final long[] onset;
+        final long[][] keys = new long[2][];
+
+        Side(int[] pitch, long[] onset) {
+            this.pitch = pitch;
+            this.onset = onset;
+            int n = pitch.length;
+            keys[0] = new long[n];
+            keys[1] = new long[n];
+            for (int i = 0; i < n; i++) {
+                long time = Math.max(0, Math.min(onset[i], 0xFFFFFFFFL));
+                keys[0][i] = time << 7 | (pitch[i] & 0x7F);
+                long delta = i == 0 ? 0 : Math.max(0, Math.min(onset[i] - onset[i - 1], 0x1FFFFFFL));
+                int previousPitch = i == 0 ? 0 : pitch[i - 1] & 0x7F;
+                keys[1][i] = (delta << 7 | previousPitch) << 7 | (pitch[i] & 0x7F);
+            }
+        }
+    }
+
+    private static void alignRange(Side old, Side current, int level, int oldFrom, int oldTo, int newFrom, int newTo,
+                                   int prevOld, int prevNew, int nextOld, int nextNew,
+                                   long toleranceMs, int[] match, boolean[] oldUsed) {
+        if (oldFrom >= oldTo || newFrom >= newTo) return;
+        if (level == old.keys.length) {
+            long shift = prevOld >= 0 ? current.onset[prevNew] - old.onset[prevOld]
+                    : nextOld >= 0 ? current.onset[nextNew] - old.onset[nextOld] : 0;
+            fillGap(old.pitch, old.onset, oldFrom, oldTo, current.pitch, current.onset, newFrom, newTo,
+                    shift, toleranceMs, match, oldUsed);
+            return;
+        }
+        int[] anchors = longestIncreasingAnchors(uniquePairs(old.keys[level], oldFrom, oldTo, current.keys[level], newFrom, newTo));
+        int gapOld = oldFrom;
+        int gapNew = newFrom;
+        int lastOld = prevOld;
+        int lastNew = prevNew;
+        for (int a = 0; a <= anchors.length / 2; a++) {
+            boolean end = a == anchors.length / 2;
+            int anchorOld = end ? oldTo : anchors[2 * a];
+            int anchorNew = end ? newTo : anchors[2 * a + 1];
+            alignRange(old, current, level + 1, gapOld, anchorOld, gapNew, anchorNew, lastOld, lastNew,
+                    end ? nextOld : anchorOld, end ? nextNew : anchorNew, toleranceMs, match, oldUsed);
+            if (!end) {
+                match[anchorNew] = anchorOld;
+                oldUsed[anchorOld] = true;
+                lastOld = anchorOld;
+                lastNew = anchorNew;
+                gapOld = anchorOld + 1;
+                gapNew = anchorNew + 1;
+            }
+        }
+    }
+
+    /**
+     * (old, new) index pairs, ordered by new index, of keys occurring exactly once in each range.
+     */
+    private static int[] uniquePairs(long[] oldKeys, int oldFrom, int oldTo, long[] newKeys, int newFrom, int newTo) {
+        long[] oldSorted = sortedKeys(oldKeys, oldFrom, oldTo);
+        long[] newSorted = sortedKeys(newKeys, newFrom, newTo);
+        long[] pairs = new long[Math.min(oldSorted.length, newSorted.length)];
+        int pairCount = 0;
+        int i = 0;
+        int j = 0;
+        while (i < oldSorted.length && j < newSorted.length) {
+            long oldKey = oldSorted[i] >>> INDEX_BITS;
+            long newKey = newSorted[j] >>> INDEX_BITS;
+            int oldRun = runLength(oldSorted, i);
+            int newRun = runLength(newSorted, j);
+            if (oldKey == newKey) {
+                if (oldRun == 1 && newRun == 1) {
+                    long oldIndex = oldSorted[i] & (MAX_NOTES - 1);
+                    long newIndex = newSorted[j] & (MAX_NOTES - 1);
+                    pairs[pairCount++] = newIndex << 32 | oldIndex;
+                }
+                i += oldRun;
+                j += newRun;
+            } else if (oldKey < newKey) {
+                i += oldRun;
+            } else {
+                j += newRun;
+            }
+        }
+        Arrays.sort(pairs, 0, pairCount);
+        int[] result = new int[pairCount * 2];
+        for (int p = 0; p < pairCount; p++) {
+            result[2 * p] = (int) pairs[p];
+            result[2 * p + 1] = (int) (pairs[p] >>> 32);
+        }
+        return result;
+    }
+
+    private static long[] sortedKeys(long[] keys, int from, int to) {
+        long[] sorted = new long[to - from];
+        for (int i = from; i < to; i++) {
+            sorted[i - from] = keys[i] << INDEX_BITS | i;
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static int runLength(long[] sorted, int from) {
+        long key = sorted[from] >>> INDEX_BITS;
+        int end = from + 1;
+        while (end < sorted.length && sorted[end] >>> INDEX_BITS == key) end++;
+        return end - from;
+    }
+
+    /**
+     * Longest subsequence of the pairs whose old indices increase, found by patience sorting.
+     */
+    private static int[] longestIncreasingAnchors(int[] pairs) {
+        int n = pairs.length / 2;
+        int[] tails = new int[n];    // pair index ending the best run of each length
+        int[] previous = new int[n];
+        int length = 0;
+        for (int p = 0; p < n; p++) {
+            int old = pairs[2 * p];
+            int lo = 0;
+            int hi = length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (pairs[2 * tails[mid]] < old) lo = mid + 1;
+                else hi = mid;
+            }
+            previous[p] = lo > 0 ? tails[lo - 1] : -1;
+            tails[lo] = p;
+            if (lo == length) length++;
+        }
+        int[] anchors = new int[length * 2];
+        for (int k = length - 1, p = length > 0 ? tails[length - 1] : -1; k >= 0; k--, p = previous[p]) {
+            anchors[2 * k] = pairs[2 * p];
+            anchors[2 * k + 1] = pairs[2 * p + 1];
+        }
+        return anchors;
+    }
+
+    private static void fillGap(int[] oldPitch, long[] oldOnset, int oldFrom, int oldTo,
+                                int[] newPitch, long[] newOnset, int newFrom, int newTo,
+                                long shift, long toleranceMs, int[] match, boolean[] oldUsed) {
+        int window = oldFrom;
+        for (int j = newFrom; j < newTo; j++) {
+            long target = newOnset[j];
+            while (window < oldTo && oldOnset[window] + shift < target - toleranceMs) window++;
+            int best = -1;
+            long bestDistance = Long.MAX_VALUE;
+            for (int i = window; i < oldTo && oldOnset[i] + shift <= target + toleranceMs; i++) {
+                if (oldUsed[i] || oldPitch[i] != newPitch[j]) continue;
+                long distance = Math.abs(oldOnset[i] + shift - target);
+                if (distance < bestDistance) {
+                    best = i;
+                    bestDistance = distance;
+                }
+            }
+            if (best >= 0) {
+                match[j] = best;
+                oldUsed[best] = true;
+            }
+        }
+    }
+}
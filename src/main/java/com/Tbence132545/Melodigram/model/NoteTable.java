@@ -0,0 +1,129 @@
+package com.Tbence132545.Melodigram.model;
+
+import java.util.Arrays;
+
+/**
+ * The notes of a sequence as parallel primitive arrays, ordered by onset and then pitch.
+ * A note's position in this order is its stable index, shared by the animation panel,
+ * the practice engine and the hand assignment files.
+ */
+public final class NoteTable {
+
+    private final int size;
+    private final int[] pitch;
+    private final long[] onMillis;
+    private final long[] offMillis;
+    private final byte[] velocity;
+    private final byte[] channel;
+    private final short[] track;
+
+    private NoteTable(int size, int[] pitch, long[] onMillis, long[] offMillis, byte[] velocity, byte[] channel, short[] track) {
+        this.size = size;
+        this.pitch = pitch;
+        this.onMillis = onMillis;
+        this.offMillis = offMillis;
+        this.velocity = velocity;
+        this.channel = channel;
+        this.track = track;
+    }
+
+    public int size() { return size; }
+    public int pitch(int i) { return pitch[i]; }
+    public long onMillis(int i) { return onMillis[i]; }
+    public long offMillis(int i) { return offMillis[i]; }
+    public int velocity(int i) { return velocity[i]; }
+    public int channel(int i) { return channel[i]; }
+    public int track(int i) { return track[i]; }
+
+    public long getEndMillis() {
+        long end = 0;
+        for (int i = 0; i < size; i++) end = Math.max(end, offMillis[i]);
+        return end;
+    }
+
+    /**
+     * Index of the first note whose onset is strictly after {@code timeMillis}, or {@link #size()}.
+     */
+    public int firstOnsetAfter(long timeMillis) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (onMillis[mid] <= timeMillis) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    public static final class Builder {
+        private int size;
+        private int[] pitch = new int[256];
+        private long[] onMillis = new long[256];
+        private long[] offMillis = new long[256];
+        private byte[] velocity = new byte[256];
+        private byte[] channel = new byte[256];
+        private short[] track = new short[256];
+
+        public void add(int midiNote, long on, long off, int noteVelocity, int noteChannel, int trackIndex) {
+            if (size == pitch.length) {
+                int capacity = size * 2;
+                pitch = Arrays.copyOf(pitch, capacity);
+                onMillis = Arrays.copyOf(onMillis, capacity);
+                offMillis = Arrays.copyOf(offMillis, capacity);
+                velocity = Arrays.copyOf(velocity, capacity);
+                channel = Arrays.copyOf(channel, capacity);
+                track = Arrays.copyOf(track, capacity);
+            }
+            pitch[size] = midiNote;
+            onMillis[size] = on;
+            offMillis[size] = off;
+            velocity[size] = (byte) noteVelocity;
+            channel[size] = (byte) noteChannel;
+            track[size] = (short) trackIndex;
+            size++;
+        }
+
+        public NoteTable build() {
+            int[] order = sortedOrder();
+            int[] p = new int[size];
+            long[] on = new long[size];
+            long[] off = new long[size];
+            byte[] v = new byte[size];
+            byte[] c = new byte[size];
+            short[] t = new short[size];
+            for (int i = 0; i < size; i++) {
+                int src = order[i];
+                p[i] = pitch[src];
+                on[i] = onMillis[src];
+                off[i] = offMillis[src];
+                v[i] = velocity[src];
+                c[i] = channel[src];
+                t[i] = track[src];
+            }
+            return new NoteTable(size, p, on, off, v, c, t);
+        }
+
+        private int[] sortedOrder() {
+            int[] order = new int[size];
+            boolean packable = size < (1 << 24);
+            for (int i = 0; i < size && packable; i++) {
+                packable = onMillis[i] >= 0 && onMillis[i] < (1L << 32);
+            }
+            if (packable) {
+                // onset | pitch | original index in one long keeps the sort primitive and stable
+                long[] keys = new long[size];
+                for (int i = 0; i < size; i++) {
+                    keys[i] = (onMillis[i] << 31) | ((long) (pitch[i] & 0x7F) << 24) | i;
+                }
+                Arrays.sort(keys);
+                for (int i = 0; i < size; i++) order[i] = (int) (keys[i] & 0xFFFFFF);
+                return order;
+            }
+            Integer[] boxed = new Integer[size];
+            for (int i = 0; i < size; i++) boxed[i] = i;
+            Arrays.sort(boxed, (a, b) -> onMillis[a] != onMillis[b] ? Long.compare(onMillis[a], onMillis[b]) : Integer.compare(pitch[a], pitch[b]));
+            for (int i = 0; i < size; i++) order[i] = boxed[i];
+            return order;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.Tbence132545.Melodigram.model;
+
+import com.sun.media.sound.AudioSynthesizer;
+
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Synthesizer;
+import javax.sound.midi.Track;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Renders a sequence to a PCM WAV file through Gervill's pull-based audio stream.
+ * The synthesizer is never paced by a clock, so rendering runs as fast as the CPU allows.
+ */
+public class OfflineAudioRenderer {
+
+    public static final AudioFormat DEFAULT_FORMAT = new AudioFormat(44_100f, 16, 2, true, false);
+    private static final long RELEASE_TAIL_MICROS = 2_000_000;
+
+    public record RenderResult(String midiFileName, Path output, long audioMillis, long elapsedMillis, Exception error) {
+        public boolean succeeded() {
+            return error == null;
+        }
+    }
+
+    private final AudioFormat format;
+
+    public OfflineAudioRenderer() {
+        this(DEFAULT_FORMAT);
+    }
+
+    public OfflineAudioRenderer(AudioFormat format) {
+        this.format = format;
+    }
+
+    /**
+     * Renders the sequence and returns the length of the written audio in milliseconds.
+     */
+    public long render(Sequence sequence, Path wavFile) throws MidiUnavailableException, IOException {
+        AudioSynthesizer synth = openAudioSynthesizer();
+        try {
+            AudioInputStream stream = synth.openStream(format, null);
+            Receiver receiver = synth.getReceiver();
+            TempoMap tempoMap = new TempoMap(sequence);
+
+            // Every event is queued up front with its absolute timestamp; the synthesizer then
+            // processes them while the stream below is being pulled.
+            scheduleEvents(sequence, tempoMap, receiver);
+
+            long totalMicros = tempoMap.tickToMicros(sequence.getTickLength()) + RELEASE_TAIL_MICROS;
+            long frames = (long) (format.getFrameRate() * totalMicros / 1_000_000.0);
+            Path parent = wavFile.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+            try (AudioInputStream limited = new AudioInputStream(stream, format, frames)) {
+                AudioSystem.write(limited, AudioFileFormat.Type.WAVE, wavFile.toFile());
+            }
+            return totalMicros / 1000;
+        } finally {
+            synth.close();
+        }
+    }
+
+    /**
+     * Renders several library files at once, one synthesizer per worker.
+     * Failures are reported per file instead of aborting the whole batch.
+     */
+    public List<RenderResult> renderAll(List<String> midiFileNames, MidiFileService service, Path outputDir, int parallelism) {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+            Thread t = new Thread(r, "offline-audio-render");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<RenderResult>> futures = new ArrayList<>();
+            for (String name : midiFileNames) {
+                futures.add(pool.submit(() -> renderOne(name, service, outputDir)));
+            }
+            List<RenderResult> results = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (Exception e) {
+                    results.add(new RenderResult(midiFileNames.get(i), null, 0, 0, e));
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    public List<RenderResult> renderAll(List<String> midiFileNames, MidiFileService service, Path outputDir) {
+        return renderAll(midiFileNames, service, outputDir, Runtime.getRuntime().availableProcessors());
+    }
+
+    private RenderResult renderOne(String midiFileName, MidiFileService service, Path outputDir) {
+        long start = System.nanoTime();
+        Path output = outputDir.resolve(toWavName(midiFileName));
+        try {
+            Sequence sequence = service.loadSequence(midiFileName);
+            long audioMillis = render(sequence, output);
+            return new RenderResult(midiFileName, output, audioMillis, (System.nanoTime() - start) / 1_000_000, null);
+        } catch (Exception e) {
+            return new RenderResult(midiFileName, output, 0, (System.nanoTime() - start) / 1_000_000, e);
+        }
+    }
+
+    private static String toWavName(String midiFileName) {
+        int dot = midiFileName.lastIndexOf('.');
+        String base = dot > 0 ? midiFileName.substring(0, dot) : midiFileName;
+        return base + ".wav";
+    }
+
+    private static void scheduleEvents(Sequence sequence, TempoMap tempoMap, Receiver receiver) {
+        Track[] tracks = sequence.getTracks();
+        int[] positions = new int[tracks.length];
+        // k-way merge by tick so simultaneous events keep a deterministic order across tracks
+        while (true) {
+            int next = -1;
+            long nextTick = Long.MAX_VALUE;
+            for (int t = 0; t < tracks.length; t++) {
+                if (positions[t] < tracks[t].size()) {
+                    long tick = tracks[t].get(positions[t]).getTick();
+                    if (tick < nextTick) {
+                        nextTick = tick;
+                        next = t;
+                    }
+                }
+            }
+            if (next < 0) return;
+            MidiEvent event = tracks[next].get(positions[next]++);
+            if (!(event.getMessage() instanceof MetaMessage)) {
+                receiver.send(event.getMessage(), tempoMap.tickToMicros(event.getTick()));
+            }
+        }
+    }
+
+    private static AudioSynthesizer openAudioSynthesizer() throws MidiUnavailableException {
+        Synthesizer synth = MidiSystem.getSynthesizer();
+        if (!(synth instanceof AudioSynthesizer)) {
+            synth = null;
+            for (MidiDevice.Info info : MidiSystem.getMidiDeviceInfo()) {
+                MidiDevice device = MidiSystem.getMidiDevice(info);
+                if (device instanceof AudioSynthesizer) {
+                    synth = (Synthesizer) device;
+                    break;
+                }
+            }
+            if (synth == null) throw new MidiUnavailableException("No offline-capable synthesizer available");
+        }
+        return (AudioSynthesizer) synth;
+    }
+}
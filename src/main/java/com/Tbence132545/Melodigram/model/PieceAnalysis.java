@@ -0,0 +1,65 @@
+package com.Tbence132545.Melodigram.model;
+
+/**
+ * How demanding a piece is, from its note table: note density, the biggest chord, the pitch
+ * range, how often a hand has to stretch beyond a ninth, and how often the tempo changes, folded
+ * into a single difficulty score from 0 (trivial) to 10.
+ */
+public record PieceAnalysis(long durationMillis, int noteCount, double notesPerSecond, int maxChordSize,
+                            int pitchSpan, int handSpanViolations, int tempoChanges, float difficulty) {
+
+    private static final long CHORD_TOLERANCE_MS = PracticeCursor.DEFAULT_CHORD_TOLERANCE_MS;
+    private static final int COMFORTABLE_HAND_SPAN = 14; // a ninth
+    private static final double MAX_DIFFICULTY = 10;
+    private static final double LOAD_AT_HALF_DIFFICULTY = 6;
+
+    public static PieceAnalysis analyze(SequencePreprocessor.Result preprocessed) {
+        NoteTable notes = preprocessed.notes();
+        int n = notes.size();
+        long duration = notes.getEndMillis();
+        if (n == 0) return new PieceAnalysis(duration, 0, 0, 0, 0, 0, preprocessed.tempoMap().getTempoChangeCount(), 0);
+
+        int lowest = 127;
+        int highest = 0;
+        for (int i = 0; i < n; i++) {
+            lowest = Math.min(lowest, notes.pitch(i));
+            highest = Math.max(highest, notes.pitch(i));
+        }
+
+        // Chords are onset clusters; a stretch counts once per hand and chord
+        byte[] hands = HandSplitter.split(notes);
+        int maxChord = 0;
+        int violations = 0;
+        for (int i = 0; i < n; ) {
+            int start = i;
+            long onset = notes.onMillis(i);
+            do i++; while (i < n && notes.onMillis(i) - onset <= CHORD_TOLERANCE_MS);
+            maxChord = Math.max(maxChord, i - start);
+            violations += stretches(notes, hands, start, i, HandAssignmentStore.HAND_LEFT);
+            violations += stretches(notes, hands, start, i, HandAssignmentStore.HAND_RIGHT);
+        }
+
+        double seconds = Math.max(1, duration) / 1000.0;
+        double notesPerSecond = n / seconds;
+        int tempoChanges = preprocessed.tempoMap().getTempoChangeCount();
+        double load = 0.35 * notesPerSecond
+                + 0.3 * Math.max(0, maxChord - 3)
+                + 10.0 * violations / n
+                + Math.max(0, highest - lowest - 24) / 12.0
+                + Math.min(1.0, tempoChanges / 20.0);
+        // Saturates instead of clipping, so virtuoso pieces still rank among themselves
+        float difficulty = (float) (MAX_DIFFICULTY * load / (load + LOAD_AT_HALF_DIFFICULTY));
+        return new PieceAnalysis(duration, n, notesPerSecond, maxChord, highest - lowest, violations, tempoChanges, difficulty);
+    }
+
+    private static int stretches(NoteTable notes, byte[] hands, int from, int to, byte hand) {
+        int lowest = Integer.MAX_VALUE;
+        int highest = Integer.MIN_VALUE;
+        for (int i = from; i < to; i++) {
+            if (hands[i] != hand) continue;
+            lowest = Math.min(lowest, notes.pitch(i));
+            highest = Math.max(highest, notes.pitch(i));
+        }
+        return highest - lowest > COMFORTABLE_HAND_SPAN ? 1 : 0;
+    }
+}
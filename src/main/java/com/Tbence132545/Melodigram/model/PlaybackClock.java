@@ -0,0 +1,16 @@
+package com.Tbence132545.Melodigram.model;
+
+/**
+ * Where playback and practice read the time from. {@link #SYSTEM} is the monotonic system clock; a
+ * {@link VirtualClock} only moves when it is advanced, so a piece can be simulated faster than real time.
+ */
+@FunctionalInterface
+public interface PlaybackClock {
+
+    PlaybackClock SYSTEM = System::nanoTime;
+
+    /**
+     * Monotonic nanoseconds, only meaningful as differences; same time base as the event timestamps.
+     */
+    long nanoTime();
+}
@@ -0,0 +1,124 @@
+package com.Tbence132545.Melodigram.model;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Onset clusters (notes struck together, within a tolerance) of the notes a practice session
+ * expects, precomputed into primitive arrays. A cursor walks them as the timeline advances,
+ * so each tick only compares the time against the next cluster onset.
+ */
+public final class PracticeCursor {
+
+    public static final long DEFAULT_CHORD_TOLERANCE_MS = 30;
+
+    private final long[] clusterOnset;
+    private final long[] clusterLow;  // pitches 0-63 of each cluster as a bitset
+    private final long[] clusterHigh; // pitches 64-127
+    private final int[] clusterFirstNote;
+    private final int[] clusterEndNote; // exclusive, note table indices
+    private final int clusterCount;
+    private int cursor;
+
+    private PracticeCursor(long[] clusterOnset, long[] clusterLow, long[] clusterHigh,
+                           int[] clusterFirstNote, int[] clusterEndNote, int clusterCount) {
+        this.clusterOnset = clusterOnset;
+        this.clusterLow = clusterLow;
+        this.clusterHigh = clusterHigh;
+        this.clusterFirstNote = clusterFirstNote;
+        this.clusterEndNote = clusterEndNote;
+        this.clusterCount = clusterCount;
+    }
+
+    /**
+     * Groups the included notes of the table into clusters: a note joins the current cluster
+     * when its onset is within {@code toleranceMs} of the cluster's first onset.
+     */
+    public static PracticeCursor build(NoteTable notes, IntPredicate includeNote, long toleranceMs) {
+        int n = notes.size();
+        long[] onsets = new long[n];
+        long[] lows = new long[n];
+        long[] highs = new long[n];
+        int[] firstNotes = new int[n];
+        int[] endNotes = new int[n];
+        int clusters = 0;
+        for (int i = 0; i < n; i++) {
+            if (!includeNote.test(i)) continue;
+            long on = notes.onMillis(i);
+            if (clusters == 0 || on - onsets[clusters - 1] > toleranceMs) {
+                onsets[clusters] = on;
+                firstNotes[clusters] = i;
+                clusters++;
+            }
+            endNotes[clusters - 1] = i + 1;
+            int pitch = notes.pitch(i);
+            if (pitch < 64) lows[clusters - 1] |= 1L << pitch;
+            else highs[clusters - 1] |= 1L << pitch;
+        }
+        return new PracticeCursor(Arrays.copyOf(onsets, clusters), Arrays.copyOf(lows, clusters),
+                Arrays.copyOf(highs, clusters), Arrays.copyOf(firstNotes, clusters), Arrays.copyOf(endNotes, clusters), clusters);
+    }
+
+    /**
+     * Moves the cursor so the next cluster is the first one with an onset after {@code timeMillis}.
+     */
+    public void seek(long timeMillis) {
+        int lo = 0;
+        int hi = clusterCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (clusterOnset[mid] <= timeMillis) lo = mid + 1;
+            else hi = mid;
+        }
+        cursor = lo;
+    }
+
+    /**
+     * Consumes every cluster with an onset at or before {@code timeMillis} and returns the index
+     * of the first one consumed, or -1 if none was reached. The consumed range ends at {@link #position()}.
+     */
+    public int advance(long timeMillis) {
+        if (cursor >= clusterCount || clusterOnset[cursor] > timeMillis) return -1;
+        int first = cursor;
+        while (cursor < clusterCount && clusterOnset[cursor] <= timeMillis) cursor++;
+        return first;
+    }
+
+    public int position() {
+        return cursor;
+    }
+
+    public int clusterCount() {
+        return clusterCount;
+    }
+
+    public long onsetOf(int cluster) {
+        return clusterOnset[cluster];
+    }
+
+    /**
+     * Note table indices covered by the cluster are {@code [firstNoteOf, endNoteOf)}; notes of
+     * other hands may be interleaved in that range.
+     */
+    public int firstNoteOf(int cluster) {
+        return clusterFirstNote[cluster];
+    }
+
+    public int endNoteOf(int cluster) {
+        return clusterEndNote[cluster];
+    }
+
+    /**
+     * Replaces the contents of {@code out} with the union of the pitches of clusters {@code [fromCluster, toCluster)}.
+     */
+    public void keysOf(int fromCluster, int toCluster, KeyState out) {
+        long low = 0;
+        long high = 0;
+        for (int c = fromCluster; c < toCluster; c++) {
+            low |= clusterLow[c];
+            high |= clusterHigh[c];
+        }
+        out.clear();
+        out.addWords(low, high);
+    }
+}
@@ -0,0 +1,187 @@
+package com.Tbence132545.Melodigram.model;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only log of every MIDI input event of a practice session, written into a memory-mapped
+ * file as fixed 16-byte records. Appending is a handful of buffer puts; the mapping grows in
+ * large chunks, so a recording can run for hours. The record count is kept in the header, so a
+ * file cut short by a crash is still readable.
+ */
+public final class PracticeRecorder implements AutoCloseable {
+
+    public enum Timeline { PIECE, WALL_CLOCK }
+
+    private static final int MAGIC = 0x4D524543; // "MREC"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 16;
+    private static final int COUNT_OFFSET = 24;
+    private static final long CHUNK_SIZE = 8L << 20;
+    private static final int EXPORT_RESOLUTION = 500; // with the default 120 BPM tempo one tick is one millisecond
+
+    private final FileChannel channel;
+    private final Path file;
+    private MappedByteBuffer header;
+    private MappedByteBuffer chunk;
+    private long chunkStart;
+    private long count;
+    private boolean closed;
+    private boolean mappingsReleased = true; // false once a mapping could not be released early
+
+    public PracticeRecorder(Path file, long pieceKey, long startEpochMillis) throws IOException {
+        this.file = file;
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, RECORD_SIZE)
+                .putLong(12, pieceKey)
+                .putLong(COUNT_OFFSET, 0)
+                .putLong(32, startEpochMillis);
+        mapChunk(HEADER_SIZE);
+    }
+
+    /**
+     * Opens a new recording in the default recordings directory.
+     */
+    public static PracticeRecorder startDefault(long pieceKey) throws IOException {
+        long now = System.currentTimeMillis();
+        Path file = defaultDirectory().resolve(now + "-" + Long.toHexString(pieceKey) + ".mrec");
+        return new PracticeRecorder(file, pieceKey, now);
+    }
+
+    public static Path defaultDirectory() {
+        return AppDirectories.resolve("recordings");
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public void record(long nanoTime, long pieceMillis, int status, int data1, int data2) {
+        if (closed) return;
+        if (!chunk.hasRemaining()) {
+            try {
+                mapChunk(chunkStart + CHUNK_SIZE);
+            } catch (IOException e) {
+                // Losing the tail of a recording must never disturb practice
+                e.printStackTrace();
+                return;
+            }
+        }
+        chunk.putLong(nanoTime)
+                .putInt((int) Math.min(Integer.MAX_VALUE, pieceMillis))
+                .put((byte) status)
+                .put((byte) data1)
+                .put((byte) data2)
+                .put((byte) 0);
+        header.putLong(COUNT_OFFSET, ++count);
+    }
+
+    public long getEventCount() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            header.force();
+            chunk.force();
+            // The mapping grew the file in whole chunks; cut it back to the records written. Readers
+            // trust the record count in the header, so a file that can't be cut is still valid.
+            mappingsReleased &= unmap(header) & unmap(chunk);
+            header = null;
+            chunk = null;
+            if (mappingsReleased) channel.truncate(HEADER_SIZE + count * RECORD_SIZE);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Releases a mapping right away instead of at garbage collection, so the file can be truncated
+     * on every platform. The buffer must not be touched afterwards. Returns false if the JDK did not
+     * allow it; the mapping is then released by the garbage collector.
+     */
+    private static boolean unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), buffer);
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private void mapChunk(long position) throws IOException {
+        MappedByteBuffer previous = chunk;
+        chunk = channel.map(FileChannel.MapMode.READ_WRITE, position, CHUNK_SIZE);
+        chunk.order(ByteOrder.LITTLE_ENDIAN);
+        chunkStart = position;
+        if (previous != null) {
+            // A full chunk is never written again, and a live mapping would keep close() from truncating
+            previous.force();
+            mappingsReleased &= unmap(previous);
+        }
+    }
+
+    /**
+     * Converts a recording to a Standard MIDI File. With {@link Timeline#PIECE} the events are
+     * placed at the piece position they were played at, so the export lines up with the original;
+     * {@link Timeline#WALL_CLOCK} keeps the real time between events, including pauses.
+     */
+    public static void exportToMidi(Path recording, Path midiFile, Timeline timeline) throws IOException, InvalidMidiDataException {
+        ByteBuffer buffer;
+        try (FileChannel in = FileChannel.open(recording, StandardOpenOption.READ)) {
+            buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a practice recording: " + recording);
+        }
+        int recordSize = buffer.getInt(8);
+        if (recordSize < RECORD_SIZE) throw new IOException("Corrupt practice recording, record size " + recordSize + ": " + recording);
+        long recorded = buffer.getLong(COUNT_OFFSET);
+        long available = (buffer.limit() - HEADER_SIZE) / recordSize;
+        long events = Math.min(recorded, available);
+
+        Sequence sequence = new Sequence(Sequence.PPQ, EXPORT_RESOLUTION);
+        Track track = sequence.createTrack();
+        track.add(new MidiEvent(new MetaMessage(0x51, new byte[]{0x07, (byte) 0xA1, 0x20}, 3), 0));
+        long firstNanos = events > 0 ? buffer.getLong(HEADER_SIZE) : 0;
+        for (long i = 0; i < events; i++) {
+            int at = (int) (HEADER_SIZE + i * recordSize);
+            long tick = timeline == Timeline.PIECE
+                    ? buffer.getInt(at + 8)
+                    : (buffer.getLong(at) - firstNanos) / 1_000_000;
+            int status = buffer.get(at + 12) & 0xFF;
+            int data1 = buffer.get(at + 13) & 0x7F;
+            int data2 = buffer.get(at + 14) & 0x7F;
+            if (status < 0x80 || status >= 0xF0) continue;
+            track.add(new MidiEvent(new ShortMessage(status, data1, data2), Math.max(0, tick)));
+        }
+        Path parent = midiFile.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        MidiSystem.write(sequence, 0, midiFile.toFile());
+    }
+}
@@ -0,0 +1,155 @@
+package com.Tbence132545.Melodigram.model;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Scores a practice session against the expected notes of the note table. The controller cues
+ * each chord as the timeline reaches it and feeds key presses stamped by its playback clock;
+ * everything is kept in preallocated primitive arrays, so scoring never allocates. A chord can be
+ * announced shortly before its cue, so keys struck a little early count as early hits with a
+ * negative timing error rather than as wrong notes.
+ */
+public final class PracticeScorer {
+
+    public static final int NOT_PLAYED = Integer.MIN_VALUE;
+    /** How long before its cue a chord is announced, and so how early a key may be struck. */
+    public static final long EARLY_WINDOW_MS = 150;
+
+    private final NoteTable notes;
+    private final IntPredicate includeNote;
+    private final int[] timingErrorMicros;   // per note index: press time minus cue time
+    private final byte[] velocityDeviation;  // per note index: played minus expected velocity
+    private final int[] pendingNote = new int[128];
+    private final KeyState pending = new KeyState();
+    private final KeyState expected = new KeyState();
+    private final KeyState upcoming = new KeyState();
+    private final KeyState struckEarly = new KeyState();
+    private final long[] earlyNanos = new long[128];
+    private final int[] earlyVelocity = new int[128];
+    private long cueNanos;
+
+    private int expectedNotes;
+    private int hits;
+    private int wrongNotes;
+    private int missedNotes;
+    private long sumAbsTimingMicros;
+    private long maxTimingMicros;
+    private long sumAbsVelocityDeviation;
+
+    public PracticeScorer(NoteTable notes, IntPredicate includeNote) {
+        this.notes = notes;
+        this.includeNote = includeNote;
+        this.timingErrorMicros = new int[notes.size()];
+        this.velocityDeviation = new byte[notes.size()];
+        Arrays.fill(timingErrorMicros, NOT_PLAYED);
+        Arrays.fill(pendingNote, -1);
+    }
+
+    /**
+     * The notes {@code [firstNote, endNote)} are cued within {@link #EARLY_WINDOW_MS}; until then
+     * a press of one of their keys is remembered as struck early.
+     */
+    public void announce(int firstNote, int endNote) {
+        upcoming.clear();
+        struckEarly.clear();
+        for (int i = firstNote; i < endNote; i++) {
+            if (includeNote.test(i)) upcoming.add(notes.pitch(i));
+        }
+    }
+
+    /**
+     * The timeline reached the notes {@code [firstNote, endNote)} at {@code cueNanoTime}. Notes
+     * of the previous chord that were never struck count as missed; keys struck early for these
+     * notes count as hits now.
+     */
+    public void cue(int firstNote, int endNote, long cueNanoTime) {
+        closePending();
+        cueNanos = cueNanoTime;
+        for (int i = firstNote; i < endNote; i++) {
+            if (!includeNote.test(i)) continue;
+            int pitch = notes.pitch(i);
+            if (!expected.add(pitch)) continue;
+            expectedNotes++;
+            if (struckEarly.remove(pitch)) {
+                hit(i, earlyVelocity[pitch], earlyNanos[pitch]);
+            } else {
+                pending.add(pitch);
+                pendingNote[pitch] = i;
+            }
+        }
+        upcoming.clear();
+        struckEarly.clear();
+    }
+
+    public void noteOn(int pitch, int velocity, long nanoTime) {
+        if (pending.remove(pitch)) {
+            int note = pendingNote[pitch];
+            pendingNote[pitch] = -1;
+            hit(note, velocity, nanoTime);
+        } else if (upcoming.contains(pitch)) {
+            // Scored at the cue, against the cue time; striking it again before then is a retry
+            if (struckEarly.add(pitch)) {
+                earlyNanos[pitch] = nanoTime;
+                earlyVelocity[pitch] = velocity;
+            }
+        } else if (!expected.contains(pitch)) {
+            // Re-striking a key of the current chord is a retry, anything else is a wrong note
+            wrongNotes++;
+        }
+    }
+
+    private void hit(int note, int velocity, long nanoTime) {
+        long timing = (nanoTime - cueNanos) / 1000;
+        timingErrorMicros[note] = (int) Math.max(Integer.MIN_VALUE + 1, Math.min(Integer.MAX_VALUE, timing));
+        int deviation = velocity - notes.velocity(note);
+        velocityDeviation[note] = (byte) deviation;
+        hits++;
+        sumAbsTimingMicros += Math.abs(timing);
+        maxTimingMicros = Math.max(maxTimingMicros, Math.abs(timing));
+        sumAbsVelocityDeviation += Math.abs(deviation);
+    }
+
+    /**
+     * Counts the still unplayed notes of the current chord as missed and forgets the announced
+     * one, e.g. when the user seeks away.
+     */
+    public void closeChord() {
+        closePending();
+        upcoming.clear();
+        struckEarly.clear();
+    }
+
+    private void closePending() {
+        for (int pitch = pending.nextKey(0); pitch >= 0; pitch = pending.nextKey(pitch + 1)) {
+            pendingNote[pitch] = -1;
+            missedNotes++;
+        }
+        pending.clear();
+        expected.clear();
+    }
+
+    public int getTimingErrorMicros(int noteIndex) {
+        return timingErrorMicros[noteIndex];
+    }
+
+    public int getVelocityDeviation(int noteIndex) {
+        return velocityDeviation[noteIndex];
+    }
+
+    public int getExpectedNotes() { return expectedNotes; }
+    public int getHits() { return hits; }
+    public int getWrongNotes() { return wrongNotes; }
+    public int getMissedNotes() { return missedNotes; }
+
+    public boolean hasActivity() {
+        return hits > 0 || wrongNotes > 0 || missedNotes > 0;
+    }
+
+    public PracticeSessionStore.Session toSession(long startEpochMillis, long durationMillis, long pieceKey, int handMode) {
+        int meanTiming = hits == 0 ? 0 : (int) (sumAbsTimingMicros / hits);
+        int meanVelocity = hits == 0 ? 0 : (int) (sumAbsVelocityDeviation * 100 / hits);
+        return new PracticeSessionStore.Session(startEpochMillis, durationMillis, pieceKey, handMode,
+                expectedNotes, hits, wrongNotes, missedNotes, meanTiming, (int) Math.min(Integer.MAX_VALUE, maxTimingMicros), meanVelocity);
+    }
+}
@@ -0,0 +1,111 @@
+package com.Tbence132545.Melodigram.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only file of per-session practice aggregates in fixed 64-byte records, so progress
+ * over hundreds of sessions can be read back with a single read and no parsing.
+ */
+public final class PracticeSessionStore {
+
+    /**
+     * One practice session. Timing values are in microseconds, the velocity deviation is the
+     * mean absolute difference times 100.
+     */
+    public record Session(long startEpochMillis, long durationMillis, long pieceKey, int handMode,
+                          int expectedNotes, int hits, int wrongNotes, int missedNotes,
+                          int meanAbsTimingMicros, int maxTimingMicros, int meanVelocityDeviationX100) {}
+
+    private static final int MAGIC = 0x4D505331; // "MPS1"
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_SIZE = 64;
+    private static final int FIELDS_SIZE = 56; // the rest of a record is reserved
+
+    private final Path file;
+
+    public PracticeSessionStore(Path file) {
+        this.file = file;
+    }
+
+    public static PracticeSessionStore openDefault() {
+        return new PracticeSessionStore(AppDirectories.resolve("practice-sessions.bin"));
+    }
+
+    /**
+     * Stable 64-bit key for a piece, taken from the leading hex digits of its sequence hash.
+     */
+    public static long pieceKey(String sequenceHash) {
+        return Long.parseUnsignedLong(sequenceHash.substring(0, 16), 16);
+    }
+
+    public synchronized void append(Session session) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (channel.size() == 0) {
+                buffer.putInt(MAGIC).putInt(RECORD_SIZE);
+            }
+            buffer.putLong(session.startEpochMillis())
+                    .putLong(session.durationMillis())
+                    .putLong(session.pieceKey())
+                    .putInt(session.handMode())
+                    .putInt(session.expectedNotes())
+                    .putInt(session.hits())
+                    .putInt(session.wrongNotes())
+                    .putInt(session.missedNotes())
+                    .putInt(session.meanAbsTimingMicros())
+                    .putInt(session.maxTimingMicros())
+                    .putInt(session.meanVelocityDeviationX100());
+            buffer.position(buffer.position() + (RECORD_SIZE - FIELDS_SIZE));
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+        }
+    }
+
+    public synchronized List<Session> readAll() throws IOException {
+        return read(null);
+    }
+
+    public synchronized List<Session> readForPiece(long pieceKey) throws IOException {
+        return read(pieceKey);
+    }
+
+    private List<Session> read(Long pieceFilter) throws IOException {
+        List<Session> sessions = new ArrayList<>();
+        if (!Files.exists(file)) return sessions;
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) { }
+        }
+        buffer.flip();
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a practice session file: " + file);
+        }
+        int recordSize = buffer.getInt();
+        // Later versions may only grow the record into its reserved bytes
+        if (recordSize < FIELDS_SIZE) {
+            throw new IOException("Corrupt practice session file, record size " + recordSize + ": " + file);
+        }
+        while (buffer.remaining() >= recordSize) {
+            int start = buffer.position();
+            long pieceKey = buffer.getLong(start + 16);
+            if (pieceFilter == null || pieceFilter == pieceKey) {
+                sessions.add(new Session(buffer.getLong(start), buffer.getLong(start + 8), pieceKey,
+                        buffer.getInt(start + 24), buffer.getInt(start + 28), buffer.getInt(start + 32),
+                        buffer.getInt(start + 36), buffer.getInt(start + 40), buffer.getInt(start + 44),
+                        buffer.getInt(start + 48), buffer.getInt(start + 52)));
+            }
+            buffer.position(start + recordSize);
+        }
+        return sessions;
+    }
+}
@@ -0,0 +1,62 @@
+package com.Tbence132545.Melodigram.model;
+
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+import java.util.ArrayDeque;
+
+/**
+ * Single pass over a sequence that pairs note on/off events into a {@link NoteTable} and
+ * collects controller state for seeking. Needs no MIDI devices, so it also runs headlessly.
+ */
+public final class SequencePreprocessor {
+
+    public record Result(NoteTable notes, ControllerChaseIndex chaseIndex, TempoMap tempoMap) {}
+
+    private SequencePreprocessor() {}
+
+    public static Result preprocess(Sequence sequence) {
+        FlightEvents.Preprocess flightEvent = new FlightEvents.Preprocess();
+        flightEvent.begin();
+        TempoMap tempoMap = new TempoMap(sequence);
+        NoteTable.Builder notes = new NoteTable.Builder();
+        ControllerChaseIndex.Builder chaseBuilder = new ControllerChaseIndex.Builder();
+
+        // Open notes per pitch, oldest first: {onMillis, velocity, channel}
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ArrayDeque<long[]>[] activeNotes = new ArrayDeque[128];
+        Track[] tracks = sequence.getTracks();
+        for (int t = 0; t < tracks.length; t++) {
+            Track track = tracks[t];
+            for (int i = 0; i < track.size(); i++) {
+                MidiEvent event = track.get(i);
+                MidiMessage msg = event.getMessage();
+                if (msg instanceof ShortMessage sm) {
+                    int cmd = sm.getCommand();
+                    int note = sm.getData1();
+                    long timeMicros = tempoMap.tickToMicros(event.getTick());
+                    long timeMillis = timeMicros / 1000;
+                    if (cmd == ShortMessage.NOTE_ON && sm.getData2() > 0) {
+                        if (activeNotes[note] == null) activeNotes[note] = new ArrayDeque<>();
+                        activeNotes[note].addLast(new long[]{timeMillis, sm.getData2(), sm.getChannel()});
+                    } else if (cmd == ShortMessage.NOTE_OFF || (cmd == ShortMessage.NOTE_ON && sm.getData2() == 0)) {
+                        ArrayDeque<long[]> onTimes = activeNotes[note];
+                        if (onTimes != null && !onTimes.isEmpty()) {
+                            long[] on = onTimes.pollFirst();
+                            notes.add(note, on[0], timeMillis, (int) on[1], (int) on[2], t);
+                        }
+                    } else {
+                        chaseBuilder.add(timeMicros, sm);
+                    }
+                }
+            }
+        }
+        Result result = new Result(notes.build(), chaseBuilder.build(), tempoMap);
+        flightEvent.notes = result.notes().size();
+        flightEvent.tempoChanges = tempoMap.getTempoChangeCount();
+        flightEvent.commit();
+        return result;
+    }
+}
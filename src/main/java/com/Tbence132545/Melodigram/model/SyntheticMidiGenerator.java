@@ -0,0 +1,181 @@
+package com.Tbence132545.Melodigram.model;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Generates Standard MIDI Files of any size for measuring how loading, preprocessing and drawing
+ * scale. The same options always give the same sequence: chords of random size spread over the
+ * note tracks at a given density, tempo changes on the conductor track, and optionally a note
+ * struck again while the same pitch is still sounding.
+ */
+public final class SyntheticMidiGenerator {
+
+    /**
+     * @param notesPerSecond density at the starting tempo of 120 BPM
+     * @param maxPolyphony largest chord; chord sizes are uniform between 1 and this
+     * @param tempoChangesPerMinute average, at 120 BPM; 0 keeps one tempo throughout
+     * @param overlapProbability chance that a note repeats the pitch its track is still holding
+     */
+    public record Options(long seed, int noteCount, int trackCount, double notesPerSecond, int maxPolyphony,
+                          double tempoChangesPerMinute, double overlapProbability) {
+
+        public Options {
+            if (noteCount < 0) throw new IllegalArgumentException("noteCount must not be negative");
+            if (trackCount < 1 || trackCount > MAX_TRACKS) throw new IllegalArgumentException("trackCount must be 1-" + MAX_TRACKS);
+            if (notesPerSecond <= 0) throw new IllegalArgumentException("notesPerSecond must be positive");
+            if (maxPolyphony < 1) throw new IllegalArgumentException("maxPolyphony must be at least 1");
+            if (tempoChangesPerMinute < 0) throw new IllegalArgumentException("tempoChangesPerMinute must not be negative");
+            if (overlapProbability < 0 || overlapProbability > 1) throw new IllegalArgumentException("overlapProbability must be 0-1");
+        }
+
+        /**
+         * Two hands playing a moderately busy piece.
+         */
+        public static Options defaults() {
+            return new Options(42, 10_000, 2, 8, 4, 0, 0);
+        }
+
+        public Options withSeed(long seed) {
+            return new Options(seed, noteCount, trackCount, notesPerSecond, maxPolyphony, tempoChangesPerMinute, overlapProbability);
+        }
+
+        public Options withNoteCount(int noteCount) {
+            return new Options(seed, noteCount, trackCount, notesPerSecond, maxPolyphony, tempoChangesPerMinute, overlapProbability);
+        }
+
+        /**
+         * Roughly as many notes as fit in a file of the given size.
+         */
+        public Options withFileSize(long bytes) {
+            return withNoteCount((int) Math.min(Integer.MAX_VALUE, Math.max(0, bytes / BYTES_PER_NOTE)));
+        }
+
+        public Options withTrackCount(int trackCount) {
+            return new Options(seed, noteCount, trackCount, notesPerSecond, maxPolyphony, tempoChangesPerMinute, overlapProbability);
+        }
+
+        public Options withNotesPerSecond(double notesPerSecond) {
+            return new Options(seed, noteCount, trackCount, notesPerSecond, maxPolyphony, tempoChangesPerMinute, overlapProbability);
+        }
+
+        public Options withMaxPolyphony(int maxPolyphony) {
+            return new Options(seed, noteCount, trackCount, notesPerSecond, maxPolyphony, tempoChangesPerMinute, overlapProbability);
+        }
+
+        public Options withTempoChangesPerMinute(double tempoChangesPerMinute) {
+            return new Options(seed, noteCount, trackCount, notesPerSecond, maxPolyphony, tempoChangesPerMinute, overlapProbability);
+        }
+
+        public Options withOverlapProbability(double overlapProbability) {
+            return new Options(seed, noteCount, trackCount, notesPerSecond, maxPolyphony, tempoChangesPerMinute, overlapProbability);
+        }
+    }
+
+    public static final int MAX_TRACKS = 256;
+    public static final int RESOLUTION = 480;
+
+    private static final int META_TEMPO = 0x51;
+    private static final int DRUM_CHANNEL = 9;
+    private static final double TICKS_PER_SECOND = RESOLUTION * 2.0; // at 120 BPM
+    private static final int BYTES_PER_NOTE = 7; // delta, note-on and running-status note-off, on average
+
+    private record PendingOff(long tick, int pitch) {}
+
+    private SyntheticMidiGenerator() {}
+
+    public static Sequence generate(Options options) throws InvalidMidiDataException {
+        Random random = new Random(options.seed());
+        Sequence sequence = new Sequence(Sequence.PPQ, RESOLUTION);
+        Track conductor = sequence.createTrack();
+        Track[] tracks = new Track[options.trackCount()];
+        int[] channels = new int[tracks.length];
+        int[] lastPitch = new int[tracks.length];
+        int[][] held = new int[tracks.length][128];
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        PriorityQueue<PendingOff>[] offs = new PriorityQueue[tracks.length];
+        for (int t = 0; t < tracks.length; t++) {
+            tracks[t] = sequence.createTrack();
+            channels[t] = t % 15 < DRUM_CHANNEL ? t % 15 : t % 15 + 1;
+            // Tracks are spread from the bass up, like the staves of a score
+            lastPitch[t] = 36 + (tracks.length == 1 ? 24 : 48 * t / (tracks.length - 1));
+            offs[t] = new PriorityQueue<>((a, b) -> Long.compare(a.tick(), b.tick()));
+        }
+
+        double meanChord = (1 + options.maxPolyphony()) / 2.0;
+        double meanGapTicks = TICKS_PER_SECOND * meanChord / options.notesPerSecond();
+        double meanTempoGapTicks = options.tempoChangesPerMinute() > 0 ? TICKS_PER_SECOND * 60 / options.tempoChangesPerMinute() : 0;
+        long nextTempoChange = meanTempoGapTicks > 0 ? exponential(random, meanTempoGapTicks) : Long.MAX_VALUE;
+
+        long tick = 0;
+        int written = 0;
+        while (written < options.noteCount()) {
+            while (nextTempoChange <= tick) {
+                int bpm = 60 + random.nextInt(121);
+                conductor.add(new MidiEvent(tempo(60_000_000 / bpm), nextTempoChange));
+                nextTempoChange += Math.max(1, exponential(random, meanTempoGapTicks));
+            }
+            // Releases are queued so that every track is written in tick order, which keeps Track.add appending
+            for (int t = 0; t < tracks.length; t++) flushOffs(tracks[t], channels[t], offs[t], held[t], tick);
+
+            int chord = Math.min(options.noteCount() - written, 1 + random.nextInt(options.maxPolyphony()));
+            int t = random.nextInt(tracks.length);
+            for (int c = 0; c < chord; c++) {
+                int pitch;
+                if (held[t][lastPitch[t]] > 0 && random.nextDouble() < options.overlapProbability()) {
+                    pitch = lastPitch[t];
+                } else {
+                    pitch = Math.max(21, Math.min(108, lastPitch[t] + random.nextInt(13) - 6));
+                    // Step past pitches still sounding on this track; a full register just overlaps
+                    for (int tries = 0; tries < 88 && held[t][pitch] > 0; tries++) pitch = pitch == 108 ? 21 : pitch + 1;
+                }
+                long length = RESOLUTION / 8 + random.nextInt(RESOLUTION * 2);
+                tracks[t].add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, channels[t], pitch, 40 + random.nextInt(80)), tick));
+                offs[t].add(new PendingOff(tick + length, pitch));
+                held[t][pitch]++;
+                lastPitch[t] = pitch;
+                written++;
+                if (c + 1 < chord && tracks.length > 1 && random.nextInt(3) == 0) t = random.nextInt(tracks.length);
+            }
+            tick += Math.max(1, exponential(random, meanGapTicks));
+        }
+        for (int t = 0; t < tracks.length; t++) flushOffs(tracks[t], channels[t], offs[t], held[t], Long.MAX_VALUE);
+        return sequence;
+    }
+
+    /**
+     * Writes a type 1 file and returns its size in bytes.
+     */
+    public static long write(Options options, Path file) throws InvalidMidiDataException, IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        return MidiSystem.write(generate(options), 1, file.toFile());
+    }
+
+    private static void flushOffs(Track track, int channel, PriorityQueue<PendingOff> offs, int[] held, long upTo) throws InvalidMidiDataException {
+        while (!offs.isEmpty() && offs.peek().tick() <= upTo) {
+            PendingOff off = offs.poll();
+            held[off.pitch()]--;
+            track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, channel, off.pitch(), 0), off.tick()));
+        }
+    }
+
+    private static MetaMessage tempo(int microsPerQuarter) throws InvalidMidiDataException {
+        byte[] data = {(byte) (microsPerQuarter >> 16), (byte) (microsPerQuarter >> 8), (byte) microsPerQuarter};
+        return new MetaMessage(META_TEMPO, data, data.length);
+    }
+
+    private static long exponential(Random random, double mean) {
+        return Math.round(-mean * Math.log(1 - random.nextDouble()));
+    }
+}
@@ -0,0 +1,129 @@
+package com.Tbence132545.Melodigram.model;
+
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Track;
+import java.util.Arrays;
+
+/**
+ * Converts between ticks and microseconds for a sequence without going through a Sequencer.
+ */
+public final class TempoMap {
+
+    private static final int META_TEMPO = 0x51;
+    private static final int DEFAULT_MICROS_PER_QUARTER = 500_000;
+
+    private final boolean ppq;
+    private final int resolution;
+    private final double smpteFramesPerSecond;
+    private final long[] changeTicks;
+    private final long[] changeMicros;
+    private final int[] microsPerQuarter;
+    private final int size;
+    private final int tempoChangeCount;
+
+    public TempoMap(Sequence sequence) {
+        this.ppq = sequence.getDivisionType() == Sequence.PPQ;
+        this.resolution = Math.max(1, sequence.getResolution());
+        this.smpteFramesPerSecond = ppq ? 0 : sequence.getDivisionType();
+
+        long[] ticks = new long[16];
+        int[] tempos = new int[16];
+        int count = 0;
+        if (ppq) {
+            for (Track track : sequence.getTracks()) {
+                for (int i = 0; i < track.size(); i++) {
+                    MidiEvent event = track.get(i);
+                    MidiMessage msg = event.getMessage();
+                    if (msg instanceof MetaMessage meta && meta.getType() == META_TEMPO) {
+                        byte[] data = meta.getData();
+                        if (data.length < 3) continue;
+                        if (count == ticks.length) {
+                            ticks = Arrays.copyOf(ticks, count * 2);
+                            tempos = Arrays.copyOf(tempos, count * 2);
+                        }
+                        ticks[count] = event.getTick();
+                        tempos[count] = ((data[0] & 0xFF) << 16) | ((data[1] & 0xFF) << 8) | (data[2] & 0xFF);
+                        count++;
+                    }
+                }
+            }
+        }
+        sortByTick(ticks, tempos, count);
+
+        // Entry 0 is always the implicit 120 BPM tempo at tick 0, later entries may override it.
+        changeTicks = new long[count + 1];
+        changeMicros = new long[count + 1];
+        microsPerQuarter = new int[count + 1];
+        microsPerQuarter[0] = DEFAULT_MICROS_PER_QUARTER;
+        int n = 1;
+        for (int i = 0; i < count; i++) {
+            if (ticks[i] == changeTicks[n - 1]) {
+                microsPerQuarter[n - 1] = tempos[i];
+                continue;
+            }
+            changeTicks[n] = ticks[i];
+            changeMicros[n] = changeMicros[n - 1] + (ticks[i] - changeTicks[n - 1]) * microsPerQuarter[n - 1] / resolution;
+            microsPerQuarter[n] = tempos[i];
+            n++;
+        }
+        this.tempoChangeCount = n - 1;
+        this.size = n;
+    }
+
+    public long tickToMicros(long tick) {
+        if (!ppq) {
+            return (long) (tick * 1_000_000.0 / (smpteFramesPerSecond * resolution));
+        }
+        int i = floorIndex(changeTicks, tick);
+        return changeMicros[i] + (tick - changeTicks[i]) * microsPerQuarter[i] / resolution;
+    }
+
+    public long tickToMillis(long tick) {
+        return tickToMicros(tick) / 1000;
+    }
+
+    public long microsToTick(long micros) {
+        if (!ppq) {
+            return (long) (micros * smpteFramesPerSecond * resolution / 1_000_000.0);
+        }
+        int i = floorIndex(changeMicros, micros);
+        return changeTicks[i] + (micros - changeMicros[i]) * resolution / microsPerQuarter[i];
+    }
+
+    public int getTempoChangeCount() {
+        return tempoChangeCount;
+    }
+
+    private int floorIndex(long[] keys, long value) {
+        int lo = 0;
+        int hi = size - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (keys[mid] <= value) lo = mid;
+            else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    private static void sortByTick(long[] ticks, int[] tempos, int count) {
+        boolean sorted = true;
+        for (int i = 1; i < count && sorted; i++) {
+            sorted = ticks[i - 1] <= ticks[i];
+        }
+        if (sorted) return;
+        // Tempo events from several tracks are merged here; the low bits keep equal ticks in file order.
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = (ticks[i] << 24) | i;
+        }
+        Arrays.sort(keys);
+        int[] original = Arrays.copyOf(tempos, count);
+        for (int i = 0; i < count; i++) {
+            ticks[i] = keys[i] >>> 24;
+            tempos[i] = original[(int) (keys[i] & 0xFFFFFF)];
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.Tbence132545.Melodigram.model;
+
+import javax.imageio.ImageIO;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Piano-roll previews of library files. Images are produced by a small pool of background
+ * threads, only for the files the list currently shows, and kept twice: as PNGs on disk named by
+ * a hash of the file contents, so they survive restarts and renames, and in an in-memory LRU
+ * bounded by pixel bytes. {@link #get(String)} never blocks, so the list renderer can call it.
+ */
+public final class ThumbnailCache {
+
+    public static final long DEFAULT_MAX_BYTES = 16L << 20;
+
+    private static final int WORKERS = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1));
+
+    public interface Renderer {
+        BufferedImage render(NoteTable notes, int width, int height);
+    }
+
+    private final Path directory;
+    private final MidiFileService midiFileService;
+    private final Renderer renderer;
+    private final int width;
+    private final int height;
+    private final long maxBytes;
+    private final ExecutorService workers;
+
+    // all guarded by this
+    private final LinkedHashMap<String, BufferedImage> images = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+    private final Set<String> wanted = new HashSet<>();
+    private final Set<String> queued = new HashSet<>();
+    private final Set<String> failed = new HashSet<>();
+
+    private volatile Consumer<String> onReady;
+
+    public ThumbnailCache(Path directory, MidiFileService midiFileService, Renderer renderer, int width, int height, long maxBytes) {
+        this.directory = directory;
+        this.midiFileService = midiFileService;
+        this.renderer = renderer;
+        this.width = width;
+        this.height = height;
+        this.maxBytes = maxBytes;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(WORKERS, r -> {
+            Thread thread = new Thread(r, "thumbnail-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Called from a worker thread with the file name whenever a thumbnail becomes available.
+     */
+    public void setOnReady(Consumer<String> onReady) {
+        this.onReady = onReady;
+    }
+
+    /**
+     * The thumbnail if it is in memory, otherwise null.
+     */
+    public synchronized BufferedImage get(String name) {
+        return images.get(name);
+    }
+
+    /**
+     * Replaces the set of files whose thumbnails are wanted and queues the missing ones; queued
+     * files that scrolled out of view before a worker got to them are skipped.
+     */
+    public synchronized void requestVisible(List<String> names) {
+        wanted.clear();
+        wanted.addAll(names);
+        for (String name : names) {
+            if (images.containsKey(name) || failed.contains(name) || !queued.add(name)) continue;
+            workers.execute(() -> generate(name));
+        }
+    }
+
+    /**
+     * Forgets the in-memory thumbnail of a file whose contents may have changed.
+     */
+    public synchronized void invalidate(String name) {
+        BufferedImage image = images.remove(name);
+        if (image != null) bytes -= sizeOf(image);
+        failed.remove(name);
+    }
+
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    private void generate(String name) {
+        synchronized (this) {
+            if (!wanted.contains(name)) {
+                queued.remove(name);
+                return;
+            }
+        }
+        BufferedImage image = null;
+        try {
+            image = loadOrRender(name);
+        } catch (Exception e) {
+            System.err.println("Could not create thumbnail for " + name + ": " + e.getMessage());
+        }
+        synchronized (this) {
+            queued.remove(name);
+            if (image == null) {
+                failed.add(name);
+                return;
+            }
+            put(name, image);
+        }
+        Consumer<String> listener = onReady;
+        if (listener != null) listener.accept(name);
+    }
+
+    private BufferedImage loadOrRender(String name) throws Exception {
+        byte[] data = midiFileService.readMidiBytes(name);
+        Path path = directory.resolve(contentHash(data) + "-" + width + "x" + height + ".png");
+        if (Files.exists(path)) {
+            BufferedImage cached = ImageIO.read(path.toFile());
+            if (cached != null) return cached;
+        }
+        Sequence sequence = MidiSystem.getSequence(new ByteArrayInputStream(data));
+        BufferedImage image = renderer.render(SequencePreprocessor.preprocess(sequence).notes(), width, height);
+        try {
+            write(image, path);
+        } catch (IOException e) {
+            System.err.println("Could not cache thumbnail " + path + ": " + e.getMessage());
+        }
+        return image;
+    }
+
+    private void write(BufferedImage image, Path path) throws IOException {
+        Files.createDirectories(directory);
+        AtomicFiles.write(path, temp -> {
+            if (!ImageIO.write(image, "png", temp.toFile())) throw new IOException("No PNG writer");
+        });
+    }
+
+    private void put(String name, BufferedImage image) {
+        BufferedImage previous = images.put(name, image);
+        if (previous != null) bytes -= sizeOf(previous);
+        bytes += sizeOf(image);
+        // Least recently drawn first; the newest image always stays
+        Iterator<Map.Entry<String, BufferedImage>> eldest = images.entrySet().iterator();
+        while (bytes > maxBytes && images.size() > 1) {
+            bytes -= sizeOf(eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    private static long sizeOf(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * 4;
+    }
+
+    private static String contentHash(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(data);
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-1 unavailable", e);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.Tbence132545.Melodigram.model;
+
+/**
+ * A {@link PlaybackClock} that stands still until advanced. Advance it from one thread only; other
+ * threads, such as a MIDI input, may read it.
+ */
+public final class VirtualClock implements PlaybackClock {
+
+    // Not zero, timestamps of zero mean "unset" in places like LatencyProbe
+    private static final long START_NANOS = 1_000_000_000L;
+
+    private volatile long nanos = START_NANOS;
+
+    @Override
+    public long nanoTime() {
+        return nanos;
+    }
+
+    public void advanceNanos(long delta) {
+        if (delta < 0) throw new IllegalArgumentException("A clock can't go backwards");
+        nanos += delta;
+    }
+
+    public void advanceMillis(long delta) {
+        advanceNanos(delta * 1_000_000);
+    }
+}
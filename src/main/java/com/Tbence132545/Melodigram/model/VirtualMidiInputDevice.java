@@ -0,0 +1,376 @@
+package com.Tbence132545.Melodigram.model;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Transmitter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntPredicate;
+
+/**
+ * A software MIDI input that plays a {@link Script} of timed events into its transmitters, so
+ * practice mode can be driven without a keyboard attached. Scripts can be derived from a piece,
+ * mutated with timing jitter and wrong notes, or generated at a fixed event rate for stress runs.
+ */
+public class VirtualMidiInputDevice implements MidiDevice {
+
+    private static final Info INFO = new VirtualInfo();
+
+    private final Script script;
+    private final double speed;
+    private final boolean looping;
+    private final List<VirtualTransmitter> transmitters = new CopyOnWriteArrayList<>();
+    private volatile Thread player;
+    private volatile boolean open;
+    private volatile long openedAtNanos;
+    private volatile long sentEvents;
+    private volatile Runnable onFinished;
+
+    public VirtualMidiInputDevice(Script script) {
+        this(script, 1.0, false);
+    }
+
+    /**
+     * @param speed playback rate of the script, 2.0 plays it twice as fast
+     */
+    public VirtualMidiInputDevice(Script script, double speed, boolean looping) {
+        this.script = script;
+        this.speed = speed > 0 ? speed : 1.0;
+        this.looping = looping;
+    }
+
+    public void setOnFinished(Runnable onFinished) {
+        this.onFinished = onFinished;
+    }
+
+    public long getSentEventCount() {
+        return sentEvents;
+    }
+
+    @Override
+    public Info getDeviceInfo() {
+        return INFO;
+    }
+
+    @Override
+    public synchronized void open() {
+        if (open) return;
+        open = true;
+        openedAtNanos = System.nanoTime();
+        Thread thread = new Thread(this::play, "virtual-midi-input");
+        thread.setDaemon(true);
+        player = thread;
+        thread.start();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!open) return;
+        open = false;
+        Thread thread = player;
+        player = null;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        for (VirtualTransmitter t : transmitters) t.close();
+        transmitters.clear();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public long getMicrosecondPosition() {
+        return open ? (System.nanoTime() - openedAtNanos) / 1000 : -1;
+    }
+
+    @Override
+    public int getMaxReceivers() {
+        return 0;
+    }
+
+    @Override
+    public int getMaxTransmitters() {
+        return -1;
+    }
+
+    @Override
+    public Receiver getReceiver() throws MidiUnavailableException {
+        throw new MidiUnavailableException("A virtual input device has no receivers");
+    }
+
+    @Override
+    public List<Receiver> getReceivers() {
+        return List.of();
+    }
+
+    @Override
+    public Transmitter getTransmitter() {
+        VirtualTransmitter transmitter = new VirtualTransmitter();
+        transmitters.add(transmitter);
+        return transmitter;
+    }
+
+    @Override
+    public List<Transmitter> getTransmitters() {
+        return new ArrayList<>(transmitters);
+    }
+
+    private void play() {
+        Thread self = Thread.currentThread();
+        // Callers usually open the device before connecting a receiver; don't play into the void
+        while (player == self && transmitters.stream().allMatch(t -> t.receiver == null)) {
+            LockSupport.parkNanos(1_000_000);
+        }
+        do {
+            long start = System.nanoTime();
+            for (int i = 0; i < script.size && player == self; i++) {
+                long due = start + (long) (script.timeNanos[i] / speed);
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0 && player == self) {
+                    LockSupport.parkNanos(wait);
+                }
+                if (player != self) return;
+                int packed = script.events[i];
+                try {
+                    ShortMessage message = new ShortMessage(packed >>> 16 & 0xFF, packed >>> 8 & 0x7F, packed & 0x7F);
+                    for (VirtualTransmitter t : transmitters) {
+                        Receiver receiver = t.receiver;
+                        if (receiver != null) receiver.send(message, -1);
+                    }
+                    sentEvents++;
+                } catch (InvalidMidiDataException e) {
+                    e.printStackTrace();
+                }
+            }
+        } while (looping && player == self);
+        Runnable finished = onFinished;
+        if (finished != null && player == self) finished.run();
+    }
+
+    private class VirtualTransmitter implements Transmitter {
+        private volatile Receiver receiver;
+
+        @Override
+        public void setReceiver(Receiver receiver) {
+            this.receiver = receiver;
+        }
+
+        @Override
+        public Receiver getReceiver() {
+            return receiver;
+        }
+
+        @Override
+        public void close() {
+            transmitters.remove(this);
+            receiver = null;
+        }
+    }
+
+    private static class VirtualInfo extends Info {
+        VirtualInfo() {
+            super("Melodigram Virtual Input", "Melodigram", "Replays scripted MIDI input", "1.0");
+        }
+    }
+
+    /**
+     * Time-ordered short messages, each as a nanosecond offset and a packed status/data int.
+     */
+    public static final class Script {
+        private final long[] timeNanos;
+        private final int[] events;
+        private final int size;
+
+        private Script(long[] timeNanos, int[] events, int size) {
+            this.timeNanos = timeNanos;
+            this.events = events;
+            this.size = size;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long getDurationNanos() {
+            return size == 0 ? 0 : timeNanos[size - 1];
+        }
+
+        long timeNanosAt(int index) {
+            return timeNanos[index];
+        }
+
+        /**
+         * The message at the index as {@code status << 16 | data1 << 8 | data2}.
+         */
+        int eventAt(int index) {
+            return events[index];
+        }
+
+        /**
+         * The notes of a piece played exactly as written.
+         */
+        public static Script fromSequence(Sequence sequence) {
+            NoteTable notes = SequencePreprocessor.preprocess(sequence).notes();
+            return fromNotes(notes, i -> true);
+        }
+
+        public static Script fromNotes(NoteTable notes, IntPredicate includeNote) {
+            Builder builder = new Builder();
+            for (int i = 0; i < notes.size(); i++) {
+                if (!includeNote.test(i)) continue;
+                builder.noteOn(notes.onMillis(i), notes.pitch(i), Math.max(1, notes.velocity(i)));
+                builder.noteOff(notes.offMillis(i), notes.pitch(i));
+            }
+            return builder.build();
+        }
+
+        /**
+         * Random note on/off pairs at a fixed average rate, for load testing the input pipeline.
+         */
+        public static Script stress(int eventsPerSecond, long durationMillis, long seed) {
+            Random random = new Random(seed);
+            Builder builder = new Builder();
+            long intervalNanos = 1_000_000_000L / Math.max(1, eventsPerSecond);
+            int[] heldFor = new int[128];
+            long t = 0;
+            long end = durationMillis * 1_000_000;
+            while (t < end) {
+                int pitch = 36 + random.nextInt(61);
+                if (heldFor[pitch] > 0) {
+                    builder.addNanos(t, ShortMessage.NOTE_OFF, pitch, 0);
+                    heldFor[pitch] = 0;
+                } else {
+                    builder.addNanos(t, ShortMessage.NOTE_ON, pitch, 1 + random.nextInt(127));
+                    heldFor[pitch] = 1;
+                }
+                t += intervalNanos;
+            }
+            for (int pitch = 0; pitch < 128; pitch++) {
+                if (heldFor[pitch] > 0) builder.addNanos(t, ShortMessage.NOTE_OFF, pitch, 0);
+            }
+            return builder.build();
+        }
+
+        /**
+         * Shifts every note by a uniformly random offset within {@code ±maxJitterMillis}. Each note
+         * off moves with its own note on, so note lengths are kept; a note never starts before the
+         * previous note of the same pitch has ended. Other messages keep their time.
+         */
+        public Script withJitter(long maxJitterMillis, long seed) {
+            Random random = new Random(seed);
+            long maxNanos = maxJitterMillis * 1_000_000;
+            // Per pitch, the sounding notes in order: {original on time, shifted on time}
+            List<ArrayDeque<long[]>> sounding = new ArrayList<>(128);
+            for (int pitch = 0; pitch < 128; pitch++) sounding.add(new ArrayDeque<>());
+            long[] lastOff = new long[128];
+            Builder builder = new Builder();
+            for (int i = 0; i < size; i++) {
+                int packed = events[i];
+                int status = packed >>> 16 & 0xFF;
+                int pitch = packed >>> 8 & 0x7F;
+                int velocity = packed & 0x7F;
+                long time = timeNanos[i];
+                if (MidiEventRing.isNoteOn(status, velocity)) {
+                    long shift = maxNanos == 0 ? 0 : (long) ((random.nextDouble() * 2 - 1) * maxNanos);
+                    ArrayDeque<long[]> notes = sounding.get(pitch);
+                    long shifted = Math.max(0, time + shift);
+                    if (notes.isEmpty()) shifted = Math.max(shifted, lastOff[pitch]);
+                    notes.addLast(new long[]{time, shifted});
+                    time = shifted;
+                } else if (MidiEventRing.isNoteOff(status, velocity)) {
+                    long[] on = sounding.get(pitch).pollFirst();
+                    if (on != null) time = on[1] + (time - on[0]);
+                    lastOff[pitch] = Math.max(lastOff[pitch], time);
+                }
+                builder.addRaw(time, packed);
+            }
+            return builder.build();
+        }
+
+        /**
+         * Replaces notes, with the given probability, by a neighbour one or two semitones away.
+         */
+        public Script withWrongNotes(double probability, long seed) {
+            Random random = new Random(seed);
+            int[] replacement = new int[128];
+            Arrays.fill(replacement, -1);
+            Builder builder = new Builder();
+            for (int i = 0; i < size; i++) {
+                int packed = events[i];
+                int status = packed >>> 16 & 0xFF;
+                int pitch = packed >>> 8 & 0x7F;
+                int velocity = packed & 0x7F;
+                int played = pitch;
+                if (MidiEventRing.isNoteOn(status, velocity)) {
+                    if (random.nextDouble() < probability) {
+                        int offset = (random.nextBoolean() ? 1 : -1) * (1 + random.nextInt(2));
+                        played = Math.max(0, Math.min(127, pitch + offset));
+                    }
+                    replacement[pitch] = played;
+                } else if (MidiEventRing.isNoteOff(status, velocity)) {
+                    if (replacement[pitch] >= 0) played = replacement[pitch];
+                }
+                builder.addRaw(timeNanos[i], (status << 16) | (played << 8) | velocity);
+            }
+            return builder.build();
+        }
+
+        public static final class Builder {
+            private long[] times = new long[256];
+            private int[] packed = new int[256];
+            private int count;
+
+            public Builder noteOn(long millis, int pitch, int velocity) {
+                return addNanos(millis * 1_000_000, ShortMessage.NOTE_ON, pitch, velocity);
+            }
+
+            public Builder noteOff(long millis, int pitch) {
+                return addNanos(millis * 1_000_000, ShortMessage.NOTE_OFF, pitch, 0);
+            }
+
+            public Builder controlChange(long millis, int controller, int value) {
+                return addNanos(millis * 1_000_000, ShortMessage.CONTROL_CHANGE, controller, value);
+            }
+
+            public Builder addNanos(long nanos, int status, int data1, int data2) {
+                return addRaw(nanos, ((status & 0xFF) << 16) | ((data1 & 0x7F) << 8) | (data2 & 0x7F));
+            }
+
+            private Builder addRaw(long nanos, int event) {
+                if (count == times.length) {
+                    times = Arrays.copyOf(times, count * 2);
+                    packed = Arrays.copyOf(packed, count * 2);
+                }
+                times[count] = nanos;
+                packed[count] = event;
+                count++;
+                return this;
+            }
+
+            public Script build() {
+                Integer[] order = new Integer[count];
+                for (int i = 0; i < count; i++) order[i] = i;
+                Arrays.sort(order, (a, b) -> Long.compare(times[a], times[b]));
+                long[] sortedTimes = new long[count];
+                int[] sortedEvents = new int[count];
+                for (int i = 0; i < count; i++) {
+                    sortedTimes[i] = times[order[i]];
+                    sortedEvents[i] = packed[order[i]];
+                }
+                return new Script(sortedTimes, sortedEvents, count);
+            }
+        }
+    }
+}
@@ -1,44 +1,19 @@
 package com.Tbence132545.Melodigram.view;
 
+import com.Tbence132545.Melodigram.model.FlightEvents;
+import com.Tbence132545.Melodigram.model.HandAssignmentStore;
+
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Function;
 import java.util.function.LongConsumer;
-import java.util.stream.Collectors;
 
 public class AnimationPanel extends JPanel {
-    public static class HandAssignment {
-        public final int midiNote;
-        public final long on;
-        public final long off;
-        public final String hand;
-
-        public HandAssignment(int midiNote, long on, long off, String hand) {
-            this.midiNote = midiNote;
-            this.on = on;
-            this.off = off;
-            this.hand = hand;
-        }
-    }
-
-
-    private static final double PIXELS_PER_MILLISECOND = 0.1;
-    private static final long NOTE_FALL_DURATION_MS = 2000;
-    private static final int NOTE_CORNER_RADIUS = 10;
-    private static final Color COLOR_GRID_LINE = new Color(100, 100, 100, 150);
-    private static final Color COLOR_BLACK_NOTE = new Color(255, 100, 100, 180);
-    private static final Color COLOR_WHITE_NOTE = new Color(255, 215, 0, 180);
-    private static final Color COLOR_LEFT_WHITE = new Color(135, 206, 250, 220); // Light Sky Blue
-    private static final Color COLOR_LEFT_BLACK = new Color(25, 25, 112, 220);   // Midnight Blue
-    private static final Color COLOR_RIGHT_WHITE = new Color(250, 128, 114, 220); // Salmon
-    private static final Color COLOR_RIGHT_BLACK = new Color(178, 34, 34, 220);  // Firebrick
-
-    private static final Font NOTE_TEXT_FONT = new Font("SansSerif", Font.BOLD, 16);
+    private static final Font OVERLAY_FONT = new Font("Monospaced", Font.PLAIN, 12);
     private static final Color NOTE_TEXT_COLOR = Color.WHITE;
 
     private final List<FallingNote> notes = new CopyOnWriteArrayList<>();
@@ -50,6 +25,8 @@ public class AnimationPanel extends JPanel {
     private boolean isHandAssignmentEnabled = false;
     private ListWindow.MidiFileActionListener.HandMode practiceFilterMode = ListWindow.MidiFileActionListener.HandMode.BOTH;
 
+    private String overlayText;
+    private HandChangeListener onHandChanged;
     private Runnable onDragStart;
     private LongConsumer onTimeChange;
     private Runnable onDragEnd;
@@ -74,37 +51,56 @@ public class AnimationPanel extends JPanel {
         repaint();
     }
 
-    public List<HandAssignment> getAssignedNotes() {
-        return notes.stream()
-                .filter(note -> note.hand != null)
-                .map(note -> new HandAssignment(
-                        note.midiNote,
-                        note.noteOnTime,
-                        note.noteOffTime,
-                        note.hand.name()
-                ))
-                .collect(Collectors.toList());
+    /**
+     * The hand of every note as a {@link HandAssignmentStore} code, in the order notes were added.
+     */
+    public byte[] getHandCodes() {
+        byte[] hands = new byte[notes.size()];
+        for (int i = 0; i < hands.length; i++) {
+            hands[i] = notes.get(i).handCode();
+        }
+        return hands;
     }
 
-    public void applyHandAssignments(List<HandAssignment> assignments) {
-        if (assignments == null || assignments.isEmpty()) return;
-        final long TOL_MS = 5;
-
-        for (HandAssignment a : assignments) {
-            for (FallingNote n : notes) {
-                if (n.midiNote == a.midiNote
-                        && Math.abs(n.noteOnTime - a.on) <= TOL_MS
-                        && Math.abs(n.noteOffTime - a.off) <= TOL_MS) {
-                    try {
-                        n.setHand(FallingNote.Hands.valueOf(a.hand));
-                    } catch (IllegalArgumentException ignored) {
-                    }
-                }
-            }
+    public byte getHandCode(int noteIndex) {
+        return notes.get(noteIndex).handCode();
+    }
+
+    /**
+     * Sets one note's hand without repainting, for replaying many edits at once.
+     */
+    public void setHandCode(int noteIndex, byte hand) {
+        notes.get(noteIndex).setHand(hand == HandAssignmentStore.HAND_LEFT ? FallingNote.Hands.LEFT
+                : hand == HandAssignmentStore.HAND_RIGHT ? FallingNote.Hands.RIGHT : null);
+    }
+
+    public interface HandChangeListener {
+        void handChanged(int noteIndex, byte oldHand, byte newHand);
+    }
+
+    /**
+     * Told about every click in hand assignment mode that changes a note's hand.
+     */
+    public void setOnHandChanged(HandChangeListener onHandChanged) {
+        this.onHandChanged = onHandChanged;
+    }
+
+    public void applyHandCodes(byte[] hands) {
+        int count = Math.min(hands.length, notes.size());
+        for (int i = 0; i < count; i++) {
+            setHandCode(i, hands[i]);
         }
         repaint();
     }
 
+    /**
+     * Diagnostic text drawn in the top left corner, or null for none.
+     */
+    public void setOverlayText(String overlayText) {
+        this.overlayText = overlayText;
+        repaint();
+    }
+
     public void setHandAssignmentMode(boolean enabled) {
         this.isHandAssignmentEnabled = enabled;
     }
@@ -134,43 +130,40 @@ public class AnimationPanel extends JPanel {
         notes.add(new FallingNote(midiNote, noteOnTime, noteOffTime, isBlackKey));
     }
 
-    public List<Integer> getNotesStartingBetween(long startMs, long endMs, ListWindow.MidiFileActionListener.HandMode handMode) {
-        List<Integer> onsets = new ArrayList<>();
-        if (endMs < startMs) return onsets;
-
-        for (FallingNote note : notes) {
-            boolean isWithinTime = note.noteOnTime > startMs && note.noteOnTime <= endMs;
-            if (isWithinTime && note.matchesHandFilter(handMode)) {
-                onsets.add(note.midiNote);
-            }
-        }
-        return onsets;
+    /**
+     * Whether the note at the given index (in the order notes were added) belongs to the hand mode.
+     */
+    public boolean noteMatchesHand(int noteIndex, ListWindow.MidiFileActionListener.HandMode handMode) {
+        return notes.get(noteIndex).matchesHandFilter(handMode);
     }
 
-
     @Override
     protected void paintComponent(Graphics g) {
+        FlightEvents.FramePaint event = new FlightEvents.FramePaint();
+        event.begin();
         super.paintComponent(g);
         Graphics2D g2d = (Graphics2D) g;
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
         drawGridLines(g2d);
 
+        int drawn = 0;
         for (FallingNote note : notes) {
-            note.draw(g2d, currentTimeMillis, getHeight());
+            if (note.draw(g2d, currentTimeMillis, getHeight())) drawn++;
+        }
+
+        if (overlayText != null) {
+            g2d.setFont(OVERLAY_FONT);
+            g2d.setColor(NOTE_TEXT_COLOR);
+            g2d.drawString(overlayText, 10, 20);
         }
+        event.notesDrawn = drawn;
+        event.playbackMillis = currentTimeMillis;
+        event.commit();
     }
 
     private void drawGridLines(Graphics2D g2d) {
-        g2d.setColor(COLOR_GRID_LINE);
-        for (int midiNote = lowestNote; midiNote <= highestNote; midiNote++) {
-            if (midiNote % 12 == 0) { // Draw a line at the start of every C key
-                PianoWindow.KeyInfo keyInfo = keyInfoProvider.apply(midiNote);
-                if (keyInfo != null && !keyInfo.isBlack()) {
-                    g2d.drawLine(keyInfo.x(), 0, keyInfo.x(), getHeight());
-                }
-            }
-        }
+        WaterfallRenderer.paintGridLines(g2d, keyInfoProvider::apply, lowestNote, highestNote, getHeight());
     }
 
     public Color getAssignedHighlightColor(int midiNote) {
@@ -178,20 +171,12 @@ public class AnimationPanel extends JPanel {
         for (int i = notes.size() - 1; i >= 0; i--) {
             FallingNote n = notes.get(i);
             if (n.midiNote == midiNote && t >= n.noteOnTime && t < n.noteOffTime && n.hand != null) {
-                Color semiTransparentColor = colorForHighlight(n);
-                return new Color(semiTransparentColor.getRed(), semiTransparentColor.getGreen(), semiTransparentColor.getBlue(), 255);
+                return WaterfallRenderer.keyHighlightColor(n.isBlackKey, n.handCode());
             }
         }
         return null;
     }
 
-    private Color colorForHighlight(FallingNote n) {
-        boolean isLeft = (n.hand == FallingNote.Hands.LEFT);
-        boolean isBlack = n.isBlackKey;
-        return isLeft ? (isBlack ? COLOR_LEFT_BLACK : COLOR_LEFT_WHITE)
-                : (isBlack ? COLOR_RIGHT_BLACK : COLOR_RIGHT_WHITE);
-    }
-
     private class NoteClickHandler extends MouseAdapter {
         @Override
         public void mousePressed(MouseEvent e) {
@@ -202,11 +187,15 @@ public class AnimationPanel extends JPanel {
             for (int i = notes.size() - 1; i >= 0; i--) {
                 FallingNote note = notes.get(i);
                 if (note.getBounds().contains(e.getPoint())) {
+                    byte previous = note.handCode();
                     if (SwingUtilities.isRightMouseButton(e)) {
                         note.setHand(FallingNote.Hands.RIGHT);
                     } else if (SwingUtilities.isLeftMouseButton(e)) {
                         note.setHand(FallingNote.Hands.LEFT);
                     }
+                    if (note.handCode() != previous && onHandChanged != null) {
+                        onHandChanged.handChanged(i, previous, note.handCode());
+                    }
                     repaint();
                     return;
                 }
@@ -233,7 +222,7 @@ public class AnimationPanel extends JPanel {
             if (!isDragging) return;
 
             int dy = e.getY() - pressY;
-            long timeDelta = (long) (dy / PIXELS_PER_MILLISECOND);
+            long timeDelta = (long) (dy / WaterfallRenderer.PIXELS_PER_MILLISECOND);
             long newTime = pressTime - timeDelta;
 
             newTime = Math.max(0, Math.min(newTime, totalDurationMillis));
@@ -271,6 +260,10 @@ public class AnimationPanel extends JPanel {
         }
 
         public void setHand(Hands hand) { this.hand = hand; }
+        public byte handCode() {
+            return hand == Hands.LEFT ? HandAssignmentStore.HAND_LEFT
+                    : hand == Hands.RIGHT ? HandAssignmentStore.HAND_RIGHT : HandAssignmentStore.HAND_NONE;
+        }
         public Rectangle getBounds() { return this.bounds; }
 
         public boolean matchesHandFilter(ListWindow.MidiFileActionListener.HandMode handMode) {
@@ -282,30 +275,26 @@ public class AnimationPanel extends JPanel {
             }
         }
 
-        void draw(Graphics2D g, long currentMillis, int panelHeight) {
+        /**
+         * Returns whether the note is on screen.
+         */
+        boolean draw(Graphics2D g, long currentMillis, int panelHeight) {
             if (!shouldBeDrawnForPractice()) {
                 bounds.setBounds(0, 0, 0, 0);
-                return;
+                return false;
             }
 
             if (!isVisibleOnScreen(currentMillis)) {
                 bounds.setBounds(0, 0, 0, 0);
-                return;
+                return false;
             }
 
             PianoWindow.KeyInfo keyInfo = keyInfoProvider.apply(midiNote);
-            if (keyInfo == null) return;
-
-            int noteHeight = (int) ((noteOffTime - noteOnTime) * PIXELS_PER_MILLISECOND);
-            int topY = calculateTopY(currentMillis, noteHeight, panelHeight);
-            bounds.setBounds(keyInfo.x(), topY, keyInfo.width(), noteHeight);
+            if (keyInfo == null) return false;
 
-            if (topY < panelHeight && (topY + noteHeight) > 0) {
-                drawNoteBody(g, noteHeight);
-                if (isHandAssignmentEnabled && hand != null) {
-                    drawHandText(g);
-                }
-            }
+            WaterfallRenderer.noteBounds(keyInfo, noteOnTime, noteOffTime, currentMillis, panelHeight, bounds);
+            WaterfallRenderer.paintNote(g, bounds, panelHeight, isBlackKey, handCode(), isHandAssignmentEnabled);
+            return true;
         }
 
         private boolean shouldBeDrawnForPractice() {
@@ -319,60 +308,7 @@ public class AnimationPanel extends JPanel {
         }
 
         private boolean isVisibleOnScreen(long currentMillis) {
-            long fallStartTime = noteOnTime - NOTE_FALL_DURATION_MS;
-            return currentMillis >= fallStartTime && currentMillis <= noteOffTime;
-        }
-
-        private int calculateTopY(long currentMillis, int noteHeight, int panelHeight) {
-            long fallStartTime = noteOnTime - NOTE_FALL_DURATION_MS;
-            int bottomY = (currentMillis < noteOnTime)
-                    ? calculateFallingY(currentMillis, fallStartTime, noteHeight, panelHeight)
-                    : calculateSinkingY(currentMillis, noteHeight, panelHeight);
-            return bottomY - noteHeight;
-        }
-
-        private Color determineNoteColor() {
-            if (hand == Hands.LEFT) {
-                return isBlackKey ? COLOR_LEFT_BLACK : COLOR_LEFT_WHITE;
-            } else if (hand == Hands.RIGHT) {
-                return isBlackKey ? COLOR_RIGHT_BLACK : COLOR_RIGHT_WHITE;
-            } else {
-                return isBlackKey ? COLOR_BLACK_NOTE : COLOR_WHITE_NOTE;
-            }
-        }
-
-        private void drawNoteBody(Graphics2D g, int noteHeight) {
-            g.setColor(determineNoteColor());
-            g.fillRoundRect(bounds.x, bounds.y, bounds.width, noteHeight, NOTE_CORNER_RADIUS, NOTE_CORNER_RADIUS);
-        }
-
-        private void drawHandText(Graphics2D g) {
-            String text = (hand == Hands.LEFT) ? "L" : "R";
-            g.setFont(NOTE_TEXT_FONT);
-            g.setColor(NOTE_TEXT_COLOR);
-            FontMetrics fm = g.getFontMetrics();
-            int textWidth = fm.stringWidth(text);
-            int textHeight = fm.getAscent();
-            int textX = bounds.x + (bounds.width - textWidth) / 2;
-            int textY = bounds.y + (bounds.height + textHeight) / 2;
-            g.drawString(text, textX, textY);
-        }
-
-        private int calculateFallingY(long currentMillis, long fallStartTime, int noteHeight, int panelHeight) {
-            double progress = (double) (currentMillis - fallStartTime) / NOTE_FALL_DURATION_MS;
-            int startY = -noteHeight;
-            int endY = panelHeight;
-            return (int) (startY + progress * (endY - startY));
-        }
-
-        private int calculateSinkingY(long currentMillis, int noteHeight, int panelHeight) {
-            long noteDuration = noteOffTime - noteOnTime;
-            if (noteDuration <= 0) return panelHeight;
-
-            double progress = (double) (currentMillis - noteOnTime) / noteDuration;
-            int startY = panelHeight;
-            int endY = panelHeight + noteHeight;
-            return (int) (startY + progress * (endY - startY));
+            return WaterfallRenderer.isVisible(noteOnTime, noteOffTime, currentMillis);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,67 @@
+package com.Tbence132545.Melodigram.view;
+
+/**
+ * Horizontal key geometry for a note range at a given width. PianoWindow lays its key buttons
+ * out with it, offscreen renderers draw with it, so both always agree.
+ */
+public final class KeyboardLayout {
+
+    private static final boolean[] BLACK_PATTERN = {false, true, false, true, false, false, true, false, true, false, true, false};
+
+    private final int lowestNote;
+    private final int highestNote;
+    private final int whiteKeyWidth;
+    private final int blackKeyWidth;
+    private final int[] x = new int[128];
+    private final int[] width = new int[128];
+
+    public KeyboardLayout(int lowestNote, int highestNote, int totalWidth) {
+        this.lowestNote = Math.max(lowestNote, 0);
+        this.highestNote = Math.min(highestNote, 127);
+
+        int whiteKeyCount = 0;
+        for (int i = this.lowestNote; i <= this.highestNote; i++) {
+            if (!isBlackKey(i)) whiteKeyCount++;
+        }
+        whiteKeyWidth = whiteKeyCount == 0 ? 0 : totalWidth / whiteKeyCount;
+        blackKeyWidth = (int) (whiteKeyWidth * 0.6);
+
+        int whiteKeyIndex = 0;
+        for (int i = this.lowestNote; i <= this.highestNote; i++) {
+            if (isBlackKey(i)) {
+                x[i] = (whiteKeyIndex - 1) * whiteKeyWidth + (whiteKeyWidth - blackKeyWidth / 2);
+                width[i] = blackKeyWidth;
+            } else {
+                x[i] = whiteKeyIndex * whiteKeyWidth;
+                width[i] = whiteKeyWidth;
+                whiteKeyIndex++;
+            }
+        }
+    }
+
+    public static boolean isBlackKey(int midiNote) {
+        return BLACK_PATTERN[midiNote % 12];
+    }
+
+    public boolean contains(int midiNote) {
+        return midiNote >= lowestNote && midiNote <= highestNote;
+    }
+
+    public int getLowestNote() { return lowestNote; }
+    public int getHighestNote() { return highestNote; }
+    public int getWhiteKeyWidth() { return whiteKeyWidth; }
+    public int getBlackKeyWidth() { return blackKeyWidth; }
+
+    public int x(int midiNote) {
+        return x[midiNote];
+    }
+
+    public int width(int midiNote) {
+        return width[midiNote];
+    }
+
+    public PianoWindow.KeyInfo keyInfo(int midiNote) {
+        if (!contains(midiNote)) return null;
+        return new PianoWindow.KeyInfo(isBlackKey(midiNote), x[midiNote], width[midiNote]);
+    }
+}
@@ -0,0 +1,48 @@
+package com.Tbence132545.Melodigram.view;
+
+import com.Tbence132545.Melodigram.model.KeyState;
+
+import java.awt.*;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+
+/**
+ * Draws the keyboard straight onto a Graphics2D, for offscreen use where PianoWindow's key
+ * buttons are not available.
+ */
+public final class KeyboardRenderer {
+
+    public static final int WHITE_KEY_HEIGHT = 150;
+    public static final int BLACK_KEY_HEIGHT = 100;
+    static final Color COLOR_WHITE_KEY_HIGHLIGHT = new Color(255, 200, 100);
+    static final Color COLOR_BLACK_KEY_HIGHLIGHT = Color.RED;
+
+    private KeyboardRenderer() {}
+
+    /**
+     * Paints the keys at {@code y}; {@code assignedColor} may return null for the default highlight,
+     * {@code onKeyPainted} is told about each highlighted key as it is drawn. Both may be null.
+     */
+    public static void paint(Graphics2D g, KeyboardLayout layout, int y, KeyState highlighted,
+                             IntFunction<Color> assignedColor, IntConsumer onKeyPainted) {
+        for (int pass = 0; pass < 2; pass++) {
+            boolean blackPass = pass == 1; // black keys are drawn over the white ones
+            for (int note = layout.getLowestNote(); note <= layout.getHighestNote(); note++) {
+                boolean black = KeyboardLayout.isBlackKey(note);
+                if (black != blackPass) continue;
+                int height = black ? BLACK_KEY_HEIGHT : WHITE_KEY_HEIGHT;
+                boolean lit = highlighted != null && highlighted.contains(note);
+                Color fill = black ? Color.BLACK : Color.WHITE;
+                if (lit) {
+                    Color assigned = assignedColor != null ? assignedColor.apply(note) : null;
+                    fill = assigned != null ? assigned : (black ? COLOR_BLACK_KEY_HIGHLIGHT : COLOR_WHITE_KEY_HIGHLIGHT);
+                }
+                g.setColor(fill);
+                g.fillRect(layout.x(note), y, layout.width(note), height);
+                g.setColor(Color.BLACK);
+                g.drawRect(layout.x(note), y, layout.width(note) - 1, height - 1);
+                if (lit && onKeyPainted != null) onKeyPainted.accept(note);
+            }
+        }
+    }
+}
@@ -3,11 +3,22 @@ package com.Tbence132545.Melodigram.view;
 import com.Tbence132545.Melodigram.controller.PlaybackController;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class ListWindow extends JFrame {
 
+    public enum SortOrder { NAME, DIFFICULTY }
+
     public interface MidiFileActionListener {
         enum HandMode { LEFT, RIGHT, BOTH }
         void onWatchAndListenClicked(String midiFilename);
@@ -15,7 +26,27 @@ public class ListWindow extends JFrame {
         void onAssignHandsClicked(String midiFilename);
     }
 
-    private final JPanel contentPanel;
+    private static final int ROW_HEIGHT = 44;
+    private static final Color COLOR_ROW = new Color(40, 40, 40);
+    private static final Color COLOR_ROW_HOVER = new Color(200, 60, 60);
+    private static final Color COLOR_ROW_SELECTED = new Color(120, 30, 30);
+    private static final Color COLOR_THUMBNAIL_PLACEHOLDER = new Color(70, 70, 70);
+    private static final Font ROW_FONT = new Font("Segoe UI", Font.BOLD, 16);
+
+    private final LibraryListModel listModel;
+    private final JList<String> fileList;
+    private final JLabel emptyLabel;
+    private final JTextField searchField;
+    private final JComboBox<String> sortBox;
+    private final ActionPanel actionPanel;
+    private MidiFileActionListener actionListener;
+    private int hoveredRow = -1;
+    private int expandedRow = -1;
+    private Function<String, Image> thumbnailSource = name -> null;
+    private Function<String, String> rowDetailSource = name -> null;
+    private Consumer<List<String>> visibleRowsListener;
+    private int visibleFirst = -1;
+    private int visibleLast = -1;
     private JButton backButton;
     private JButton importButton;
 
@@ -44,18 +75,78 @@ public class ListWindow extends JFrame {
         buttonPanel.add(importButton);
         buttonPanel.add(backButton);
         topPanel.add(buttonPanel, BorderLayout.EAST);
+
+        searchField = new JTextField();
+        searchField.setFont(new Font("Segoe UI", Font.PLAIN, 16));
+        searchField.setBackground(new Color(40, 40, 40));
+        searchField.setForeground(Color.WHITE);
+        searchField.setCaretColor(Color.WHITE);
+        searchField.setToolTipText("Search by name or composer; dur<3m or diff<4 filter by length and difficulty");
+        searchField.setBorder(BorderFactory.createEmptyBorder(8, 12, 8, 12));
+        JPanel searchPanel = new JPanel(new BorderLayout());
+        searchPanel.setBackground(Color.BLACK);
+        searchPanel.setBorder(BorderFactory.createEmptyBorder(8, 30, 8, 30));
+        searchPanel.add(searchField, BorderLayout.CENTER);
+        sortBox = new JComboBox<>(new String[]{"Sort by name", "Sort by difficulty"});
+        sortBox.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+        searchPanel.add(sortBox, BorderLayout.EAST);
+        topPanel.add(searchPanel, BorderLayout.CENTER);
         mainPanel.add(topPanel, BorderLayout.NORTH);
 
-        // Scrollable content
-        contentPanel = new JPanel();
-        contentPanel.setLayout(new BoxLayout(contentPanel, BoxLayout.Y_AXIS));
-        contentPanel.setBackground(Color.BLACK);
+        // Only the rows in view are painted, so the cost doesn't grow with the library
+        listModel = new LibraryListModel();
+        fileList = new JList<>(listModel);
+        fileList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        fileList.setFixedCellHeight(ROW_HEIGHT);
+        fileList.setBackground(Color.BLACK);
+        fileList.setCellRenderer(new FileCellRenderer());
+        fileList.setCursor(new Cursor(Cursor.HAND_CURSOR));
+        MouseAdapter rowMouse = new MouseAdapter() {
+            @Override
+            public void mouseMoved(MouseEvent e) { setHoveredRow(rowAt(e)); }
+            @Override
+            public void mouseExited(MouseEvent e) { setHoveredRow(-1); }
+            // The list's own handler selects the row before release, so whether the click should
+            // collapse has to be decided from the state at press
+            private int pressedExpandedRow = -1;
 
-        JScrollPane scrollPane = new JScrollPane(contentPanel);
+            @Override
+            public void mousePressed(MouseEvent e) {
+                int row = rowAt(e);
+                pressedExpandedRow = row >= 0 && row == expandedRow ? row : -1;
+            }
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                int row = pressedExpandedRow;
+                pressedExpandedRow = -1;
+                if (row >= 0 && rowAt(e) == row && SwingUtilities.isLeftMouseButton(e)) {
+                    fileList.clearSelection(); // a second click collapses, like the old title buttons
+                }
+            }
+        };
+        fileList.addMouseListener(rowMouse);
+        fileList.addMouseMotionListener(rowMouse);
+        fileList.addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting()) showActionsFor(fileList.getSelectedValue());
+        });
+
+        JScrollPane scrollPane = new JScrollPane(fileList);
         scrollPane.setBorder(BorderFactory.createEmptyBorder());
         scrollPane.getViewport().setBackground(Color.BLACK);
+        scrollPane.getViewport().addChangeListener(e -> fireVisibleRows(false));
         mainPanel.add(scrollPane, BorderLayout.CENTER);
 
+        emptyLabel = new JLabel("No MIDI files found or error loading folder.");
+        emptyLabel.setForeground(Color.WHITE);
+        emptyLabel.setVisible(false);
+
+        actionPanel = new ActionPanel();
+        JPanel bottomPanel = new JPanel(new BorderLayout());
+        bottomPanel.setBackground(Color.BLACK);
+        bottomPanel.add(emptyLabel, BorderLayout.NORTH);
+        bottomPanel.add(actionPanel, BorderLayout.CENTER);
+        mainPanel.add(bottomPanel, BorderLayout.SOUTH);
+
         add(mainPanel);
     }
 
@@ -97,100 +188,323 @@ public class ListWindow extends JFrame {
     }
 
     public void setMidiFileList(String[] fileNames, MidiFileActionListener listener) {
-        contentPanel.removeAll();
-        if (fileNames != null && fileNames.length > 0) {
-            for (String name : fileNames) {
-                contentPanel.add(new CollapsiblePanel(name, listener));
-            }
+        this.actionListener = listener;
+        String[] names = fileNames != null ? fileNames : new String[0];
+        fileList.clearSelection();
+        listModel.setEntries(names);
+        emptyLabel.setVisible(names.length == 0);
+        fireVisibleRows(true);
+    }
+
+    /**
+     * Adds a file at the given entry position without resetting the list; entries after it move
+     * up by one. While a search is shown the new file only appears once the search is re-applied.
+     */
+    public void insertEntry(int entry, String name) {
+        listModel.insert(entry, name);
+        emptyLabel.setVisible(false);
+        fireVisibleRows(true);
+    }
+
+    /**
+     * Removes the file at the given entry position; entries after it move down by one.
+     */
+    public void removeEntry(int entry) {
+        listModel.remove(entry);
+        emptyLabel.setVisible(listModel.getSize() == 0 && searchField.getText().isBlank());
+        fireVisibleRows(true);
+    }
+
+    /**
+     * Called with the search text after every edit of the search field.
+     */
+    public void setSearchListener(Consumer<String> listener) {
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override public void insertUpdate(DocumentEvent e) { listener.accept(searchField.getText()); }
+            @Override public void removeUpdate(DocumentEvent e) { listener.accept(searchField.getText()); }
+            @Override public void changedUpdate(DocumentEvent e) { listener.accept(searchField.getText()); }
+        });
+    }
+
+    public void setSortListener(Consumer<SortOrder> listener) {
+        sortBox.addActionListener(e -> listener.accept(getSortOrder()));
+    }
+
+    public SortOrder getSortOrder() {
+        return sortBox.getSelectedIndex() == 1 ? SortOrder.DIFFICULTY : SortOrder.NAME;
+    }
+
+    /**
+     * Short extra text shown after a file's name, such as its length and difficulty; null for none.
+     */
+    public void setRowDetailSource(Function<String, String> source) {
+        this.rowDetailSource = source;
+        fileList.repaint();
+    }
+
+    public String getSearchText() {
+        return searchField.getText();
+    }
+
+    /**
+     * Shows only the given entries of the file list, in that order, or all of them for null.
+     * The selected file stays selected if it is still shown.
+     */
+    public void showEntries(int[] entries) {
+        String selected = fileList.getSelectedValue();
+        listModel.setView(entries);
+        int row = selected == null ? -1 : listModel.rowOf(selected);
+        if (row >= 0) {
+            fileList.setSelectedIndex(row);
+            fileList.ensureIndexIsVisible(row);
         } else {
-            JLabel emptyLabel = new JLabel("No MIDI files found or error loading folder.");
-            emptyLabel.setForeground(Color.WHITE);
-            contentPanel.add(emptyLabel);
+            fileList.clearSelection();
         }
-        contentPanel.add(Box.createVerticalGlue());
-        contentPanel.revalidate();
-        contentPanel.repaint();
+        fireVisibleRows(true);
     }
 
-    private static class CollapsiblePanel extends JPanel {
-        private final JButton titleButton;
-        private final JPanel cardsPanel;
-        private final CardLayout cardLayout;
+    /**
+     * Where the renderer gets row thumbnails from; it must not block, and returns null for
+     * thumbnails that aren't ready.
+     */
+    public void setThumbnailSource(Function<String, Image> source) {
+        this.thumbnailSource = source;
+    }
+
+    /**
+     * Told the names in view whenever the visible rows change, to produce their thumbnails.
+     */
+    public void setVisibleRowsListener(Consumer<List<String>> listener) {
+        this.visibleRowsListener = listener;
+        fireVisibleRows(true);
+    }
 
+    public void refreshThumbnails() {
+        fileList.repaint();
+    }
+
+    private void fireVisibleRows(boolean force) {
+        int first = fileList.getFirstVisibleIndex();
+        int last = fileList.getLastVisibleIndex();
+        if (visibleRowsListener == null || (!force && first == visibleFirst && last == visibleLast)) return;
+        visibleFirst = first;
+        visibleLast = last;
+        List<String> names = new ArrayList<>();
+        for (int row = Math.max(0, first); row >= 0 && row <= last; row++) {
+            names.add(listModel.getElementAt(row));
+        }
+        visibleRowsListener.accept(names);
+    }
+
+    private int rowAt(MouseEvent e) {
+        int row = fileList.locationToIndex(e.getPoint());
+        return row >= 0 && fileList.getCellBounds(row, row).contains(e.getPoint()) ? row : -1;
+    }
+
+    private void setHoveredRow(int row) {
+        if (row == hoveredRow) return;
+        int previous = hoveredRow;
+        hoveredRow = row;
+        repaintRow(previous);
+        repaintRow(row);
+    }
+
+    private void repaintRow(int row) {
+        if (row < 0 || row >= listModel.getSize()) return;
+        Rectangle bounds = fileList.getCellBounds(row, row);
+        if (bounds != null) fileList.repaint(bounds);
+    }
+
+    private void showActionsFor(String title) {
+        expandedRow = title == null ? -1 : fileList.getSelectedIndex();
+        actionPanel.showFor(title);
+    }
+
+    /**
+     * The library entries as a plain array, optionally seen through an array of entry indices
+     * (search results); the list asks for rows by index as it paints them.
+     */
+    private static class LibraryListModel extends AbstractListModel<String> {
+        private String[] entries = new String[0];
+        private int[] view;
+
+        void setEntries(String[] entries) {
+            int previousSize = getSize();
+            this.entries = entries;
+            this.view = null;
+            fireSizeChange(previousSize);
+        }
+
+        void setView(int[] view) {
+            int previousSize = getSize();
+            this.view = view;
+            fireSizeChange(previousSize);
+        }
+
+        void insert(int entry, String name) {
+            String[] grown = new String[entries.length + 1];
+            System.arraycopy(entries, 0, grown, 0, entry);
+            grown[entry] = name;
+            System.arraycopy(entries, entry, grown, entry + 1, entries.length - entry);
+            entries = grown;
+            if (view == null) {
+                fireIntervalAdded(this, entry, entry);
+                return;
+            }
+            for (int row = 0; row < view.length; row++) {
+                if (view[row] >= entry) view[row]++;
+            }
+        }
+
+        void remove(int entry) {
+            String[] shrunk = new String[entries.length - 1];
+            System.arraycopy(entries, 0, shrunk, 0, entry);
+            System.arraycopy(entries, entry + 1, shrunk, entry, shrunk.length - entry);
+            entries = shrunk;
+            if (view == null) {
+                fireIntervalRemoved(this, entry, entry);
+                return;
+            }
+            int removedRow = -1;
+            int[] remaining = new int[view.length];
+            int count = 0;
+            for (int row = 0; row < view.length; row++) {
+                if (view[row] == entry) removedRow = row;
+                else remaining[count++] = view[row] > entry ? view[row] - 1 : view[row];
+            }
+            view = Arrays.copyOf(remaining, count);
+            if (removedRow >= 0) fireIntervalRemoved(this, removedRow, removedRow);
+        }
+
+        int rowOf(String entry) {
+            for (int row = 0; row < getSize(); row++) {
+                if (getElementAt(row).equals(entry)) return row;
+            }
+            return -1;
+        }
+
+        private void fireSizeChange(int previousSize) {
+            if (previousSize > 0) fireIntervalRemoved(this, 0, previousSize - 1);
+            if (getSize() > 0) fireIntervalAdded(this, 0, getSize() - 1);
+        }
+
+        @Override
+        public int getSize() {
+            return view != null ? view.length : entries.length;
+        }
+
+        @Override
+        public String getElementAt(int index) {
+            return entries[view != null ? view[index] : index];
+        }
+    }
+
+    private class FileCellRenderer extends DefaultListCellRenderer {
+        private final ThumbnailIcon thumbnail = new ThumbnailIcon();
+
+        FileCellRenderer() {
+            setIconTextGap(15);
+            setFont(ROW_FONT);
+            setForeground(Color.WHITE);
+            setOpaque(true);
+        }
+
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+            String detail = rowDetailSource.apply(String.valueOf(value));
+            setText(detail == null ? String.valueOf(value) : value + "   ·   " + detail);
+            thumbnail.image = thumbnailSource.apply(String.valueOf(value));
+            setIcon(thumbnail);
+            setBorder(BorderFactory.createCompoundBorder(
+                    BorderFactory.createMatteBorder(0, 0, 2, 0, Color.BLACK),
+                    BorderFactory.createEmptyBorder(10, 15, 10, 15)));
+            setBackground(index == hoveredRow ? COLOR_ROW_HOVER : isSelected ? COLOR_ROW_SELECTED : COLOR_ROW);
+            setForeground(Color.WHITE);
+            return this;
+        }
+    }
+
+    /**
+     * A row's thumbnail, or an empty frame of the same size while it's being generated.
+     */
+    private static class ThumbnailIcon implements Icon {
+        private Image image;
+
+        @Override
+        public void paintIcon(Component c, Graphics g, int x, int y) {
+            if (image != null) {
+                g.drawImage(image, x, y, null);
+            } else {
+                g.setColor(COLOR_THUMBNAIL_PLACEHOLDER);
+                g.drawRect(x, y, getIconWidth() - 1, getIconHeight() - 1);
+            }
+        }
+
+        @Override
+        public int getIconWidth() {
+            return PianoRollThumbnail.WIDTH;
+        }
+
+        @Override
+        public int getIconHeight() {
+            return PianoRollThumbnail.HEIGHT;
+        }
+    }
+
+    /**
+     * One set of action buttons, shown under the list for whichever file is selected.
+     */
+    private class ActionPanel extends JPanel {
         private static final String MAIN_ACTIONS = "MAIN_ACTIONS";
         private static final String PRACTICE_OPTIONS = "PRACTICE_OPTIONS";
 
-        public CollapsiblePanel(String title, MidiFileActionListener listener) {
+        private final CardLayout cardLayout = new CardLayout();
+        private final JLabel titleLabel = new JLabel();
+        private final JPanel cardsPanel = new JPanel(cardLayout);
+        private String title;
+
+        ActionPanel() {
             super(new BorderLayout());
-            setAlignmentX(Component.LEFT_ALIGNMENT);
             setBackground(Color.BLACK);
-
-            // Title button
-            titleButton = new JButton(title);
-            titleButton.setHorizontalAlignment(SwingConstants.LEFT);
-            titleButton.setFont(new Font("Segoe UI", Font.BOLD, 16));
-            titleButton.setFocusPainted(false);
-            titleButton.setContentAreaFilled(false);
-            titleButton.setOpaque(true);
-            titleButton.setBackground(new Color(40, 40, 40));
-            titleButton.setForeground(Color.WHITE);
-            titleButton.setBorder(BorderFactory.createEmptyBorder(10, 15, 10, 15));
-            titleButton.setCursor(new Cursor(Cursor.HAND_CURSOR));
-            titleButton.addMouseListener(new java.awt.event.MouseAdapter() {
-                @Override
-                public void mouseEntered(java.awt.event.MouseEvent evt) { titleButton.setBackground(new Color(200, 60, 60)); }
-                @Override
-                public void mouseExited(java.awt.event.MouseEvent evt) { titleButton.setBackground(new Color(40, 40, 40)); }
-            });
-
-            cardLayout = new CardLayout();
-            cardsPanel = new JPanel(cardLayout);
+            setVisible(false);
+            titleLabel.setFont(ROW_FONT);
+            titleLabel.setForeground(Color.WHITE);
+            titleLabel.setBorder(BorderFactory.createEmptyBorder(10, 15, 0, 15));
             cardsPanel.setOpaque(false);
-            cardsPanel.setVisible(false); // start collapsed
 
             JPanel mainActionsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 10));
             mainActionsPanel.setOpaque(false);
-
-            JButton listenButton = createCardButton("Listen and watch", e -> listener.onWatchAndListenClicked("midi/" + title));
-            JButton practiceButton = createCardButton("Practice", null); // listener added below
-            JButton assignHandsButton = createCardButton("Assign Hands", e -> listener.onAssignHandsClicked("midi/" + title));
-
-            mainActionsPanel.add(listenButton);
-            mainActionsPanel.add(practiceButton);
-            mainActionsPanel.add(assignHandsButton);
+            mainActionsPanel.add(createCardButton("Listen and watch", e -> actionListener.onWatchAndListenClicked("midi/" + title)));
+            mainActionsPanel.add(createCardButton("Practice", e -> onPractice()));
+            mainActionsPanel.add(createCardButton("Assign Hands", e -> actionListener.onAssignHandsClicked("midi/" + title)));
 
             JPanel practiceOptionsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 10));
             practiceOptionsPanel.setOpaque(false);
+            practiceOptionsPanel.add(createCardButton("Just Left Hand", e -> actionListener.onPracticeClicked(title, MidiFileActionListener.HandMode.LEFT)));
+            practiceOptionsPanel.add(createCardButton("Just Right Hand", e -> actionListener.onPracticeClicked(title, MidiFileActionListener.HandMode.RIGHT)));
+            practiceOptionsPanel.add(createCardButton("Both Hands", e -> actionListener.onPracticeClicked(title, MidiFileActionListener.HandMode.BOTH)));
+            practiceOptionsPanel.add(createCardButton("<- Back", e -> cardLayout.show(cardsPanel, MAIN_ACTIONS)));
 
-            practiceButton.addActionListener(e -> {
-                boolean hasAssignments = PlaybackController.assignmentFileExistsFor(title);
-                if (hasAssignments) {
-                    JButton left = createCardButton("Just Left Hand", ev -> listener.onPracticeClicked(title, MidiFileActionListener.HandMode.LEFT));
-                    JButton right = createCardButton("Just Right Hand", ev -> listener.onPracticeClicked(title, MidiFileActionListener.HandMode.RIGHT));
-                    JButton both = createCardButton("Both Hands", ev -> listener.onPracticeClicked(title, MidiFileActionListener.HandMode.BOTH));
-                    JButton back = createCardButton("<- Back", ev -> {
-                        cardLayout.show(cardsPanel, MAIN_ACTIONS);
-                        updatePanelHeight();
-                    });
-                    practiceOptionsPanel.removeAll();
-                    practiceOptionsPanel.add(left);
-                    practiceOptionsPanel.add(right);
-                    practiceOptionsPanel.add(both);
-                    practiceOptionsPanel.add(back);
-
-                    cardsPanel.add(practiceOptionsPanel, PRACTICE_OPTIONS);
-                    cardLayout.show(cardsPanel, PRACTICE_OPTIONS);
-                } else {
-                    listener.onPracticeClicked(title, MidiFileActionListener.HandMode.BOTH);
-                }
-                updatePanelHeight();
-            });
             cardsPanel.add(mainActionsPanel, MAIN_ACTIONS);
-            titleButton.addActionListener(e -> toggleVisibility());
-
-            add(titleButton, BorderLayout.NORTH);
+            cardsPanel.add(practiceOptionsPanel, PRACTICE_OPTIONS);
+            add(titleLabel, BorderLayout.NORTH);
             add(cardsPanel, BorderLayout.CENTER);
-            updatePanelHeight();
+        }
+
+        void showFor(String title) {
+            this.title = title;
+            setVisible(title != null);
+            if (title == null) return;
+            titleLabel.setText(title);
+            cardLayout.show(cardsPanel, MAIN_ACTIONS);
+        }
+
+        private void onPractice() {
+            if (PlaybackController.assignmentFileExistsFor(title)) {
+                cardLayout.show(cardsPanel, PRACTICE_OPTIONS);
+            } else {
+                actionListener.onPracticeClicked(title, MidiFileActionListener.HandMode.BOTH);
+            }
         }
 
         private JButton createCardButton(String text, ActionListener listener) {
@@ -210,21 +524,5 @@ public class ListWindow extends JFrame {
             });
             return button;
         }
-
-        private void toggleVisibility() {
-            cardsPanel.setVisible(!cardsPanel.isVisible());
-            updatePanelHeight();
-            revalidate();
-            repaint();
-        }
-
-        private void updatePanelHeight() {
-            int contentHeight = 0;
-            for (Component comp : cardsPanel.getComponents()) {
-                if (comp.isVisible()) contentHeight = comp.getPreferredSize().height;
-            }
-            int height = titleButton.getPreferredSize().height + contentHeight;
-            setMaximumSize(new Dimension(Integer.MAX_VALUE, height));
-        }
     }
 }
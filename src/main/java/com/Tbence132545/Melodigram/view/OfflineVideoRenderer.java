@@ -0,0 +1,220 @@
+package com.Tbence132545.Melodigram.view;
+
+import com.Tbence132545.Melodigram.model.KeyState;
+import com.Tbence132545.Melodigram.model.NoteTable;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders a piece as video frames without a window: the waterfall drawn by
+ * {@link WaterfallRenderer} above a keyboard drawn by {@link KeyboardRenderer}, at a fixed frame
+ * rate. Frames only depend on their timestamp, so workers render time slices independently, either
+ * to numbered PNGs or to a raw RGB24 stream in frame order for an external encoder such as
+ * {@code ffmpeg -f rawvideo -pix_fmt rgb24 -s WxH -r FPS -i -}. Runs headless.
+ */
+public final class OfflineVideoRenderer {
+
+    public static final int DEFAULT_WIDTH = 1280;
+    public static final int DEFAULT_HEIGHT = 720;
+    public static final int DEFAULT_FPS = 30;
+
+    private static final long TAIL_MILLIS = 1000;
+    private static final int RAW_CHUNK_FRAMES = 8; // bounds how many rendered frames wait to be written
+
+    private final NoteTable notes;
+    private final byte[] hands;
+    private final int width;
+    private final int height;
+    private final int fps;
+    private final KeyboardLayout layout;
+    private final long maxNoteMillis;
+
+    /**
+     * @param hands hand code of every note, used for the note and key colors; may be null
+     */
+    public OfflineVideoRenderer(NoteTable notes, byte[] hands, int width, int height, int fps) {
+        if (height <= KeyboardRenderer.WHITE_KEY_HEIGHT) {
+            throw new IllegalArgumentException("Frames must be taller than the keyboard (" + KeyboardRenderer.WHITE_KEY_HEIGHT + "px)");
+        }
+        this.notes = notes;
+        this.hands = hands;
+        this.width = width;
+        this.height = height;
+        this.fps = fps;
+        int lowest = 127;
+        int highest = 0;
+        long longest = 0;
+        for (int i = 0; i < notes.size(); i++) {
+            lowest = Math.min(lowest, notes.pitch(i));
+            highest = Math.max(highest, notes.pitch(i));
+            longest = Math.max(longest, notes.offMillis(i) - notes.onMillis(i));
+        }
+        if (lowest > highest) {
+            lowest = 21;
+            highest = 108;
+        }
+        // Whole octaves around the piece, like the piano window
+        this.layout = new KeyboardLayout(lowest - lowest % 12, highest + 11 - highest % 12, width);
+        this.maxNoteMillis = longest;
+    }
+
+    public int getFrameCount() {
+        long millis = notes.getEndMillis() + TAIL_MILLIS;
+        return (int) Math.max(1, (millis * fps + 999) / 1000);
+    }
+
+    public long frameTimeMillis(int frame) {
+        return frame * 1000L / fps;
+    }
+
+    /**
+     * Draws the frame into {@code image}, which must be {@code width x height}.
+     */
+    public void renderFrame(int frame, BufferedImage image) {
+        long now = frameTimeMillis(frame);
+        int waterfallHeight = height - KeyboardRenderer.WHITE_KEY_HEIGHT;
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setColor(Color.BLACK);
+            g.fillRect(0, 0, width, height);
+
+            // Notes that started a whole longest-note ago are the earliest that can still be visible
+            int first = notes.firstOnsetAfter(now - maxNoteMillis - 1);
+            Graphics2D waterfall = (Graphics2D) g.create(0, 0, width, waterfallHeight);
+            try {
+                WaterfallRenderer.paint(waterfall, notes, hands, layout, now, waterfallHeight, first);
+            } finally {
+                waterfall.dispose();
+            }
+
+            KeyState sounding = new KeyState();
+            byte[] keyHand = new byte[128];
+            for (int i = first; i < notes.size() && notes.onMillis(i) <= now; i++) {
+                if (now < notes.offMillis(i)) {
+                    sounding.add(notes.pitch(i));
+                    if (hands != null) keyHand[notes.pitch(i)] = hands[i];
+                }
+            }
+            KeyboardRenderer.paint(g, layout, waterfallHeight, sounding,
+                    note -> WaterfallRenderer.keyHighlightColor(KeyboardLayout.isBlackKey(note), keyHand[note]), null);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Writes {@code frame_000000.png} onwards into the directory; each thread renders one
+     * contiguous time slice. Returns the number of frames written.
+     */
+    public int writePngs(Path directory, int threads) throws IOException {
+        Files.createDirectories(directory);
+        int frames = getFrameCount();
+        int slices = Math.max(1, Math.min(threads, frames));
+        ExecutorService pool = newPool(slices);
+        try {
+            List<Future<Void>> results = new ArrayList<>();
+            for (int s = 0; s < slices; s++) {
+                int from = (int) ((long) frames * s / slices);
+                int to = (int) ((long) frames * (s + 1) / slices);
+                results.add(pool.submit(() -> {
+                    BufferedImage image = newFrame();
+                    for (int frame = from; frame < to; frame++) {
+                        renderFrame(frame, image);
+                        ImageIO.write(image, "png", directory.resolve(String.format("frame_%06d.png", frame)).toFile());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> result : results) await(result);
+            return frames;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Streams every frame as packed RGB24 rows, top to bottom and in frame order. Slices of a few
+     * frames are rendered in parallel and written as soon as all slices before them are out.
+     * Returns the number of frames written.
+     */
+    public int writeRawRgb(OutputStream out, int threads) throws IOException {
+        int frames = getFrameCount();
+        int chunks = (frames + RAW_CHUNK_FRAMES - 1) / RAW_CHUNK_FRAMES;
+        int workers = Math.max(1, threads);
+        ExecutorService pool = newPool(workers);
+        try {
+            ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+            int nextChunk = 0;
+            for (int written = 0; written < chunks; written++) {
+                while (nextChunk < chunks && pending.size() <= workers) {
+                    int from = nextChunk * RAW_CHUNK_FRAMES;
+                    int to = Math.min(frames, from + RAW_CHUNK_FRAMES);
+                    pending.add(pool.submit(() -> renderRaw(from, to)));
+                    nextChunk++;
+                }
+                out.write(await(pending.poll()));
+            }
+            out.flush();
+            return frames;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private byte[] renderRaw(int from, int to) {
+        BufferedImage image = newFrame();
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        byte[] rgb = new byte[(to - from) * pixels.length * 3];
+        int offset = 0;
+        for (int frame = from; frame < to; frame++) {
+            renderFrame(frame, image);
+            for (int pixel : pixels) {
+                rgb[offset++] = (byte) (pixel >> 16);
+                rgb[offset++] = (byte) (pixel >> 8);
+                rgb[offset++] = (byte) pixel;
+            }
+        }
+        return rgb;
+    }
+
+    private BufferedImage newFrame() {
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    }
+
+    private static ExecutorService newPool(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "video-frames-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while rendering frames", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            throw new IOException("Rendering frames failed: " + e.getCause(), e.getCause());
+        }
+    }
+}
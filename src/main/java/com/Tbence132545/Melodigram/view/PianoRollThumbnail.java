@@ -0,0 +1,50 @@
+package com.Tbence132545.Melodigram.view;
+
+import com.Tbence132545.Melodigram.model.NoteTable;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Draws a whole piece as a tiny piano roll: time left to right, pitch bottom to top, scaled to
+ * the piece's own length and note range.
+ */
+public final class PianoRollThumbnail {
+
+    public static final int WIDTH = 96;
+    public static final int HEIGHT = 32;
+
+    private static final Color COLOR_BACKGROUND = new Color(25, 25, 25);
+    private static final Color COLOR_NOTE = new Color(220, 70, 70);
+
+    private PianoRollThumbnail() {}
+
+    public static BufferedImage render(NoteTable notes, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setColor(COLOR_BACKGROUND);
+            g.fillRect(0, 0, width, height);
+            if (notes.size() == 0) return image;
+            int lowest = 127;
+            int highest = 0;
+            for (int i = 0; i < notes.size(); i++) {
+                lowest = Math.min(lowest, notes.pitch(i));
+                highest = Math.max(highest, notes.pitch(i));
+            }
+            int pitches = highest - lowest + 1;
+            double end = Math.max(1, notes.getEndMillis());
+            int rowHeight = Math.max(1, height / pitches);
+            g.setColor(COLOR_NOTE);
+            for (int i = 0; i < notes.size(); i++) {
+                int x = (int) (notes.onMillis(i) / end * width);
+                int w = Math.max(1, (int) (notes.offMillis(i) / end * width) - x);
+                int y = (highest - notes.pitch(i)) * height / pitches;
+                g.fillRect(x, y, w, rowHeight);
+            }
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+}
@@ -0,0 +1,59 @@
+package com.Tbence132545.Melodigram.view;
+
+import com.Tbence132545.Melodigram.model.LatencyProbe;
+
+import javax.swing.*;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowListener;
+
+/**
+ * What the playback controller needs from the piano window, so it can also run against a
+ * headless stand-in, e.g. to simulate a practice session.
+ */
+public interface PianoView {
+
+    AnimationPanel getAnimationPanel();
+
+    void addSeekBar(JComponent seekBarComponent);
+
+    void addWindowListener(WindowListener listener);
+
+    void highlightNote(int midiNote);
+
+    void releaseNote(int midiNote);
+
+    void releaseAllKeys();
+
+    boolean isBlackKey(int midiNote);
+
+    void repaint();
+
+    void disableButtons(boolean shouldDisable);
+
+    void setEditingMode(boolean isEditing);
+
+    void setLatencyProbe(LatencyProbe latencyProbe);
+
+    void setPlayButtonText(String text);
+
+    void setSaveStatus(String text);
+
+    void setPlayButtonListener(ActionListener listener);
+
+    void setBackwardButtonListener(ActionListener listener);
+
+    void setForwardButtonListener(ActionListener listener);
+
+    void setSaveButtonListener(ActionListener listener);
+
+    void setAutoAssignButtonListener(ActionListener listener);
+
+    void setUndoRedoActions(Runnable undo, Runnable redo);
+
+    void setSaveRecordingAction(Runnable save);
+
+    /**
+     * @param messageType one of the {@link JOptionPane} message types
+     */
+    void showMessage(String message, String title, int messageType);
+}
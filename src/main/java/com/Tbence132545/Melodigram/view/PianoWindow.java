@@ -1,23 +1,29 @@
 // java
 package com.Tbence132545.Melodigram.view;
 
+import com.Tbence132545.Melodigram.model.KeyState;
+import com.Tbence132545.Melodigram.model.LatencyProbe;
+
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.util.HashMap;
 import java.util.Map;
 
-public class PianoWindow extends JFrame {
+public class PianoWindow extends JFrame implements PianoView {
 
     private static final Font CONTROL_BUTTON_FONT = new Font("SansSerif", Font.BOLD, 18);
     private static final Font PIANO_LABEL_FONT = new Font("SansSerif", Font.BOLD, 14);
     private static final Color COLOR_CONTROL_PANEL_BG = new Color(45, 45, 45);
     private static final Color COLOR_CONTROL_BUTTON_BG = new Color(60, 60, 60);
     private static final Color COLOR_CONTROL_BUTTON_HOVER = new Color(80, 80, 80);
-    private static final Color COLOR_WHITE_KEY_HIGHLIGHT = new Color(255, 200, 100);
-    private static final Color COLOR_BLACK_KEY_HIGHLIGHT = Color.RED;
+    private static final Color COLOR_WHITE_KEY_HIGHLIGHT = KeyboardRenderer.COLOR_WHITE_KEY_HIGHLIGHT;
+    private static final Color COLOR_BLACK_KEY_HIGHLIGHT = KeyboardRenderer.COLOR_BLACK_KEY_HIGHLIGHT;
 
     private enum KeyType {
         WHITE, BLACK;
@@ -34,15 +40,18 @@ public class PianoWindow extends JFrame {
     private final JButton backwardButton;
     private final JButton forwardButton;
     private final JButton saveButton;
+    private final JButton autoAssignButton;
+    private static final int SAVE_STATUS_MILLIS = 1500;
     private SeekBar seekBar;
 
     private final Map<Integer, JButton> noteToKeyButton = new HashMap<>();
+    private final KeyState highlightedKeys = new KeyState();
     private final int lowestNote;
     private final int highestNote;
-    private int whiteKeyWidth = 50;
-    private int blackKeyWidth = 30;
-    private static final int WHITE_KEY_HEIGHT = 150;
-    private static final int BLACK_KEY_HEIGHT = 100;
+    private KeyboardLayout keyboardLayout;
+    private LatencyProbe latencyProbe;
+    private static final int WHITE_KEY_HEIGHT = KeyboardRenderer.WHITE_KEY_HEIGHT;
+    private static final int BLACK_KEY_HEIGHT = KeyboardRenderer.BLACK_KEY_HEIGHT;
 
     public PianoWindow(int lowestNote, int highestNote) {
         this.lowestNote = Math.max(lowestNote, 0);
@@ -54,7 +63,8 @@ public class PianoWindow extends JFrame {
                 this.backButton = new JButton("←"),
                 this.backwardButton = new JButton("⏪"),
                 this.forwardButton = new JButton("⏩"),
-                this.saveButton = new JButton("Save"));
+                this.saveButton = new JButton("Save"),
+                this.autoAssignButton = new JButton("Auto"));
 
         this.pianoPanel = createPianoPanel();
         this.animationPanel = new AnimationPanel(this::getKeyInfo, this.lowestNote, this.highestNote);
@@ -75,7 +85,7 @@ public class PianoWindow extends JFrame {
         setExtendedState(JFrame.MAXIMIZED_BOTH);
         getContentPane().setBackground(new Color(230, 230, 230));
     }
-    private JPanel createControlPanel(JButton play, JButton back, JButton backward, JButton forward, JButton save) {
+    private JPanel createControlPanel(JButton play, JButton back, JButton backward, JButton forward, JButton save, JButton autoAssign) {
         JPanel panel = new JPanel(new GridBagLayout());
         panel.setBackground(COLOR_CONTROL_PANEL_BG);
 
@@ -89,6 +99,9 @@ public class PianoWindow extends JFrame {
 
         styleControlButton(save, new Dimension(80, 50), hoverEffect);
         save.setVisible(false);
+        styleControlButton(autoAssign, new Dimension(80, 50), hoverEffect);
+        autoAssign.setToolTipText("Assign hands to all unassigned notes");
+        autoAssign.setVisible(false);
 
         GridBagConstraints gbc = new GridBagConstraints();
 
@@ -120,6 +133,8 @@ public class PianoWindow extends JFrame {
         gbc.anchor = GridBagConstraints.EAST;
         gbc.fill = GridBagConstraints.VERTICAL;
         gbc.insets = new Insets(5, 5, 5, 5);
+        panel.add(autoAssign, gbc);
+        gbc.gridx = 3;
         panel.add(save, gbc);
 
         return panel;
@@ -154,26 +169,24 @@ public class PianoWindow extends JFrame {
     private void updatePianoKeys() {
         pianoPanel.removeAll();
         noteToKeyButton.clear();
+        highlightedKeys.clear();
 
         int whiteKeyCount = countWhiteKeys();
         if (whiteKeyCount == 0) return;
 
         int panelWidth = pianoPanel.getWidth() > 0 ? pianoPanel.getWidth() : getWidth();
-        whiteKeyWidth = panelWidth / whiteKeyCount;
-        blackKeyWidth = (int) (whiteKeyWidth * 0.6);
+        keyboardLayout = new KeyboardLayout(lowestNote, highestNote, panelWidth);
         //I'm drawing the middle C notes' notation based on the range
         int middleCNote = findMiddleCNote();
 
-        int whiteKeyIndex = 0;
         for (int i = lowestNote; i <= highestNote; i++) {
             KeyType keyType = KeyType.fromMidiNote(i);
-            JButton keyButton = createKeyButton(keyType);
+            JButton keyButton = createKeyButton(keyType, i);
 
             if (keyType == KeyType.WHITE) {
-                addWhiteKey(keyButton, whiteKeyIndex, i == middleCNote,i);
-                whiteKeyIndex++;
+                addWhiteKey(keyButton, i == middleCNote, i);
             } else {
-                addBlackKey(keyButton, whiteKeyIndex);
+                addBlackKey(keyButton, i);
             }
             noteToKeyButton.put(i, keyButton);
         }
@@ -208,8 +221,8 @@ public class PianoWindow extends JFrame {
         return closestC;
     }
 
-    private void addWhiteKey(JButton keyButton, int whiteKeyIndex, boolean isMiddleC, int midiNote) {
-        keyButton.setBounds(whiteKeyIndex * whiteKeyWidth, 0, whiteKeyWidth, WHITE_KEY_HEIGHT);
+    private void addWhiteKey(JButton keyButton, boolean isMiddleC, int midiNote) {
+        keyButton.setBounds(keyboardLayout.x(midiNote), 0, keyboardLayout.width(midiNote), WHITE_KEY_HEIGHT);
 
         if (isMiddleC) {
             int octave = (midiNote / 12) - 1;
@@ -225,23 +238,30 @@ public class PianoWindow extends JFrame {
         pianoPanel.add(keyButton, JLayeredPane.DEFAULT_LAYER);
     }
 
-    private void addBlackKey(JButton keyButton, int precedingWhiteKeyIndex) {
-        int x = (precedingWhiteKeyIndex - 1) * whiteKeyWidth + (whiteKeyWidth - blackKeyWidth / 2);
-        keyButton.setBounds(x, 0, blackKeyWidth, BLACK_KEY_HEIGHT);
+    private void addBlackKey(JButton keyButton, int midiNote) {
+        keyButton.setBounds(keyboardLayout.x(midiNote), 0, keyboardLayout.width(midiNote), BLACK_KEY_HEIGHT);
         pianoPanel.add(keyButton, JLayeredPane.PALETTE_LAYER);
     }
 
 
     public void highlightNote(int midiNote) {
+        if (midiNote < 0 || midiNote > 127) return;
+        highlightedKeys.add(midiNote);
         setKeyColor(midiNote, true);
     }
 
     public void releaseNote(int midiNote) {
-        setKeyColor(midiNote, false);
+        if (midiNote < 0 || midiNote > 127) return;
+        if (highlightedKeys.remove(midiNote)) {
+            setKeyColor(midiNote, false);
+        }
     }
 
     public void releaseAllKeys() {
-        noteToKeyButton.keySet().forEach(this::releaseNote);
+        for (int note = highlightedKeys.nextKey(0); note >= 0; note = highlightedKeys.nextKey(note + 1)) {
+            setKeyColor(note, false);
+        }
+        highlightedKeys.clear();
         pianoPanel.repaint();
     }
 
@@ -259,6 +279,7 @@ public class PianoWindow extends JFrame {
     }
     public void setEditingMode(boolean isEditing){
         saveButton.setVisible(isEditing);
+        autoAssignButton.setVisible(isEditing);
     }
     public void disableButtons(boolean shouldDisable) {
         playButton.setEnabled(!shouldDisable);
@@ -270,10 +291,32 @@ public class PianoWindow extends JFrame {
         }
     }
 
+    /**
+     * Reports when highlighted keys actually reach the screen, for input latency measurement.
+     */
+    public void setLatencyProbe(LatencyProbe latencyProbe) {
+        this.latencyProbe = latencyProbe;
+    }
+
     public void setPlayButtonText(String text) {
         playButton.setText(text);
     }
 
+    /**
+     * Shows a short save status on the save button, e.g. "Saved", which reverts after a moment.
+     */
+    public void setSaveStatus(String text) {
+        saveButton.setText(text);
+        Timer revert = new Timer(SAVE_STATUS_MILLIS, e -> saveButton.setText("Save"));
+        revert.setRepeats(false);
+        revert.start();
+    }
+
+    @Override
+    public void showMessage(String message, String title, int messageType) {
+        JOptionPane.showMessageDialog(this, message, title, messageType);
+    }
+
     public AnimationPanel getAnimationPanel() {
         return animationPanel;
     }
@@ -296,6 +339,40 @@ public class PianoWindow extends JFrame {
     public void setBackwardButtonListener(ActionListener listener) { backwardButton.addActionListener(listener); }
     public void setForwardButtonListener(ActionListener listener) { forwardButton.addActionListener(listener); }
     public void setSaveButtonListener(ActionListener listener) { saveButton.addActionListener(listener); }
+    public void setAutoAssignButtonListener(ActionListener listener) { autoAssignButton.addActionListener(listener); }
+
+    /**
+     * Binds undo to Ctrl+Z and redo to Ctrl+Y / Ctrl+Shift+Z (Cmd on macOS) anywhere in the window.
+     */
+    public void setUndoRedoActions(Runnable undo, Runnable redo) {
+        int menuKey = Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
+        InputMap inputMap = getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW);
+        ActionMap actionMap = getRootPane().getActionMap();
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, menuKey), "undo");
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_Y, menuKey), "redo");
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, menuKey | InputEvent.SHIFT_DOWN_MASK), "redo");
+        actionMap.put("undo", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) { undo.run(); }
+        });
+        actionMap.put("redo", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) { redo.run(); }
+        });
+    }
+
+    /**
+     * Binds saving the flight recording to Ctrl+Shift+R (Cmd on macOS) anywhere in the window.
+     */
+    public void setSaveRecordingAction(Runnable save) {
+        int menuKey = Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
+        getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW)
+                .put(KeyStroke.getKeyStroke(KeyEvent.VK_R, menuKey | InputEvent.SHIFT_DOWN_MASK), "saveRecording");
+        getRootPane().getActionMap().put("saveRecording", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) { save.run(); }
+        });
+    }
 
 
     private void styleControlButton(JButton button, Dimension size, MouseAdapter hoverEffect) {
@@ -324,8 +401,17 @@ public class PianoWindow extends JFrame {
         };
     }
 
-    private JButton createKeyButton(KeyType keyType) {
-        JButton keyButton = new JButton();
+    private JButton createKeyButton(KeyType keyType, int midiNote) {
+        JButton keyButton = new JButton() {
+            @Override
+            protected void paintComponent(Graphics g) {
+                super.paintComponent(g);
+                LatencyProbe probe = latencyProbe;
+                if (probe != null && highlightedKeys.contains(midiNote)) {
+                    probe.keyPainted(midiNote, System.nanoTime());
+                }
+            }
+        };
         keyButton.setFocusable(false);
         keyButton.setOpaque(true);
         keyButton.setBorder(BorderFactory.createLineBorder(Color.BLACK));
@@ -0,0 +1,130 @@
+package com.Tbence132545.Melodigram.view;
+
+import com.Tbence132545.Melodigram.model.HandAssignmentStore;
+import com.Tbence132545.Melodigram.model.NoteTable;
+
+import java.awt.*;
+import java.util.function.IntFunction;
+
+/**
+ * Geometry and drawing of the falling notes. AnimationPanel paints its notes with it on screen
+ * and OfflineVideoRenderer paints whole frames with it offscreen, so videos look exactly like the
+ * window: a note falls from the top to the keys over two seconds, then sinks into them while it
+ * sounds.
+ */
+public final class WaterfallRenderer {
+
+    public static final double PIXELS_PER_MILLISECOND = 0.1;
+    public static final long NOTE_FALL_DURATION_MS = 2000;
+
+    private static final int NOTE_CORNER_RADIUS = 10;
+    private static final Color COLOR_GRID_LINE = new Color(100, 100, 100, 150);
+    private static final Color COLOR_BLACK_NOTE = new Color(255, 100, 100, 180);
+    private static final Color COLOR_WHITE_NOTE = new Color(255, 215, 0, 180);
+    private static final Color COLOR_LEFT_WHITE = new Color(135, 206, 250, 220); // Light Sky Blue
+    private static final Color COLOR_LEFT_BLACK = new Color(25, 25, 112, 220);   // Midnight Blue
+    private static final Color COLOR_RIGHT_WHITE = new Color(250, 128, 114, 220); // Salmon
+    private static final Color COLOR_RIGHT_BLACK = new Color(178, 34, 34, 220);  // Firebrick
+    private static final Font NOTE_TEXT_FONT = new Font("SansSerif", Font.BOLD, 16);
+    private static final Color NOTE_TEXT_COLOR = Color.WHITE;
+
+    private WaterfallRenderer() {}
+
+    /**
+     * Paints every note of the table visible at {@code nowMillis}. Notes are scanned from
+     * {@code firstCandidate}, which must not be past the first visible one, until their onset is
+     * more than a fall duration away. {@code hands} may be null.
+     */
+    public static void paint(Graphics2D g, NoteTable notes, byte[] hands, KeyboardLayout layout,
+                             long nowMillis, int height, int firstCandidate) {
+        paintGridLines(g, layout::keyInfo, layout.getLowestNote(), layout.getHighestNote(), height);
+        Rectangle bounds = new Rectangle();
+        for (int i = Math.max(0, firstCandidate); i < notes.size() && notes.onMillis(i) - NOTE_FALL_DURATION_MS <= nowMillis; i++) {
+            int pitch = notes.pitch(i);
+            if (!layout.contains(pitch) || !isVisible(notes.onMillis(i), notes.offMillis(i), nowMillis)) continue;
+            noteBounds(layout.keyInfo(pitch), notes.onMillis(i), notes.offMillis(i), nowMillis, height, bounds);
+            byte hand = hands != null ? hands[i] : HandAssignmentStore.HAND_NONE;
+            paintNote(g, bounds, height, KeyboardLayout.isBlackKey(pitch), hand, false);
+        }
+    }
+
+    static void paintGridLines(Graphics2D g, IntFunction<PianoWindow.KeyInfo> keys, int lowestNote, int highestNote, int height) {
+        g.setColor(COLOR_GRID_LINE);
+        for (int midiNote = lowestNote; midiNote <= highestNote; midiNote++) {
+            if (midiNote % 12 == 0) { // Draw a line at the start of every C key
+                PianoWindow.KeyInfo keyInfo = keys.apply(midiNote);
+                if (keyInfo != null && !keyInfo.isBlack()) {
+                    g.drawLine(keyInfo.x(), 0, keyInfo.x(), height);
+                }
+            }
+        }
+    }
+
+    static boolean isVisible(long noteOnTime, long noteOffTime, long currentMillis) {
+        long fallStartTime = noteOnTime - NOTE_FALL_DURATION_MS;
+        return currentMillis >= fallStartTime && currentMillis <= noteOffTime;
+    }
+
+    /**
+     * Where the note is at {@code currentMillis}, written into {@code bounds}.
+     */
+    static void noteBounds(PianoWindow.KeyInfo keyInfo, long noteOnTime, long noteOffTime, long currentMillis,
+                           int height, Rectangle bounds) {
+        int noteHeight = (int) ((noteOffTime - noteOnTime) * PIXELS_PER_MILLISECOND);
+        long fallStartTime = noteOnTime - NOTE_FALL_DURATION_MS;
+        int bottomY = (currentMillis < noteOnTime)
+                ? fallingY(currentMillis, fallStartTime, noteHeight, height)
+                : sinkingY(currentMillis, noteOnTime, noteOffTime, noteHeight, height);
+        bounds.setBounds(keyInfo.x(), bottomY - noteHeight, keyInfo.width(), noteHeight);
+    }
+
+    /**
+     * Paints the note if any of it is inside the area, with an L or R on it when asked.
+     */
+    static void paintNote(Graphics2D g, Rectangle bounds, int height, boolean isBlackKey, byte hand, boolean showHand) {
+        if (bounds.y >= height || bounds.y + bounds.height <= 0) return;
+        g.setColor(noteColor(isBlackKey, hand));
+        g.fillRoundRect(bounds.x, bounds.y, bounds.width, bounds.height, NOTE_CORNER_RADIUS, NOTE_CORNER_RADIUS);
+        if (showHand && hand != HandAssignmentStore.HAND_NONE) {
+            String text = hand == HandAssignmentStore.HAND_LEFT ? "L" : "R";
+            g.setFont(NOTE_TEXT_FONT);
+            g.setColor(NOTE_TEXT_COLOR);
+            FontMetrics fm = g.getFontMetrics();
+            int textX = bounds.x + (bounds.width - fm.stringWidth(text)) / 2;
+            int textY = bounds.y + (bounds.height + fm.getAscent()) / 2;
+            g.drawString(text, textX, textY);
+        }
+    }
+
+    static Color noteColor(boolean isBlackKey, byte hand) {
+        if (hand == HandAssignmentStore.HAND_LEFT) {
+            return isBlackKey ? COLOR_LEFT_BLACK : COLOR_LEFT_WHITE;
+        } else if (hand == HandAssignmentStore.HAND_RIGHT) {
+            return isBlackKey ? COLOR_RIGHT_BLACK : COLOR_RIGHT_WHITE;
+        } else {
+            return isBlackKey ? COLOR_BLACK_NOTE : COLOR_WHITE_NOTE;
+        }
+    }
+
+    /**
+     * The key color for a sounding note of an assigned hand, or null for the default highlight.
+     */
+    static Color keyHighlightColor(boolean isBlackKey, byte hand) {
+        if (hand == HandAssignmentStore.HAND_NONE) return null;
+        Color color = noteColor(isBlackKey, hand);
+        return new Color(color.getRed(), color.getGreen(), color.getBlue(), 255);
+    }
+
+    private static int fallingY(long currentMillis, long fallStartTime, int noteHeight, int height) {
+        double progress = (double) (currentMillis - fallStartTime) / NOTE_FALL_DURATION_MS;
+        int startY = -noteHeight;
+        return (int) (startY + progress * (height - startY));
+    }
+
+    private static int sinkingY(long currentMillis, long noteOnTime, long noteOffTime, int noteHeight, int height) {
+        long noteDuration = noteOffTime - noteOnTime;
+        if (noteDuration <= 0) return height;
+        double progress = (double) (currentMillis - noteOnTime) / noteDuration;
+        return (int) (height + progress * noteHeight);
+    }
+}
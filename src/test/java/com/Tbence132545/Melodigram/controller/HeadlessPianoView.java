@@ -0,0 +1,169 @@
+package com.Tbence132545.Melodigram.controller;
+
+import com.Tbence132545.Melodigram.model.KeyState;
+import com.Tbence132545.Melodigram.model.LatencyProbe;
+import com.Tbence132545.Melodigram.model.PlaybackClock;
+import com.Tbence132545.Melodigram.view.AnimationPanel;
+import com.Tbence132545.Melodigram.view.KeyboardLayout;
+import com.Tbence132545.Melodigram.view.KeyboardRenderer;
+import com.Tbence132545.Melodigram.view.PianoView;
+
+import javax.swing.*;
+import java.awt.Graphics2D;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowListener;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link PianoView} without a window. It tracks the lit keys and the latest cue, the keys lit
+ * since the controller last released all of them, and draws the keyboard offscreen with
+ * {@link KeyboardRenderer}, reporting each lit key it draws to the latency probe.
+ */
+class HeadlessPianoView implements PianoView {
+
+    private static final int LOWEST_NOTE = 21;
+    private static final int HIGHEST_NOTE = 108;
+    private static final int KEYBOARD_WIDTH = 1560;
+
+    private final PlaybackClock clock;
+    private final KeyboardLayout layout = new KeyboardLayout(LOWEST_NOTE, HIGHEST_NOTE, KEYBOARD_WIDTH);
+    private final BufferedImage keyboard = new BufferedImage(KEYBOARD_WIDTH, KeyboardRenderer.WHITE_KEY_HEIGHT, BufferedImage.TYPE_INT_RGB);
+    private final AnimationPanel animationPanel;
+    private final KeyState lit = new KeyState();
+    private final KeyState cue = new KeyState();
+    private final List<String> messages = new ArrayList<>();
+    private int cueCount;
+    private LatencyProbe latencyProbe;
+    private boolean paintsOnEdt;
+    private boolean paintPending;
+
+    HeadlessPianoView() {
+        this(PlaybackClock.SYSTEM);
+    }
+
+    /**
+     * @param clock stamps painted keys; the controller's clock, so both measure the same time
+     */
+    HeadlessPianoView(PlaybackClock clock) {
+        this.clock = clock;
+        animationPanel = new AnimationPanel(layout::keyInfo, LOWEST_NOTE, HIGHEST_NOTE);
+    }
+
+    /**
+     * Paints the keyboard on the EDT after keys change, coalesced like a Swing repaint. Otherwise
+     * it is painted only by {@link #paintKeyboard()}.
+     */
+    void paintOnEdt() {
+        paintsOnEdt = true;
+    }
+
+    /**
+     * Draws the keyboard with the lit keys into the offscreen image.
+     */
+    void paintKeyboard() {
+        paintPending = false;
+        LatencyProbe probe = latencyProbe;
+        Graphics2D g = keyboard.createGraphics();
+        try {
+            KeyboardRenderer.paint(g, layout, 0, lit, null,
+                    probe == null ? null : note -> probe.keyPainted(note, clock.nanoTime()));
+        } finally {
+            g.dispose();
+        }
+    }
+
+    BufferedImage getKeyboardImage() {
+        return keyboard;
+    }
+
+    KeyboardLayout getLayout() {
+        return layout;
+    }
+
+    KeyState getLitKeys() {
+        return lit;
+    }
+
+    KeyState getCue() {
+        return cue;
+    }
+
+    /**
+     * Counts releaseAllKeys calls; practice mode makes one each time it cues a new chord.
+     */
+    int getCueCount() {
+        return cueCount;
+    }
+
+    LatencyProbe getLatencyProbe() {
+        return latencyProbe;
+    }
+
+    List<String> getMessages() {
+        return messages;
+    }
+
+    @Override
+    public AnimationPanel getAnimationPanel() {
+        return animationPanel;
+    }
+
+    @Override
+    public void highlightNote(int midiNote) {
+        lit.add(midiNote);
+        cue.add(midiNote);
+        repaintKeyboard();
+    }
+
+    @Override
+    public void releaseNote(int midiNote) {
+        lit.remove(midiNote);
+        repaintKeyboard();
+    }
+
+    @Override
+    public void releaseAllKeys() {
+        lit.clear();
+        cue.clear();
+        cueCount++;
+        repaintKeyboard();
+    }
+
+    private void repaintKeyboard() {
+        if (!paintsOnEdt || paintPending) return;
+        paintPending = true;
+        SwingUtilities.invokeLater(this::paintKeyboard);
+    }
+
+    @Override
+    public boolean isBlackKey(int midiNote) {
+        return KeyboardLayout.isBlackKey(midiNote);
+    }
+
+    @Override
+    public void setLatencyProbe(LatencyProbe latencyProbe) {
+        this.latencyProbe = latencyProbe;
+    }
+
+    @Override
+    public void showMessage(String message, String title, int messageType) {
+        messages.add(title + ": " + message);
+    }
+
+    @Override public void addSeekBar(JComponent seekBarComponent) {}
+    @Override public void addWindowListener(WindowListener listener) {}
+    @Override public void repaint() {}
+    @Override public void disableButtons(boolean shouldDisable) {}
+    @Override public void setEditingMode(boolean isEditing) {}
+    @Override public void setPlayButtonText(String text) {}
+    @Override public void setSaveStatus(String text) {}
+    @Override public void setPlayButtonListener(ActionListener listener) {}
+    @Override public void setBackwardButtonListener(ActionListener listener) {}
+    @Override public void setForwardButtonListener(ActionListener listener) {}
+    @Override public void setSaveButtonListener(ActionListener listener) {}
+    @Override public void setAutoAssignButtonListener(ActionListener listener) {}
+    @Override public void setUndoRedoActions(Runnable undo, Runnable redo) {}
+    @Override public void setSaveRecordingAction(Runnable save) {}
+}
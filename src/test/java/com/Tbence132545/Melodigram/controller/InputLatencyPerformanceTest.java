@@ -0,0 +1,68 @@
+package com.Tbence132545.Melodigram.controller;
+
+import com.Tbence132545.Melodigram.model.LatencyProbe;
+import com.Tbence132545.Melodigram.model.MidiPlayer;
+import com.Tbence132545.Melodigram.model.VirtualMidiInputDevice;
+import com.Tbence132545.Melodigram.view.ListWindow;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Input-to-highlight latency in real time: a scripted virtual keyboard plays into the controller's
+ * own MIDI receiver, event ring and 60 fps Swing timer, and the lit keys are painted on the EDT
+ * like the piano window does. Timing-sensitive, so it runs in {@code performanceTest}, not {@code test}.
+ */
+@Tag("performance")
+class InputLatencyPerformanceTest {
+
+    private static final int EVENTS_PER_SECOND = 200;
+    private static final long DURATION_MILLIS = 3000;
+    // One frame to reach the next tick, plus room for a loaded machine
+    private static final double MAX_P99_MILLIS = 50;
+
+    @Test
+    void keyPressesReachTheKeyboardWithinTheBudget() throws Exception {
+        MidiPlayer player = new MidiPlayer();
+        player.loadMidiFromResources("midi/twinkle-twinkle-little-star.mid");
+        HeadlessPianoView view = new HeadlessPianoView();
+        view.paintOnEdt();
+        VirtualMidiInputDevice keyboard = new VirtualMidiInputDevice(
+                VirtualMidiInputDevice.Script.stress(EVENTS_PER_SECOND, DURATION_MILLIS, 1L));
+        CountDownLatch finished = new CountDownLatch(1);
+        keyboard.setOnFinished(finished::countDown);
+
+        PlaybackController[] controller = new PlaybackController[1];
+        System.setProperty("melodigram.latencyProbe", "true");
+        try {
+            SwingUtilities.invokeAndWait(() -> {
+                controller[0] = new PlaybackController(player, view);
+                controller[0].setPracticeMode(true, ListWindow.MidiFileActionListener.HandMode.BOTH);
+                controller[0].setMidiInputDevice(keyboard);
+            });
+        } finally {
+            System.clearProperty("melodigram.latencyProbe");
+        }
+        LatencyProbe probe = view.getLatencyProbe();
+        assertNotNull(probe);
+
+        assertTrue(finished.await(DURATION_MILLIS + 10_000, TimeUnit.MILLISECONDS), "the script did not finish");
+        // Let the last events reach a tick and a paint
+        Thread.sleep(200);
+        LatencyProbe.Report[] reports = new LatencyProbe.Report[2];
+        SwingUtilities.invokeAndWait(() -> {
+            reports[0] = probe.applyReport();
+            reports[1] = probe.paintReport();
+            controller[0].shutdown();
+        });
+
+        LatencyProbe.Report paint = reports[1];
+        assertTrue(paint.samples() > EVENTS_PER_SECOND * DURATION_MILLIS / 1000 / 4, "receive->paint " + paint);
+        assertTrue(paint.p99Millis() <= MAX_P99_MILLIS, "receive->apply " + reports[0] + ", receive->paint " + paint);
+    }
+}
@@ -0,0 +1,101 @@
+package com.Tbence132545.Melodigram.controller;
+
+import com.Tbence132545.Melodigram.model.KeyState;
+import com.Tbence132545.Melodigram.model.LatencyProbe;
+import com.Tbence132545.Melodigram.model.MidiPlayer;
+import com.Tbence132545.Melodigram.model.VirtualClock;
+import com.Tbence132545.Melodigram.model.VirtualMidiInputDevice;
+import com.Tbence132545.Melodigram.view.KeyboardLayout;
+import com.Tbence132545.Melodigram.view.ListWindow;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import java.awt.Color;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The input-to-highlight pipeline on a virtual clock: presses go through the controller's MIDI
+ * receiver, event ring and tick, and the keyboard is drawn offscreen after every tick, so every
+ * press must be painted exactly one frame after it arrived.
+ */
+class InputLatencyTest {
+
+    private static final int FRAMES = 600;
+
+    @Test
+    void everyPressIsPaintedOnTheFollowingFrame() {
+        MidiPlayer player = new MidiPlayer();
+        player.loadMidiFromResources("midi/twinkle-twinkle-little-star.mid");
+        VirtualClock clock = new VirtualClock();
+        SimulatedTickSource ticks = new SimulatedTickSource(clock, PlaybackController.TIMER_DELAY_MS);
+        HeadlessPianoView view = new HeadlessPianoView(clock);
+        PlaybackController created;
+        System.setProperty("melodigram.latencyProbe", "true");
+        try {
+            created = new PlaybackController(player, view, null, clock, ticks);
+        } finally {
+            System.clearProperty("melodigram.latencyProbe");
+        }
+        PlaybackController controller = created;
+        controller.setPracticeMode(true, ListWindow.MidiFileActionListener.HandMode.BOTH);
+        VirtualMidiInputDevice keyboard = new VirtualMidiInputDevice(new VirtualMidiInputDevice.Script.Builder().build());
+        controller.setMidiInputDevice(keyboard);
+        Receiver input = keyboard.getTransmitters().get(0).getReceiver();
+        LatencyProbe probe = view.getLatencyProbe();
+        assertNotNull(probe);
+
+        // Once the first chord is cued, practice waits for it, so no later cue clears the lit keys mid-run
+        ticks.runUntil(() -> controller.getPracticeCursor().position() > 0, 10_000);
+        assertEquals(1, controller.getPracticeCursor().position());
+
+        // After each frame is painted, one key goes down or up, as in VirtualMidiInputDevice's stress script
+        Random random = new Random(1);
+        KeyState held = new KeyState();
+        int[] presses = {0};
+        int run = ticks.runUntil(() -> {
+            view.paintKeyboard();
+            int pitch = 36 + random.nextInt(61);
+            if (held.remove(pitch)) {
+                send(input, ShortMessage.NOTE_OFF, pitch, 0);
+            } else {
+                held.add(pitch);
+                presses[0]++;
+                send(input, ShortMessage.NOTE_ON, pitch, 1 + random.nextInt(127));
+            }
+            return false;
+        }, FRAMES * (long) PlaybackController.TIMER_DELAY_MS);
+        assertEquals(FRAMES, run);
+        ticks.runFor(PlaybackController.TIMER_DELAY_MS);
+        view.paintKeyboard();
+
+        LatencyProbe.Report apply = probe.applyReport();
+        LatencyProbe.Report paint = probe.paintReport();
+        assertEquals(presses[0], apply.samples());
+        assertEquals(presses[0], paint.samples());
+        // Every press waits for the next tick and is painted right after it; the histogram has 50 µs buckets
+        assertEquals(PlaybackController.TIMER_DELAY_MS, paint.p50Millis(), 0.1);
+        assertEquals(PlaybackController.TIMER_DELAY_MS, paint.maxMillis(), 0.1);
+
+        // The keys still held are the ones drawn lit
+        assertTrue(held.sameKeys(view.getLitKeys()));
+        KeyboardLayout layout = view.getLayout();
+        for (int pitch = layout.getLowestNote(); pitch <= layout.getHighestNote(); pitch++) {
+            int rgb = view.getKeyboardImage().getRGB(layout.x(pitch) + layout.width(pitch) / 2, 50) & 0xFFFFFF;
+            int unlit = (KeyboardLayout.isBlackKey(pitch) ? Color.BLACK : Color.WHITE).getRGB() & 0xFFFFFF;
+            assertEquals(held.contains(pitch), rgb != unlit, "key " + pitch);
+        }
+        controller.shutdown();
+    }
+
+    private static void send(Receiver receiver, int command, int pitch, int velocity) {
+        try {
+            receiver.send(new ShortMessage(command, pitch, velocity), -1);
+        } catch (InvalidMidiDataException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.Tbence132545.Melodigram.controller;
+
+import com.Tbence132545.Melodigram.model.KeyState;
+import com.Tbence132545.Melodigram.model.MidiPlayer;
+import com.Tbence132545.Melodigram.model.NoteTable;
+import com.Tbence132545.Melodigram.model.PracticeCursor;
+import com.Tbence132545.Melodigram.model.PracticeScorer;
+import com.Tbence132545.Melodigram.model.SequencePreprocessor;
+import com.Tbence132545.Melodigram.model.VirtualClock;
+import com.Tbence132545.Melodigram.model.VirtualMidiInputDevice;
+import com.Tbence132545.Melodigram.view.ListWindow;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PracticeSimulationTest {
+
+    private static final long FRAME_MICROS = PlaybackController.TIMER_DELAY_MS * 1000L;
+
+    @Test
+    void perfectPlayerHitsEveryNoteOfABundledPiece() {
+        MidiPlayer player = new MidiPlayer();
+        player.loadMidiFromResources("midi/twinkle-twinkle-little-star.mid");
+        NoteTable notes = SequencePreprocessor.preprocess(player.getSequencer().getSequence()).notes();
+        assertTrue(notes.size() > 0);
+
+        HeadlessPianoView view = new HeadlessPianoView();
+        VirtualClock clock = new VirtualClock();
+        SimulatedTickSource ticks = new SimulatedTickSource(clock, PlaybackController.TIMER_DELAY_MS);
+        PlaybackController controller = new PlaybackController(player, view, null, clock, ticks);
+        controller.setPracticeMode(true, ListWindow.MidiFileActionListener.HandMode.BOTH);
+        VirtualMidiInputDevice keyboard = new VirtualMidiInputDevice(new VirtualMidiInputDevice.Script.Builder().build());
+        controller.setMidiInputDevice(keyboard);
+        Receiver input = keyboard.getTransmitters().get(0).getReceiver();
+
+        PracticeScorer scorer = controller.getPracticeScorer();
+        PracticeCursor cursor = controller.getPracticeCursor();
+        assertEquals(0, cursor.position());
+
+        // Plays each cue as soon as it appears: release what is held, strike the cued keys
+        KeyState held = new KeyState();
+        int[] lastCue = {view.getCueCount()};
+        long realStart = System.nanoTime();
+        long pieceMillis = player.getSequencer().getMicrosecondLength() / 1000;
+        ticks.runUntil(() -> {
+            if (view.getCueCount() != lastCue[0]) {
+                lastCue[0] = view.getCueCount();
+                for (int pitch = held.nextKey(0); pitch >= 0; pitch = held.nextKey(pitch + 1)) {
+                    send(input, ShortMessage.NOTE_OFF, pitch, 0);
+                }
+                held.clear();
+                KeyState cue = view.getCue();
+                for (int pitch = cue.nextKey(0); pitch >= 0; pitch = cue.nextKey(pitch + 1)) {
+                    send(input, ShortMessage.NOTE_ON, pitch, 80);
+                    held.add(pitch);
+                }
+            }
+            return cursor.position() == cursor.clusterCount() && scorer.getHits() == scorer.getExpectedNotes();
+        }, pieceMillis + 10_000);
+        long realMillis = (System.nanoTime() - realStart) / 1_000_000;
+
+        assertEquals(cursor.clusterCount(), cursor.position());
+        assertTrue(scorer.getExpectedNotes() > 0);
+        assertEquals(scorer.getExpectedNotes(), scorer.getHits());
+        assertEquals(0, scorer.getWrongNotes());
+        assertEquals(0, scorer.getMissedNotes());
+        for (int i = 0; i < notes.size(); i++) {
+            int timing = scorer.getTimingErrorMicros(i);
+            if (timing == PracticeScorer.NOT_PLAYED) continue;
+            // A cue is seen at the end of its tick, the press is applied on the next one
+            assertTrue(timing >= 0 && timing <= 2 * FRAME_MICROS, "note " + i + " timing " + timing + "µs");
+        }
+        assertTrue(realMillis < pieceMillis / 4, "took " + realMillis + "ms for a " + pieceMillis + "ms piece");
+
+        controller.shutdown();
+        assertFalse(ticks.isRunning());
+        assertTrue(view.getMessages().isEmpty(), view.getMessages().toString());
+    }
+
+    @Test
+    void keysStruckJustBeforeTheCueAreEarlyHits() {
+        MidiPlayer player = new MidiPlayer();
+        player.loadMidiFromResources("midi/twinkle-twinkle-little-star.mid");
+        NoteTable notes = SequencePreprocessor.preprocess(player.getSequencer().getSequence()).notes();
+        HeadlessPianoView view = new HeadlessPianoView();
+        VirtualClock clock = new VirtualClock();
+        SimulatedTickSource ticks = new SimulatedTickSource(clock, PlaybackController.TIMER_DELAY_MS);
+        PlaybackController controller = new PlaybackController(player, view, null, clock, ticks);
+        controller.setPracticeMode(true, ListWindow.MidiFileActionListener.HandMode.BOTH);
+        VirtualMidiInputDevice keyboard = new VirtualMidiInputDevice(new VirtualMidiInputDevice.Script.Builder().build());
+        controller.setMidiInputDevice(keyboard);
+        Receiver input = keyboard.getTransmitters().get(0).getReceiver();
+        PracticeScorer scorer = controller.getPracticeScorer();
+        PracticeCursor cursor = controller.getPracticeCursor();
+
+        // Strikes the opening chord on its cue and every later one about 50 ms before it is cued
+        long leadMillis = 50;
+        KeyState held = new KeyState();
+        KeyState chord = new KeyState();
+        cursor.keysOf(0, 1, chord);
+        int firstChordKeys = chord.size();
+        int[] struck = {-1};
+        long pieceMillis = player.getSequencer().getMicrosecondLength() / 1000;
+        ticks.runUntil(() -> {
+            int next = cursor.position();
+            long now = view.getAnimationPanel().getCurrentTimeMillis();
+            int strike = -1;
+            if (struck[0] < 0) {
+                if (next == 1) strike = 0;
+            } else if (next < cursor.clusterCount() && next != struck[0] && cursor.onsetOf(next) - now <= leadMillis) {
+                strike = next;
+            }
+            if (strike >= 0) {
+                struck[0] = strike;
+                for (int pitch = held.nextKey(0); pitch >= 0; pitch = held.nextKey(pitch + 1)) {
+                    send(input, ShortMessage.NOTE_OFF, pitch, 0);
+                }
+                cursor.keysOf(strike, strike + 1, chord);
+                held.copyFrom(chord);
+                for (int pitch = chord.nextKey(0); pitch >= 0; pitch = chord.nextKey(pitch + 1)) {
+                    send(input, ShortMessage.NOTE_ON, pitch, 80);
+                }
+            }
+            return next == cursor.clusterCount() && scorer.getHits() == scorer.getExpectedNotes();
+        }, pieceMillis + 10_000);
+
+        assertEquals(cursor.clusterCount(), cursor.position());
+        assertEquals(scorer.getExpectedNotes(), scorer.getHits());
+        assertEquals(0, scorer.getWrongNotes());
+        assertEquals(0, scorer.getMissedNotes());
+        int early = 0;
+        for (int i = 0; i < notes.size(); i++) {
+            int timing = scorer.getTimingErrorMicros(i);
+            if (timing == PracticeScorer.NOT_PLAYED) continue;
+            if (i < firstChordKeys) continue;
+            assertTrue(timing <= 0 && timing >= -(leadMillis * 1000 + FRAME_MICROS), "note " + i + " timing " + timing + "µs");
+            if (timing < 0) early++;
+        }
+        assertEquals(scorer.getHits() - firstChordKeys, early);
+        controller.shutdown();
+    }
+
+    private static void send(Receiver receiver, int command, int pitch, int velocity) {
+        try {
+            receiver.send(new ShortMessage(command, pitch, velocity), -1);
+        } catch (InvalidMidiDataException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.Tbence132545.Melodigram.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AtomicFilesTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void concurrentWritersEachLeaveAWholeFile() throws Exception {
+        Path target = dir.resolve("shared.txt");
+        ExecutorService writers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int w = 0; w < 4; w++) {
+                String line = ("writer " + w + "\n").repeat(10_000);
+                done.add(writers.submit(() -> {
+                    for (int i = 0; i < 20; i++) {
+                        AtomicFiles.write(target, temp -> Files.writeString(temp, line, StandardCharsets.UTF_8));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : done) future.get();
+        } finally {
+            writers.shutdown();
+        }
+
+        List<String> lines = Files.readAllLines(target, StandardCharsets.UTF_8);
+        assertEquals(10_000, lines.size());
+        assertEquals(1, lines.stream().distinct().count());
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(1, files.count(), "temporary files left behind");
+        }
+    }
+
+    @Test
+    void failedWriteKeepsTheOldFileAndRemovesTheTemporaryOne() throws Exception {
+        Path target = dir.resolve("kept.txt");
+        Files.writeString(target, "old");
+        assertThrows(IOException.class, () -> AtomicFiles.write(target, temp -> {
+            Files.writeString(temp, "partial");
+            throw new IOException("disk full");
+        }));
+        assertEquals("old", Files.readString(target));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(1, files.count());
+        }
+    }
+}
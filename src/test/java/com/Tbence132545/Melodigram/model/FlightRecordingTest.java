@@ -0,0 +1,54 @@
+package com.Tbence132545.Melodigram.model;
+
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlightRecordingTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recordsTheMelodigramEventsWithoutThreshold() throws Exception {
+        try (FlightRecording flight = FlightRecording.start(dir, FlightRecording.DEFAULT_SPIKE_MILLIS)) {
+            Recording recording = FlightRecorder.getFlightRecorder().getRecordings().stream()
+                    .filter(r -> "Melodigram".equals(r.getName()))
+                    .findFirst().orElseThrow();
+            // Settings enabled by event class are keyed by the event type id
+            Map<String, String> settings = recording.getSettings();
+            for (Class<?> type : FlightEvents.class.getDeclaredClasses()) {
+                long id = EventType.getEventType(type.asSubclass(Event.class)).getId();
+                assertEquals("true", settings.get(id + "#enabled"), type.getSimpleName());
+                assertEquals("0 s", settings.get(id + "#threshold"), type.getSimpleName());
+            }
+
+            FlightEvents.FramePaint paint = new FlightEvents.FramePaint();
+            paint.begin();
+            paint.notesDrawn = 12;
+            paint.playbackMillis = 3456;
+            paint.commit();
+
+            Path file = flight.dump("test");
+            boolean found = false;
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                if (!event.getEventType().getName().equals("melodigram.FramePaint")) continue;
+                found = true;
+                assertEquals(12, event.getInt("notesDrawn"));
+                assertEquals(3456L, event.getLong("playbackMillis"));
+            }
+            assertTrue(found);
+        }
+        assertNull(FlightRecording.current());
+    }
+}
@@ -0,0 +1,109 @@
+package com.Tbence132545.Melodigram.model;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongBinaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NoteAlignerTest {
+
+    private static final String[] PIECES = {
+            "Chopin.mid", "Flight of the Bumblebee.mid", "Rachmaninoff.mid", "alla-turca.mid",
+            "liszt.mid", "little_red.mid", "twinkle-twinkle-little-star.mid"
+    };
+
+    @Test
+    void unchangedPieceMatchesEveryNoteToItself() throws Exception {
+        for (String piece : PIECES) {
+            Piece p = load(piece);
+            assertEquals(p.notes.size(), kept(p, i -> p.notes.pitch(i), (i, on) -> on), piece);
+        }
+    }
+
+    // A changed pitch can land on a note struck at the same time, which then becomes ambiguous
+    @Test
+    void changingTwoPitchesKeepsAlmostEveryOtherNote() throws Exception {
+        for (String piece : PIECES) {
+            Piece p = load(piece);
+            int n = p.notes.size();
+            int kept = kept(p, i -> i == n / 3 || i == 2 * n / 3 ? p.notes.pitch(i) + 1 : p.notes.pitch(i), (i, on) -> on);
+            assertTrue(kept <= n - 2 && kept >= (n - 2) * 0.998, piece + " kept " + kept + " of " + n);
+        }
+    }
+
+    @Test
+    void shiftingTheSecondHalfOffTheBeatKeepsMostNotes() throws Exception {
+        for (String piece : PIECES) {
+            Piece p = load(piece);
+            int n = p.notes.size();
+            long shift = p.beatMillis * 3 / 8;
+            int kept = kept(p, i -> p.notes.pitch(i), (i, on) -> i >= n / 2 ? on + shift : on);
+            assertTrue(kept >= n * 0.89, piece + " kept " + kept + " of " + n);
+        }
+    }
+
+    // A whole beat lines the moved half up with earlier notes; repetitive figures make that ambiguous
+    @Test
+    void shiftingTheSecondHalfByOneBeatKeepsMostNotes() throws Exception {
+        for (String piece : PIECES) {
+            Piece p = load(piece);
+            int n = p.notes.size();
+            int kept = kept(p, i -> p.notes.pitch(i), (i, on) -> i >= n / 2 ? on + p.beatMillis : on);
+            assertTrue(kept >= n * 0.74, piece + " kept " + kept + " of " + n);
+        }
+    }
+
+    private record Piece(NoteTable notes, long beatMillis) {}
+
+    private static Piece load(String name) throws IOException, InvalidMidiDataException {
+        try (InputStream in = NoteAlignerTest.class.getClassLoader().getResourceAsStream("midi/" + name)) {
+            assertNotNull(in, name);
+            Sequence sequence = MidiSystem.getSequence(new BufferedInputStream(in));
+            SequencePreprocessor.Result result = SequencePreprocessor.preprocess(sequence);
+            return new Piece(result.notes(), result.tempoMap().tickToMillis(sequence.getResolution()));
+        }
+    }
+
+    /**
+     * Edits every note of the piece, puts the edited notes back in NoteTable order and counts how
+     * many the aligner matched to the note they came from.
+     */
+    private static int kept(Piece piece, IntUnaryOperator pitchOf, LongBinaryOperator onsetOf) {
+        NoteTable notes = piece.notes;
+        int n = notes.size();
+        int[] oldPitch = new int[n];
+        long[] oldOnset = new long[n];
+        int[] pitch = new int[n];
+        long[] onset = new long[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            oldPitch[i] = notes.pitch(i);
+            oldOnset[i] = notes.onMillis(i);
+            pitch[i] = pitchOf.applyAsInt(i);
+            onset[i] = onsetOf.applyAsLong(i, oldOnset[i]);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> onset[a] != onset[b] ? Long.compare(onset[a], onset[b]) : Integer.compare(pitch[a], pitch[b]));
+
+        NoteTable.Builder edited = new NoteTable.Builder();
+        for (int i : order) {
+            edited.add(pitch[i], onset[i], onset[i] + notes.offMillis(i) - notes.onMillis(i), notes.velocity(i), notes.channel(i), notes.track(i));
+        }
+        int[] match = NoteAligner.align(oldPitch, oldOnset, edited.build(), NoteAligner.DEFAULT_TOLERANCE_MS);
+
+        int kept = 0;
+        for (int k = 0; k < n; k++) {
+            if (match[k] == order[k]) kept++;
+        }
+        return kept;
+    }
+}
@@ -0,0 +1,38 @@
+package com.Tbence132545.Melodigram.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PracticeRecorderTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void closeCutsAMultiChunkRecordingToItsRecords() throws Exception {
+        Path file = dir.resolve("long.mrec");
+        // More than one 8 MB chunk of 16-byte records
+        int events = 600_000;
+        try (PracticeRecorder recorder = new PracticeRecorder(file, 42L, 0L)) {
+            for (int i = 0; i < events; i++) {
+                recorder.record(i * 1_000_000L, i, ShortMessage.NOTE_ON, 60 + i % 12, 1 + i % 100);
+            }
+            assertEquals(events, recorder.getEventCount());
+        }
+        assertEquals(64 + 16L * events, Files.size(file));
+
+        Path midi = dir.resolve("long.mid");
+        PracticeRecorder.exportToMidi(file, midi, PracticeRecorder.Timeline.PIECE);
+        Sequence sequence = MidiSystem.getSequence(midi.toFile());
+        // The events plus the tempo and end-of-track meta events
+        assertEquals(events + 2, sequence.getTracks()[0].size());
+    }
+}
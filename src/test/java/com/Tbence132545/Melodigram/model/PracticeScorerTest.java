@@ -0,0 +1,66 @@
+package com.Tbence132545.Melodigram.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PracticeScorerTest {
+
+    private static final long MS = 1_000_000;
+
+    // Two chords: C and E at 0 ms, then G at 500 ms
+    private static NoteTable twoChords() {
+        NoteTable.Builder builder = new NoteTable.Builder();
+        builder.add(60, 0, 400, 80, 0, 0);
+        builder.add(64, 0, 400, 80, 0, 0);
+        builder.add(67, 500, 900, 80, 0, 0);
+        return builder.build();
+    }
+
+    @Test
+    void earlyPressOfAnAnnouncedChordIsAHitWithNegativeTiming() {
+        PracticeScorer scorer = new PracticeScorer(twoChords(), i -> true);
+        scorer.announce(0, 2);
+        scorer.noteOn(60, 80, 1000 * MS - 40 * MS);
+        scorer.noteOn(60, 80, 1000 * MS - 20 * MS); // retry, keeps the first press
+        assertEquals(0, scorer.getHits());
+        scorer.cue(0, 2, 1000 * MS);
+        scorer.noteOn(64, 80, 1000 * MS + 10 * MS);
+
+        assertEquals(2, scorer.getExpectedNotes());
+        assertEquals(2, scorer.getHits());
+        assertEquals(0, scorer.getWrongNotes());
+        assertEquals(-40_000, scorer.getTimingErrorMicros(0));
+        assertEquals(10_000, scorer.getTimingErrorMicros(1));
+    }
+
+    @Test
+    void pressBeforeTheCueOfAKeyThatIsNotAnnouncedIsWrong() {
+        PracticeScorer scorer = new PracticeScorer(twoChords(), i -> true);
+        scorer.cue(0, 2, 0);
+        scorer.noteOn(60, 80, 0);
+        scorer.noteOn(64, 80, 0);
+        scorer.announce(2, 3);
+        scorer.noteOn(65, 80, 450 * MS);
+        scorer.noteOn(60, 80, 460 * MS); // a retry of the chord just played
+        scorer.cue(2, 3, 500 * MS);
+
+        assertEquals(1, scorer.getWrongNotes());
+        assertEquals(2, scorer.getHits());
+        assertEquals(PracticeScorer.NOT_PLAYED, scorer.getTimingErrorMicros(2));
+        scorer.closeChord();
+        assertEquals(1, scorer.getMissedNotes());
+    }
+
+    @Test
+    void seekingAwayForgetsEarlyPresses() {
+        PracticeScorer scorer = new PracticeScorer(twoChords(), i -> true);
+        scorer.announce(2, 3);
+        scorer.noteOn(67, 80, 450 * MS);
+        scorer.closeChord();
+        scorer.cue(2, 3, 500 * MS);
+
+        assertEquals(0, scorer.getHits());
+        assertEquals(PracticeScorer.NOT_PLAYED, scorer.getTimingErrorMicros(2));
+    }
+}
@@ -0,0 +1,73 @@
+package com.Tbence132545.Melodigram.model;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sound.midi.ShortMessage;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VirtualMidiInputDeviceTest {
+
+    private record Note(int pitch, long onNanos, long offNanos) {}
+
+    // Pairs each note off with the earliest sounding note on of its pitch, as a synthesizer would
+    private static List<Note> notesOf(VirtualMidiInputDevice.Script script) {
+        List<Note> notes = new ArrayList<>();
+        long[] onAt = new long[128];
+        boolean[] sounding = new boolean[128];
+        for (int i = 0; i < script.size(); i++) {
+            int event = script.eventAt(i);
+            int status = event >>> 16 & 0xFF;
+            int pitch = event >>> 8 & 0x7F;
+            int velocity = event & 0x7F;
+            if (MidiEventRing.isNoteOn(status, velocity)) {
+                assertFalse(sounding[pitch], "pitch " + pitch + " struck again while sounding");
+                sounding[pitch] = true;
+                onAt[pitch] = script.timeNanosAt(i);
+            } else if (MidiEventRing.isNoteOff(status, velocity)) {
+                assertTrue(sounding[pitch], "pitch " + pitch + " released while silent");
+                sounding[pitch] = false;
+                notes.add(new Note(pitch, onAt[pitch], script.timeNanosAt(i)));
+            }
+        }
+        return notes;
+    }
+
+    @Test
+    void jitterKeepsRepeatedNotesApartAndTheirLengths() {
+        VirtualMidiInputDevice.Script.Builder builder = new VirtualMidiInputDevice.Script.Builder();
+        for (int i = 0; i < 200; i++) {
+            // Back-to-back repeats of one key, so any overlap would show up
+            builder.noteOn(i * 100L, 60, 80).noteOff(i * 100L + 100, 60);
+            builder.noteOn(i * 100L, 64, 80).noteOff(i * 100L + 40, 64);
+        }
+        builder.controlChange(5000, 64, 127);
+        VirtualMidiInputDevice.Script jittered = builder.build().withJitter(30, 7L);
+
+        List<Note> notes = notesOf(jittered);
+        assertEquals(400, notes.size());
+        for (Note note : notes) {
+            long length = note.offNanos() - note.onNanos();
+            assertEquals(note.pitch() == 60 ? 100_000_000L : 40_000_000L, length);
+        }
+        for (int i = 0; i < jittered.size(); i++) {
+            int event = jittered.eventAt(i);
+            if ((event >>> 16 & 0xF0) == ShortMessage.CONTROL_CHANGE) assertEquals(5_000_000_000L, jittered.timeNanosAt(i));
+        }
+    }
+
+    @Test
+    void wrongNoteOfPitchZeroIsReleasedOnItsOwnKey() {
+        // With this seed the replacement lands on pitch 0
+        VirtualMidiInputDevice.Script script = new VirtualMidiInputDevice.Script.Builder()
+                .noteOn(0, 1, 80).noteOff(100, 1)
+                .build()
+                .withWrongNotes(1.0, 0L);
+        List<Note> notes = notesOf(script);
+        assertEquals(1, notes.size());
+        assertEquals(0, notes.get(0).pitch());
+        assertEquals(100_000_000L, notes.get(0).offNanos() - notes.get(0).onNanos());
+    }
+}